@@ -7,33 +7,125 @@
 
 package com.cyberknights4911.auto;
 
+import com.cyberknights4911.logging.LoopProfiler;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import org.littletonrobotics.junction.networktables.LoggedDashboardChooser;
 
+/**
+ * Lets the drivers pick an auto from the dashboard, and runs it.
+ *
+ * <p>Only the selected auto is ever built. While disabled, {@link #prepareSelectedCommand} starts
+ * loading the selection whenever it changes, and the result is kept for {@link
+ * #startCurrentCommand}. Loading is in two steps. An {@link AutoLoader} decodes the auto's data on
+ * a worker thread. The command is then built from that data on the main thread, since composing
+ * commands registers them with the command scheduler, which is not thread-safe.
+ */
 public final class AutoCommandHandler {
-  private final LoggedDashboardChooser<Command> loggedDashboardChooser;
+  /** Loads an auto's data on a worker thread. */
+  @FunctionalInterface
+  public interface AutoLoader {
+    /**
+     * Loads the auto, and returns what builds its command on the main thread. Must not create
+     * commands.
+     */
+    Supplier<Command> load();
+  }
+
+  private final LoggedDashboardChooser<AutoLoader> loggedDashboardChooser;
+  private final ExecutorService loadExecutor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "AutoLoader");
+            thread.setDaemon(true);
+            return thread;
+          });
   private double autoStart;
   private boolean autoMessagePrinted;
   private Command currentAutoCommand;
+  private Command overrideCommand;
+  private AutoLoader preparedLoader;
+  private CompletableFuture<Supplier<Command>> pendingLoad;
+  private Command preparedCommand;
 
   public AutoCommandHandler() {
-    loggedDashboardChooser = new LoggedDashboardChooser<Command>("Auto Routine");
+    loggedDashboardChooser = new LoggedDashboardChooser<AutoLoader>("Auto Routine");
+  }
+
+  /** Adds an option whose data is loaded off the main thread. */
+  public void addDefaultLoadedOption(String key, AutoLoader loader) {
+    loggedDashboardChooser.addDefaultOption(key, loader);
+  }
+
+  /** Adds an option whose data is loaded off the main thread. */
+  public void addLoadedOption(String key, AutoLoader loader) {
+    loggedDashboardChooser.addOption(key, loader);
   }
 
+  public void addDefaultOption(String key, Supplier<Command> command) {
+    addDefaultLoadedOption(key, () -> command);
+  }
+
+  public void addOption(String key, Supplier<Command> command) {
+    addLoadedOption(key, () -> command);
+  }
+
+  /** Adds an option that is already built, for commands that are cheap to construct. */
   public void addDefaultOption(String key, Command command) {
-    loggedDashboardChooser.addDefaultOption(key, command);
+    addDefaultOption(key, () -> command);
   }
 
+  /** Adds an option that is already built, for commands that are cheap to construct. */
   public void addOption(String key, Command command) {
-    loggedDashboardChooser.addOption(key, command);
+    addOption(key, () -> command);
+  }
+
+  /**
+   * Starts loading the selected auto if the selection changed since the last call, and builds it
+   * once it has loaded. Call every loop while disabled.
+   */
+  public void prepareSelectedCommand() {
+    AutoLoader selected = loggedDashboardChooser.get();
+    if (selected != preparedLoader) {
+      preparedLoader = selected;
+      preparedCommand = null;
+      // A load still running for the previous selection finishes, and is ignored
+      pendingLoad =
+          selected == null ? null : CompletableFuture.supplyAsync(selected::load, loadExecutor);
+    }
+    if (pendingLoad != null && pendingLoad.isDone()) {
+      buildLoadedCommand();
+    }
+  }
+
+  /** Returns the selected auto, waiting for it to load if it hasn't yet. */
+  private Command getSelectedCommand() {
+    prepareSelectedCommand();
+    if (pendingLoad != null) {
+      buildLoadedCommand();
+    }
+    return preparedCommand;
+  }
+
+  private void buildLoadedCommand() {
+    preparedCommand = LoopProfiler.profile(pendingLoad.join().get());
+    pendingLoad = null;
+  }
+
+  /** Runs the given command instead of the dashboard selection, e.g. in headless simulation. */
+  public void setOverride(Command command) {
+    overrideCommand = command == null ? null : LoopProfiler.profile(command);
   }
 
   public void startCurrentCommand() {
     stopCurrentCommand();
     autoStart = Timer.getFPGATimestamp();
-    currentAutoCommand = loggedDashboardChooser.get();
+    currentAutoCommand = overrideCommand != null ? overrideCommand : getSelectedCommand();
     if (currentAutoCommand != null) {
       currentAutoCommand.schedule();
     }
@@ -0,0 +1,362 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.auto;
+
+import com.cyberknights4911.logging.Alert;
+import com.cyberknights4911.logging.Alert.AlertType;
+import com.cyberknights4911.util.Alliance;
+import com.pathplanner.lib.auto.AutoBuilder;
+import com.pathplanner.lib.auto.NamedCommands;
+import com.pathplanner.lib.commands.PathPlannerAuto;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.path.PathPlannerTrajectory;
+import com.pathplanner.lib.util.GeometryUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Builds PathPlanner autos from trajectories compiled ahead of time by {@link TrajectoryCompiler},
+ * so nothing is parsed or generated on the robot.
+ *
+ * <p>The compiled file is memory-mapped and indexed when constructed. Each path's states, for both
+ * alliances, are decoded when an auto that uses it is loaded, and followed by a {@link
+ * CompiledPathCommand}. If the file is missing, or an auto is not in it, the auto falls back to
+ * {@link PathPlannerAuto}, which must be configured through {@code AutoBuilder} as before.
+ */
+public final class CompiledAutos {
+  /** Location of the compiled file, relative to the deploy directory. */
+  public static final String FILE = "pathplanner/compiled/autos.bin";
+
+  static final int MAGIC = 0x50505443; // "PPTC"
+  static final int VERSION = 1;
+
+  // Command tree node types
+  static final byte WAIT = 0;
+  static final byte NAMED = 1;
+  static final byte PATH = 2;
+  static final byte SEQUENTIAL = 3;
+  static final byte PARALLEL = 4;
+  static final byte RACE = 5;
+  static final byte DEADLINE = 6;
+
+  // time, velocity, acceleration, heading angular velocity, x, y, heading, holonomic rotation,
+  // curvature, delta position, and the four constraints
+  static final int DOUBLES_PER_STATE = 14;
+
+  private final Supplier<Pose2d> poseSupplier;
+  private final Consumer<Pose2d> resetPose;
+  private final Supplier<ChassisSpeeds> speedsSupplier;
+  private final Consumer<ChassisSpeeds> output;
+  private final double maxModuleSpeed;
+  private final double driveBaseRadius;
+  private final Subsystem drive;
+
+  private final ByteBuffer buffer;
+  private final Map<String, Integer> pathOffsets = new HashMap<>();
+  private final Map<String, Integer> autoOffsets = new HashMap<>();
+  private final Alert missingAlert =
+      new Alert("Compiled autos missing, generating paths on the robot.", AlertType.WARNING);
+
+  /** A path's event marker times and trajectories, and where its marker commands are. */
+  private record CompiledPath(
+      double[] markerTimes,
+      int[] markerOffsets,
+      PathPlannerTrajectory blue,
+      PathPlannerTrajectory red) {}
+
+  /**
+   * @param poseSupplier the robot's field relative pose
+   * @param resetPose resets the robot's pose at the start of an auto
+   * @param speedsSupplier the robot's robot relative speeds
+   * @param output drives the robot at robot relative speeds
+   * @param maxModuleSpeed max module speed, in meters per second
+   * @param driveBaseRadius distance from the robot's center to the furthest module, in meters
+   */
+  public CompiledAutos(
+      Supplier<Pose2d> poseSupplier,
+      Consumer<Pose2d> resetPose,
+      Supplier<ChassisSpeeds> speedsSupplier,
+      Consumer<ChassisSpeeds> output,
+      double maxModuleSpeed,
+      double driveBaseRadius,
+      Subsystem drive) {
+    this.poseSupplier = poseSupplier;
+    this.resetPose = resetPose;
+    this.speedsSupplier = speedsSupplier;
+    this.output = output;
+    this.maxModuleSpeed = maxModuleSpeed;
+    this.driveBaseRadius = driveBaseRadius;
+    this.drive = drive;
+
+    buffer = map(new File(Filesystem.getDeployDirectory(), FILE));
+    if (buffer != null) {
+      index();
+    }
+    missingAlert.set(buffer == null);
+  }
+
+  private static ByteBuffer map(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+        System.out.println("[CompiledAutos] " + file + " is from another version, ignoring it");
+        return null;
+      }
+      return mapped;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /** Records where each path and auto starts, without decoding them. */
+  private void index() {
+    int pathCount = buffer.getInt();
+    for (int i = 0; i < pathCount; i++) {
+      String name = readString(buffer);
+      pathOffsets.put(name, buffer.position());
+      int markerCount = buffer.getInt();
+      for (int j = 0; j < markerCount; j++) {
+        buffer.getDouble();
+        skipCommand(buffer);
+      }
+      // Blue, then red
+      for (int j = 0; j < 2; j++) {
+        int stateCount = buffer.getInt();
+        buffer.position(buffer.position() + stateCount * DOUBLES_PER_STATE * Double.BYTES);
+      }
+    }
+    int autoCount = buffer.getInt();
+    for (int i = 0; i < autoCount; i++) {
+      String name = readString(buffer);
+      autoOffsets.put(name, buffer.position());
+      if (buffer.get() != 0) {
+        buffer.position(buffer.position() + 3 * Double.BYTES);
+      }
+      skipCommand(buffer);
+    }
+  }
+
+  /** Returns true if the auto was compiled, and will not be generated on the robot. */
+  public boolean isCompiled(String autoName) {
+    return autoOffsets.containsKey(autoName);
+  }
+
+  /**
+   * Decodes everything an auto uses from the compiled file, and returns what builds its command
+   * from that. This only decodes data, so it can run on any thread, but the returned supplier
+   * composes commands and must run on the main thread. Autos that were not compiled are generated
+   * by PathPlanner in the supplier.
+   */
+  public Supplier<Command> loadAuto(String autoName) {
+    Integer offset = autoOffsets.get(autoName);
+    if (offset == null) {
+      return () -> new PathPlannerAuto(autoName);
+    }
+    ByteBuffer reader = buffer.duplicate();
+    reader.position(offset);
+    Pose2d startingPose =
+        reader.get() != 0
+            ? new Pose2d(reader.getDouble(), reader.getDouble(), new Rotation2d(reader.getDouble()))
+            : null;
+    int commandOffset = reader.position();
+    Map<String, CompiledPath> paths = new HashMap<>();
+    loadPaths(reader, paths);
+
+    return () -> {
+      Command command = readCommand(commandOffset, paths);
+      if (startingPose != null) {
+        Pose2d bluePose = startingPose;
+        Pose2d redPose = GeometryUtil.flipFieldPose(startingPose);
+        command =
+            Commands.runOnce(() -> resetPose.accept(Alliance.isRed() ? redPose : bluePose))
+                .andThen(command);
+      }
+      return command.withName(autoName);
+    };
+  }
+
+  /** Builds an auto, from the compiled file if it is there, otherwise with PathPlanner. */
+  public Command buildAuto(String autoName) {
+    return loadAuto(autoName).get();
+  }
+
+  /** Decodes every compiled path a command uses, including in event markers, and skips past it. */
+  private void loadPaths(ByteBuffer reader, Map<String, CompiledPath> paths) {
+    byte type = reader.get();
+    switch (type) {
+      case WAIT:
+        reader.getDouble();
+        break;
+      case NAMED:
+        readString(reader);
+        break;
+      case PATH:
+        String pathName = readString(reader);
+        Integer offset = pathOffsets.get(pathName);
+        if (offset != null && !paths.containsKey(pathName)) {
+          paths.put(pathName, loadPath(offset, paths));
+        }
+        break;
+      default:
+        int count = reader.getInt();
+        for (int i = 0; i < count; i++) {
+          loadPaths(reader, paths);
+        }
+        break;
+    }
+  }
+
+  private CompiledPath loadPath(int offset, Map<String, CompiledPath> paths) {
+    ByteBuffer reader = buffer.duplicate();
+    reader.position(offset);
+    int markerCount = reader.getInt();
+    double[] markerTimes = new double[markerCount];
+    int[] markerOffsets = new int[markerCount];
+    for (int i = 0; i < markerCount; i++) {
+      markerTimes[i] = reader.getDouble();
+      markerOffsets[i] = reader.position();
+      loadPaths(reader, paths);
+    }
+    PathPlannerTrajectory blue = readTrajectory(reader);
+    PathPlannerTrajectory red = readTrajectory(reader);
+    return new CompiledPath(markerTimes, markerOffsets, blue, red);
+  }
+
+  private Command readPath(String pathName, Map<String, CompiledPath> paths) {
+    CompiledPath path = paths.get(pathName);
+    if (path == null) {
+      return AutoBuilder.followPath(PathPlannerPath.fromPathFile(pathName));
+    }
+    Command[] markerCommands = new Command[path.markerOffsets().length];
+    for (int i = 0; i < markerCommands.length; i++) {
+      markerCommands[i] = readCommand(path.markerOffsets()[i], paths);
+    }
+    return new CompiledPathCommand(
+        pathName,
+        path.blue(),
+        path.red(),
+        path.markerTimes(),
+        markerCommands,
+        poseSupplier,
+        speedsSupplier,
+        output,
+        maxModuleSpeed,
+        driveBaseRadius,
+        drive);
+  }
+
+  private static PathPlannerTrajectory readTrajectory(ByteBuffer reader) {
+    int stateCount = reader.getInt();
+    List<PathPlannerTrajectory.State> states = new ArrayList<>(stateCount);
+    for (int i = 0; i < stateCount; i++) {
+      PathPlannerTrajectory.State state = new PathPlannerTrajectory.State();
+      state.timeSeconds = reader.getDouble();
+      state.velocityMps = reader.getDouble();
+      state.accelerationMpsSq = reader.getDouble();
+      state.headingAngularVelocityRps = reader.getDouble();
+      state.positionMeters = new Translation2d(reader.getDouble(), reader.getDouble());
+      state.heading = new Rotation2d(reader.getDouble());
+      state.targetHolonomicRotation = new Rotation2d(reader.getDouble());
+      state.curvatureRadPerMeter = reader.getDouble();
+      state.deltaPos = reader.getDouble();
+      state.constraints =
+          new PathConstraints(
+              reader.getDouble(), reader.getDouble(), reader.getDouble(), reader.getDouble());
+      states.add(state);
+    }
+    return new PathPlannerTrajectory(states);
+  }
+
+  private Command readCommand(int offset, Map<String, CompiledPath> paths) {
+    ByteBuffer reader = buffer.duplicate();
+    reader.position(offset);
+    return readCommand(reader, paths);
+  }
+
+  private Command readCommand(ByteBuffer reader, Map<String, CompiledPath> paths) {
+    byte type = reader.get();
+    switch (type) {
+      case WAIT:
+        return Commands.waitSeconds(reader.getDouble());
+      case NAMED:
+        return NamedCommands.getCommand(readString(reader));
+      case PATH:
+        return readPath(readString(reader), paths);
+      default:
+        Command[] children = new Command[reader.getInt()];
+        for (int i = 0; i < children.length; i++) {
+          children[i] = readCommand(reader, paths);
+        }
+        switch (type) {
+          case SEQUENTIAL:
+            return Commands.sequence(children);
+          case PARALLEL:
+            return Commands.parallel(children);
+          case RACE:
+            return Commands.race(children);
+          case DEADLINE:
+            if (children.length == 0) {
+              return Commands.none();
+            }
+            Command[] others = new Command[children.length - 1];
+            System.arraycopy(children, 1, others, 0, others.length);
+            return Commands.deadline(children[0], others);
+          default:
+            throw new IllegalStateException("Unknown compiled command type " + type);
+        }
+    }
+  }
+
+  private static void skipCommand(ByteBuffer reader) {
+    byte type = reader.get();
+    switch (type) {
+      case WAIT:
+        reader.getDouble();
+        break;
+      case NAMED:
+      case PATH:
+        readString(reader);
+        break;
+      default:
+        int count = reader.getInt();
+        for (int i = 0; i < count; i++) {
+          skipCommand(reader);
+        }
+        break;
+    }
+  }
+
+  private static String readString(ByteBuffer reader) {
+    byte[] bytes = new byte[reader.getInt()];
+    reader.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,163 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.auto;
+
+import com.cyberknights4911.util.Alliance;
+import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.path.PathPlannerTrajectory;
+import com.pathplanner.lib.path.PathPoint;
+import com.pathplanner.lib.util.PIDConstants;
+import com.pathplanner.lib.util.PathPlannerLogging;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Follows a compiled trajectory with the same controller and gains as PathPlanner's holonomic path
+ * following, and runs the path's event markers once their trigger time is reached. Markers that
+ * are still running when the path ends are interrupted, as PathPlanner does. Logs the trajectory as
+ * PathPlanner's active path while it runs.
+ */
+final class CompiledPathCommand extends Command {
+  // Same as PathPlanner's HolonomicPathFollowerConfig defaults
+  private static final PIDConstants TRANSLATION_CONSTANTS = new PIDConstants(5.0, 0.0, 0.0);
+  private static final PIDConstants ROTATION_CONSTANTS = new PIDConstants(5.0, 0.0, 0.0);
+  // Below this end velocity, the robot is stopped when the path finishes
+  private static final double STOP_VELOCITY_MPS = 0.1;
+
+  private final Timer timer = new Timer();
+  private final PathPlannerTrajectory blueTrajectory;
+  private final PathPlannerTrajectory redTrajectory;
+  private final PathPlannerPath bluePath;
+  private final PathPlannerPath redPath;
+  private final double[] markerTimes;
+  private final Command[] markerCommands;
+  private final boolean[] markerTriggered;
+  private final boolean[] markerRunning;
+  private final Supplier<Pose2d> poseSupplier;
+  private final Supplier<ChassisSpeeds> speedsSupplier;
+  private final Consumer<ChassisSpeeds> output;
+  private final PPHolonomicDriveController controller;
+
+  private PathPlannerTrajectory trajectory;
+
+  CompiledPathCommand(
+      String pathName,
+      PathPlannerTrajectory blueTrajectory,
+      PathPlannerTrajectory redTrajectory,
+      double[] markerTimes,
+      Command[] markerCommands,
+      Supplier<Pose2d> poseSupplier,
+      Supplier<ChassisSpeeds> speedsSupplier,
+      Consumer<ChassisSpeeds> output,
+      double maxModuleSpeed,
+      double driveBaseRadius,
+      Subsystem drive) {
+    this.blueTrajectory = blueTrajectory;
+    this.redTrajectory = redTrajectory;
+    bluePath = pathThrough(blueTrajectory);
+    redPath = pathThrough(redTrajectory);
+    this.markerTimes = markerTimes;
+    this.markerCommands = markerCommands;
+    this.poseSupplier = poseSupplier;
+    this.speedsSupplier = speedsSupplier;
+    this.output = output;
+    markerTriggered = new boolean[markerCommands.length];
+    markerRunning = new boolean[markerCommands.length];
+    controller =
+        new PPHolonomicDriveController(
+            TRANSLATION_CONSTANTS, ROTATION_CONSTANTS, maxModuleSpeed, driveBaseRadius);
+    trajectory = blueTrajectory;
+
+    addRequirements(drive);
+    for (Command command : markerCommands) {
+      addRequirements(command.getRequirements().toArray(new Subsystem[0]));
+    }
+    setName(pathName);
+  }
+
+  /** A path through the trajectory's states, for logging it as the active path. */
+  private static PathPlannerPath pathThrough(PathPlannerTrajectory trajectory) {
+    List<PathPoint> points = new ArrayList<>(trajectory.getStates().size());
+    for (PathPlannerTrajectory.State state : trajectory.getStates()) {
+      points.add(new PathPoint(state.positionMeters, null, null));
+    }
+    PathPlannerTrajectory.State end = trajectory.getEndState();
+    return PathPlannerPath.fromPathPoints(
+        points, end.constraints, new GoalEndState(end.velocityMps, end.targetHolonomicRotation));
+  }
+
+  @Override
+  public void initialize() {
+    boolean isRed = Alliance.isRed();
+    trajectory = isRed ? redTrajectory : blueTrajectory;
+    PathPlannerLogging.logActivePath(isRed ? redPath : bluePath);
+    controller.reset(poseSupplier.get(), speedsSupplier.get());
+    Arrays.fill(markerTriggered, false);
+    Arrays.fill(markerRunning, false);
+    timer.restart();
+  }
+
+  @Override
+  public void execute() {
+    double time = timer.get();
+    PathPlannerTrajectory.State target = trajectory.sample(time);
+    Pose2d currentPose = poseSupplier.get();
+    ChassisSpeeds speeds = controller.calculateRobotRelativeSpeeds(currentPose, target);
+    PathPlannerLogging.logCurrentPose(currentPose);
+    PathPlannerLogging.logTargetPose(target.getTargetHolonomicPose());
+    output.accept(speeds);
+
+    // Run the markers like the scheduler would: execute what is running, then start new ones
+    for (int i = 0; i < markerCommands.length; i++) {
+      if (markerRunning[i]) {
+        markerCommands[i].execute();
+        if (markerCommands[i].isFinished()) {
+          markerCommands[i].end(false);
+          markerRunning[i] = false;
+        }
+      }
+    }
+    for (int i = 0; i < markerCommands.length; i++) {
+      if (!markerTriggered[i] && time >= markerTimes[i]) {
+        markerTriggered[i] = true;
+        markerCommands[i].initialize();
+        markerRunning[i] = true;
+      }
+    }
+  }
+
+  @Override
+  public boolean isFinished() {
+    return timer.hasElapsed(trajectory.getTotalTimeSeconds());
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    timer.stop();
+    PathPlannerLogging.logActivePath(null);
+    if (!interrupted && Math.abs(trajectory.getEndState().velocityMps) < STOP_VELOCITY_MPS) {
+      output.accept(new ChassisSpeeds());
+    }
+    for (int i = 0; i < markerCommands.length; i++) {
+      if (markerRunning[i]) {
+        markerCommands[i].end(true);
+        markerRunning[i] = false;
+      }
+    }
+  }
+}
@@ -0,0 +1,204 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.auto;
+
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.path.PathPlannerTrajectory;
+import com.pathplanner.lib.path.PathSegment;
+import com.pathplanner.lib.util.GeometryUtil;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Filesystem;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Compiles every PathPlanner path and auto in the deploy directory into the file read by {@link
+ * CompiledAutos}. Runs at build time, with {@code ./gradlew compileTrajectories}, which deploy
+ * depends on.
+ *
+ * <p>Each path's trajectory is generated for both alliances, starting at rest with the path's
+ * preview starting rotation, which is how autos start each path. Event markers are compiled to the
+ * time the trajectory reaches their waypoint relative position. Autos are compiled to their
+ * starting pose and a tree of the commands PathPlanner would build from them.
+ */
+public final class TrajectoryCompiler {
+  private TrajectoryCompiler() {}
+
+  public static void main(String... args) throws IOException, ParseException {
+    long start = System.nanoTime();
+    File pathPlanner = new File(Filesystem.getDeployDirectory(), "pathplanner");
+    String[] paths = list(new File(pathPlanner, "paths"), ".path");
+    String[] autos = list(new File(pathPlanner, "autos"), ".auto");
+
+    File output = new File(Filesystem.getDeployDirectory(), CompiledAutos.FILE);
+    output.getParentFile().mkdirs();
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+      out.writeInt(CompiledAutos.MAGIC);
+      out.writeInt(CompiledAutos.VERSION);
+
+      out.writeInt(paths.length);
+      for (String name : paths) {
+        JSONObject json = parse(new File(pathPlanner, "paths/" + name + ".path"));
+        PathPlannerPath path = PathPlannerPath.fromPathFile(name);
+        Rotation2d startingRotation = path.getPreviewStartingHolonomicPose().getRotation();
+        PathPlannerTrajectory blue = path.getTrajectory(new ChassisSpeeds(), startingRotation);
+        PathPlannerTrajectory red =
+            path.flipPath()
+                .getTrajectory(
+                    new ChassisSpeeds(), GeometryUtil.flipFieldRotation(startingRotation));
+
+        writeString(out, name);
+        JSONArray markers = (JSONArray) json.get("eventMarkers");
+        out.writeInt(markers.size());
+        for (Object marker : markers) {
+          JSONObject markerJson = (JSONObject) marker;
+          out.writeDouble(
+              timeAt(
+                  blue.getStates(),
+                  ((Number) markerJson.get("waypointRelativePos")).doubleValue()));
+          writeCommand(out, (JSONObject) markerJson.get("command"));
+        }
+        writeStates(out, blue.getStates());
+        writeStates(out, red.getStates());
+      }
+
+      out.writeInt(autos.length);
+      for (String name : autos) {
+        JSONObject json = parse(new File(pathPlanner, "autos/" + name + ".auto"));
+        writeString(out, name);
+        JSONObject startingPose = (JSONObject) json.get("startingPose");
+        out.writeBoolean(startingPose != null);
+        if (startingPose != null) {
+          JSONObject position = (JSONObject) startingPose.get("position");
+          out.writeDouble(((Number) position.get("x")).doubleValue());
+          out.writeDouble(((Number) position.get("y")).doubleValue());
+          out.writeDouble(Math.toRadians(((Number) startingPose.get("rotation")).doubleValue()));
+        }
+        writeCommand(out, (JSONObject) json.get("command"));
+      }
+    }
+    System.out.printf(
+        "[TrajectoryCompiler] Compiled %d paths and %d autos into %s in %.0f ms (%d bytes)%n",
+        paths.length,
+        autos.length,
+        output,
+        (System.nanoTime() - start) / 1e6,
+        output.length());
+  }
+
+  private static String[] list(File directory, String extension) {
+    String[] files = directory.list((parent, name) -> name.endsWith(extension));
+    if (files == null) {
+      return new String[0];
+    }
+    for (int i = 0; i < files.length; i++) {
+      files[i] = files[i].substring(0, files[i].length() - extension.length());
+    }
+    Arrays.sort(files);
+    return files;
+  }
+
+  private static JSONObject parse(File file) throws IOException, ParseException {
+    try (Reader reader = new FileReader(file, StandardCharsets.UTF_8)) {
+      return (JSONObject) new JSONParser().parse(reader);
+    }
+  }
+
+  private static void writeStates(DataOutputStream out, List<PathPlannerTrajectory.State> states)
+      throws IOException {
+    out.writeInt(states.size());
+    for (PathPlannerTrajectory.State state : states) {
+      out.writeDouble(state.timeSeconds);
+      out.writeDouble(state.velocityMps);
+      out.writeDouble(state.accelerationMpsSq);
+      out.writeDouble(state.headingAngularVelocityRps);
+      out.writeDouble(state.positionMeters.getX());
+      out.writeDouble(state.positionMeters.getY());
+      out.writeDouble(state.heading.getRadians());
+      out.writeDouble(state.targetHolonomicRotation.getRadians());
+      out.writeDouble(state.curvatureRadPerMeter);
+      out.writeDouble(state.deltaPos);
+      out.writeDouble(state.constraints.getMaxVelocityMps());
+      out.writeDouble(state.constraints.getMaxAccelerationMpsSq());
+      out.writeDouble(state.constraints.getMaxAngularVelocityRps());
+      out.writeDouble(state.constraints.getMaxAngularAccelerationRpsSq());
+    }
+  }
+
+  private static void writeCommand(DataOutputStream out, JSONObject command) throws IOException {
+    JSONObject data = (JSONObject) command.get("data");
+    String type = (String) command.get("type");
+    switch (type) {
+      case "wait":
+        out.writeByte(CompiledAutos.WAIT);
+        out.writeDouble(((Number) data.get("waitTime")).doubleValue());
+        return;
+      case "named":
+        out.writeByte(CompiledAutos.NAMED);
+        writeString(out, (String) data.get("name"));
+        return;
+      case "path":
+        out.writeByte(CompiledAutos.PATH);
+        writeString(out, (String) data.get("pathName"));
+        return;
+      case "sequential":
+        out.writeByte(CompiledAutos.SEQUENTIAL);
+        break;
+      case "parallel":
+        out.writeByte(CompiledAutos.PARALLEL);
+        break;
+      case "race":
+        out.writeByte(CompiledAutos.RACE);
+        break;
+      case "deadline":
+        out.writeByte(CompiledAutos.DEADLINE);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported command type " + type);
+    }
+    JSONArray children = (JSONArray) data.get("commands");
+    out.writeInt(children.size());
+    for (Object child : children) {
+      writeCommand(out, (JSONObject) child);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Returns when the trajectory reaches a waypoint relative position. PathPlanner generates one
+   * state per path point, and a path point every {@link PathSegment#RESOLUTION} of a segment.
+   */
+  private static double timeAt(
+      List<PathPlannerTrajectory.State> states, double waypointRelativePos) {
+    double index = waypointRelativePos / PathSegment.RESOLUTION;
+    int before = Math.min((int) Math.floor(index), states.size() - 1);
+    int after = Math.min(before + 1, states.size() - 1);
+    return MathUtil.interpolate(
+        states.get(before).timeSeconds, states.get(after).timeSeconds, index - before);
+  }
+}
@@ -27,8 +27,21 @@ public record Constants(
     Mode mode,
     Supplier<RobotContainer> supplier) {
 
+  private static Constants override = null;
+
   // Change the returned value here to switch robots
   public static Constants get() {
+    if (override != null) {
+      return override;
+    }
     return Robot2024Constants.ROBOT_2024;
   }
+
+  /**
+   * Replaces the constants returned by {@link #get()}, e.g. to run a sim robot headless. Call
+   * before the robot is constructed.
+   */
+  public static void override(Constants constants) {
+    override = constants;
+  }
 }
@@ -16,6 +16,8 @@ public record DriveConstants(
     double trackWidthX,
     double trackWidthY,
     double maxLinearSpeed,
+    double maxModuleAcceleration,
+    double maxModuleSteerRate,
     double wheelRadius,
     double driveGearRatio,
     double turnGearRatio,
@@ -24,6 +26,8 @@ public record DriveConstants(
     FeedForwardValues driveFeedForwardValues,
     int pigeonId,
     String canBusId,
+    // Whether the drive's CAN bus is Phoenix Pro licensed, for CANcoder fusion
+    boolean phoenixProLicensed,
     ModuleConstants frontLeft,
     ModuleConstants frontRight,
     ModuleConstants backLeft,
@@ -7,13 +7,15 @@
 
 package com.cyberknights4911.control;
 
+import com.cyberknights4911.logging.LoopProfiler;
 import edu.wpi.first.math.filter.Debouncer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
 
 /**
  * Wrapper class for a collection of {@link Trigger}s. Provides some convenience when dealing with
- * binding multiple triggers to the same command.
+ * binding multiple triggers to the same command. Bound commands are profiled, see {@link
+ * LoopProfiler#profile(Command)}.
  */
 public final class Triggers {
 
@@ -84,6 +86,7 @@ public final class Triggers {
    * @see {@link Trigger#onFalse(Command)}
    */
   public Triggers onFalse(Command command) {
+    command = LoopProfiler.profile(command);
     Trigger[] onFalseTriggers = new Trigger[triggers.length];
     for (int i = 0; i < triggers.length; i++) {
       onFalseTriggers[i] = triggers[i].onFalse(command);
@@ -95,6 +98,7 @@ public final class Triggers {
    * @see {@link Trigger#onTrue(Command)}
    */
   public Triggers onTrue(Command command) {
+    command = LoopProfiler.profile(command);
     Trigger[] onTrueTriggers = new Trigger[triggers.length];
     for (int i = 0; i < triggers.length; i++) {
       onTrueTriggers[i] = triggers[i].onTrue(command);
@@ -119,6 +123,7 @@ public final class Triggers {
    * @see {@link Trigger#toggleOnFalse(Command)}
    */
   public Triggers toggleOnFalse(Command command) {
+    command = LoopProfiler.profile(command);
     Trigger[] toggleOnFalseTriggers = new Trigger[triggers.length];
     for (int i = 0; i < triggers.length; i++) {
       toggleOnFalseTriggers[i] = triggers[i].toggleOnFalse(command);
@@ -130,6 +135,7 @@ public final class Triggers {
    * @see {@link Trigger#toggleOnTrue(Command)}
    */
   public Triggers toggleOnTrue(Command command) {
+    command = LoopProfiler.profile(command);
     Trigger[] toggleOnTrueTriggers = new Trigger[triggers.length];
     for (int i = 0; i < triggers.length; i++) {
       toggleOnTrueTriggers[i] = triggers[i].toggleOnTrue(command);
@@ -141,6 +147,7 @@ public final class Triggers {
    * @see {@link Trigger#whileFalse(Command)}
    */
   public Triggers whileFalse(Command command) {
+    command = LoopProfiler.profile(command);
     Trigger[] whileFalseTriggers = new Trigger[triggers.length];
     for (int i = 0; i < triggers.length; i++) {
       whileFalseTriggers[i] = triggers[i].whileFalse(command);
@@ -152,6 +159,7 @@ public final class Triggers {
    * @see {@link Trigger#whileTrue(Command)}
    */
   public Triggers whileTrue(Command command) {
+    command = LoopProfiler.profile(command);
     Trigger[] whileTrueTriggers = new Trigger[triggers.length];
     for (int i = 0; i < triggers.length; i++) {
       whileTrueTriggers[i] = triggers[i].whileTrue(command);
@@ -12,6 +12,8 @@ import static edu.wpi.first.units.Units.Volts;
 import com.cyberknights4911.constants.Constants;
 import com.cyberknights4911.constants.ControlConstants;
 import com.cyberknights4911.constants.DriveConstants;
+import com.cyberknights4911.logging.LoopProfiler;
+import com.cyberknights4911.logging.ProfiledSubsystem;
 import com.cyberknights4911.util.Alliance;
 import com.cyberknights4911.vision.VisionUpdate;
 import edu.wpi.first.math.MathUtil;
@@ -25,24 +27,62 @@ import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import java.util.function.DoubleSupplier;
 import org.littletonrobotics.junction.Logger;
 
-public class Drive extends SubsystemBase {
+public class Drive extends ProfiledSubsystem {
+  // Start over from the measured states if setpoints haven't been sent for this long
+  private static final double SETPOINT_TIMEOUT_SECS = 0.1;
+  private static final ChassisSpeeds STOPPED = new ChassisSpeeds();
+  // Inter-device odometry timestamp skew is counted in bins this wide, the last holds the rest
+  private static final double SKEW_BIN_MS = 0.5;
+  private static final int SKEW_BIN_COUNT = 20;
 
   private final GyroIO gyroIO;
   private final GyroIOInputsAutoLogged gyroInputs = new GyroIOInputsAutoLogged();
+  private final LoopProfiler.Phase odometryPhase = LoopProfiler.phase("Drive/Odometry");
+  private final LoopProfiler.Phase setpointPhase = LoopProfiler.phase("Drive/SetpointGenerator");
   private final Module[] modules = new Module[4]; // FL, FR, BL, BR
   private final DriveConstants driveConstants;
   private final double maxAngularSpeedMetersPerSecond;
   private final SysIdRoutine sysId;
 
   private final SwerveDriveKinematics kinematics;
+  private final SwerveSetpointGenerator setpointGenerator;
+  private final double loopPeriodSecs;
+  private double lastSetpointTimestamp = 0.0;
+  // Updated in place, so running the drive every loop doesn't allocate them
+  private final SwerveModuleState[] measuredStates =
+      new SwerveModuleState[] {
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState()
+      };
+  private final SwerveModuleState[] setpointStates =
+      new SwerveModuleState[] {
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState()
+      };
+  private final SwerveModuleState[] optimizedSetpointStates =
+      new SwerveModuleState[] {
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState()
+      };
+  private final SwerveModuleState[] xStates = new SwerveModuleState[4];
   private Rotation2d rawGyroRotation = new Rotation2d();
+  // Last gyro odometry sample, to interpolate from
+  private double lastYawTimestamp = Double.NaN;
+  private Rotation2d lastYawPosition = new Rotation2d();
+  private final long[] skewHistogram = new long[SKEW_BIN_COUNT];
   // For delta tracking
   private final SwerveModulePosition[] lastModulePositions =
       new SwerveModulePosition[] {
@@ -61,10 +101,21 @@ public class Drive extends SubsystemBase {
       ModuleIO frModuleIO,
       ModuleIO blModuleIO,
       ModuleIO brModuleIO) {
+    super("Drive");
     this.driveConstants = driveConstants;
+    loopPeriodSecs = constants.loopPeriodSecs();
     this.gyroIO = gyroIO;
 
     kinematics = new SwerveDriveKinematics(getModuleTranslations(driveConstants));
+    setpointGenerator =
+        new SwerveSetpointGenerator(
+            getModuleTranslations(driveConstants),
+            driveConstants.maxLinearSpeed(),
+            driveConstants.maxModuleAcceleration(),
+            driveConstants.maxModuleSteerRate());
+    for (int i = 0; i < 4; i++) {
+      xStates[i] = new SwerveModuleState(0.0, getModuleTranslations(driveConstants)[i].getAngle());
+    }
     poseEstimator = new PoseTracker(kinematics, rawGyroRotation, lastModulePositions, new Pose2d());
 
     double driveBaseRadius =
@@ -75,6 +126,8 @@ public class Drive extends SubsystemBase {
     modules[1] = new Module(constants, driveConstants, driveConstants.frontRight(), frModuleIO);
     modules[2] = new Module(constants, driveConstants, driveConstants.backLeft(), blModuleIO);
     modules[3] = new Module(constants, driveConstants, driveConstants.backRight(), brModuleIO);
+    // Start odometry thread (no-op if no signals have been created)
+    PhoenixOdometryThread.getInstance().start();
 
     sysId =
         new SysIdRoutine(
@@ -97,9 +150,19 @@ public class Drive extends SubsystemBase {
     return kinematics.toChassisSpeeds(getModuleStates());
   }
 
-  public void periodic() {
+  @Override
+  protected void updateInputs() {
+    // Drain every odometry queue up to the same sample
+    PhoenixOdometryThread.getInstance().latchSampleSequence();
     gyroIO.updateInputs(gyroInputs);
     Logger.processInputs("Drive/Gyro", gyroInputs);
+    for (var module : modules) {
+      module.updateInputs();
+    }
+  }
+
+  @Override
+  protected void onPeriodic() {
     for (var module : modules) {
       module.periodic();
     }
@@ -119,8 +182,75 @@ public class Drive extends SubsystemBase {
     getModuleStates();
     getPose();
 
-    // Read wheel positions and deltas from each module
+    // Apply every odometry sample received since the last cycle
+    // IO without a high rate odometry thread, like the sim, is sampled once per cycle instead
+    long odometryStart = LoopProfiler.start();
     SwerveModulePosition[] modulePositions = getModulePositions();
+    // The modules have interpolated their samples to these times
+    double[] sampleTimestamps = modules[0].getOdometryTimestamps(); // All signals sampled together
+    if (sampleTimestamps.length == 0) {
+      updateOdometry(Timer.getFPGATimestamp(), modulePositions, gyroInputs.yawPosition);
+    }
+    for (int i = 0; i < sampleTimestamps.length; i++) {
+      SwerveModulePosition[] samplePositions = new SwerveModulePosition[4];
+      for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
+        samplePositions[moduleIndex] = modules[moduleIndex].getOdometryPositions()[i];
+      }
+      Rotation2d sampleYaw = gyroInputs.yawPosition;
+      if (i < gyroInputs.odometryYawPositions.length) {
+        double yawTimestamp = gyroInputs.odometryYawTimestamps[i];
+        sampleYaw =
+            lastYawPosition.interpolate(
+                gyroInputs.odometryYawPositions[i],
+                Module.interpolationFraction(lastYawTimestamp, yawTimestamp, sampleTimestamps[i]));
+        lastYawTimestamp = yawTimestamp;
+        lastYawPosition = gyroInputs.odometryYawPositions[i];
+      }
+      updateOdometry(sampleTimestamps[i], samplePositions, sampleYaw);
+    }
+    logTimestampSkew(sampleTimestamps.length);
+    odometryPhase.record(odometryStart);
+  }
+
+  /**
+   * Logs how far apart the devices measured each odometry sample this cycle, and a histogram of
+   * every sample so far.
+   */
+  private void logTimestampSkew(int sampleCount) {
+    // Only IO that reports when its devices measured every sample
+    for (var module : modules) {
+      if (module.getOdometryDriveTimestamps().length != sampleCount
+          || module.getOdometryTurnTimestamps().length != sampleCount) {
+        return;
+      }
+    }
+    boolean hasGyro = gyroInputs.odometryYawTimestamps.length == sampleCount;
+
+    double[] skewsMs = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      double earliest = Double.POSITIVE_INFINITY;
+      double latest = Double.NEGATIVE_INFINITY;
+      for (var module : modules) {
+        double driveTimestamp = module.getOdometryDriveTimestamps()[i];
+        double turnTimestamp = module.getOdometryTurnTimestamps()[i];
+        earliest = Math.min(earliest, Math.min(driveTimestamp, turnTimestamp));
+        latest = Math.max(latest, Math.max(driveTimestamp, turnTimestamp));
+      }
+      if (hasGyro) {
+        earliest = Math.min(earliest, gyroInputs.odometryYawTimestamps[i]);
+        latest = Math.max(latest, gyroInputs.odometryYawTimestamps[i]);
+      }
+      skewsMs[i] = (latest - earliest) * 1000.0;
+      skewHistogram[Math.min((int) (skewsMs[i] / SKEW_BIN_MS), SKEW_BIN_COUNT - 1)]++;
+    }
+    Logger.recordOutput("Odometry/TimestampSkewMs", skewsMs);
+    Logger.recordOutput("Odometry/TimestampSkewHistogram", skewHistogram);
+  }
+
+  /** Integrates one odometry sample into the pose estimate. */
+  private void updateOdometry(
+      double timestamp, SwerveModulePosition[] modulePositions, Rotation2d gyroYaw) {
+    // Wheel deltas since the last sample
     SwerveModulePosition[] moduleDeltas = new SwerveModulePosition[4];
     for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
       moduleDeltas[moduleIndex] =
@@ -133,7 +263,7 @@ public class Drive extends SubsystemBase {
 
     // Update gyro angle
     if (gyroInputs.connected) { // Use the real gyro angle
-      rawGyroRotation = gyroInputs.yawPosition;
+      rawGyroRotation = gyroYaw;
     } else {
       // Use the angle delta from the kinematics and module deltas
       Twist2d twist = kinematics.toTwist2d(moduleDeltas);
@@ -141,7 +271,7 @@ public class Drive extends SubsystemBase {
     }
 
     // Apply odometry update
-    poseEstimator.update(rawGyroRotation, modulePositions);
+    poseEstimator.updateWithTime(timestamp, rawGyroRotation, modulePositions);
   }
 
   /** Returns SysId routine for characterization. */
@@ -155,26 +285,42 @@ public class Drive extends SubsystemBase {
    * @param speeds Speeds in meters/sec
    */
   public void runVelocity(ChassisSpeeds speeds) {
-    // Calculate module setpoints
-    ChassisSpeeds discreteSpeeds = ChassisSpeeds.discretize(speeds, 0.02);
-    SwerveModuleState[] setpointStates = kinematics.toSwerveModuleStates(discreteSpeeds);
-    SwerveDriveKinematics.desaturateWheelSpeeds(setpointStates, driveConstants.maxLinearSpeed());
+    // Calculate module setpoints the modules can reach from the last ones
+    long start = LoopProfiler.start();
+    double timestamp = Timer.getFPGATimestamp();
+    if (timestamp - lastSetpointTimestamp > SETPOINT_TIMEOUT_SECS) {
+      setpointGenerator.reset(getModuleStates());
+    }
+    lastSetpointTimestamp = timestamp;
+    setpointGenerator.generate(speeds, loopPeriodSecs);
+    setpointPhase.record(start);
 
+    for (int i = 0; i < 4; i++) {
+      setpointStates[i].speedMetersPerSecond = setpointGenerator.getSpeed(i);
+      // The angle only changes while the module is steering
+      double angleRad = setpointGenerator.getAngleRadians(i);
+      if (setpointStates[i].angle.getRadians() != angleRad) {
+        setpointStates[i].angle = new Rotation2d(angleRad);
+      }
+    }
+    runSetpoints(setpointStates);
+  }
+
+  private void runSetpoints(SwerveModuleState[] states) {
     // Send setpoints to modules
-    SwerveModuleState[] optimizedSetpointStates = new SwerveModuleState[4];
     for (int i = 0; i < 4; i++) {
-      // The module returns the optimized state, useful for logging
-      optimizedSetpointStates[i] = modules[i].runSetpoint(setpointStates[i]);
+      // The module writes out the optimized state, useful for logging
+      modules[i].runSetpoint(states[i], optimizedSetpointStates[i]);
     }
 
     // Log setpoint states
-    Logger.recordOutput("SwerveStates/Setpoints", setpointStates);
+    Logger.recordOutput("SwerveStates/Setpoints", states);
     Logger.recordOutput("SwerveStates/SetpointsOptimized", optimizedSetpointStates);
   }
 
   /** Stops the drive. */
   public void stop() {
-    runVelocity(new ChassisSpeeds());
+    runVelocity(STOPPED);
   }
 
   /** Runs forwards at the commanded voltage. */
@@ -195,12 +341,12 @@ public class Drive extends SubsystemBase {
 
   /** Returns the module states (turn angles and drive velocities) for all of the modules. */
   private SwerveModuleState[] getModuleStates() {
-    SwerveModuleState[] states = new SwerveModuleState[4];
     for (int i = 0; i < 4; i++) {
-      states[i] = modules[i].getState();
+      measuredStates[i].speedMetersPerSecond = modules[i].getVelocityMetersPerSec();
+      measuredStates[i].angle = modules[i].getAngle();
     }
-    Logger.recordOutput("SwerveStates/Measured", states);
-    return states;
+    Logger.recordOutput("SwerveStates/Measured", measuredStates);
+    return measuredStates;
   }
 
   /** Returns the module positions (turn angles and drive distance) for all of the modules. */
@@ -245,12 +391,8 @@ public class Drive extends SubsystemBase {
   public Command stopWithX() {
     return Commands.runOnce(
         () -> {
-          Rotation2d[] headings = new Rotation2d[4];
-          for (int i = 0; i < 4; i++) {
-            headings[i] = getModuleTranslations(driveConstants)[i].getAngle();
-          }
-          kinematics.resetHeadings(headings);
-          stop();
+          setpointGenerator.reset(xStates);
+          runSetpoints(xStates);
         },
         this);
   }
@@ -322,6 +464,16 @@ public class Drive extends SubsystemBase {
         this, controlConstants, xSupplier, ySupplier, angleRadians);
   }
 
+  /** Drives with the joysticks while facing an angle that can change, e.g. for moving shots. */
+  public PointToAngleDrive pointToAngleDrive(
+      ControlConstants controlConstants,
+      DoubleSupplier xSupplier,
+      DoubleSupplier ySupplier,
+      DoubleSupplier angleSupplier) {
+    return PointToAngleDrive.createDriveFacingAngle(
+        this, controlConstants, xSupplier, ySupplier, angleSupplier);
+  }
+
   /**
    * Field relative drive command using two joysticks (controlling linear and angular velocities).
    */
@@ -7,22 +7,30 @@
 
 package com.cyberknights4911.drive;
 
-import com.ctre.phoenix6.BaseStatusSignal;
-import com.ctre.phoenix6.StatusCode;
 import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.Pigeon2Configuration;
 import com.ctre.phoenix6.hardware.Pigeon2;
 import com.cyberknights4911.constants.DriveConstants;
+import com.cyberknights4911.util.CanBusBudget;
+import com.cyberknights4911.util.CanSignalHub;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
 
-/** IO implementation for Pigeon2 */
+/**
+ * IO implementation for Pigeon2. Yaw is also sampled at {@link Module#ODOMETRY_FREQUENCY} by the
+ * {@link PhoenixOdometryThread}, in step with the modules, with the time the Pigeon measured it.
+ */
 public class GyroIOPigeon2 implements GyroIO {
   private final Pigeon2 pigeon;
   private final StatusSignal<Double> yaw;
   private final StatusSignal<Double> yawVelocity;
   private final StatusSignal<Double> roll;
   private final StatusSignal<Double> rollVelocity;
+  private final CanSignalHub.PhoenixSignals signals;
+  private final PhoenixOdometryThread.SignalQueue yawPositionQueue;
+  // Reused drain buffers, sized to the queue capacity
+  private final double[] yawTimestampSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
+  private final double[] yawPositionSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
 
   public GyroIOPigeon2(DriveConstants constants) {
     pigeon = new Pigeon2(constants.pigeonId(), constants.canBusId());
@@ -36,24 +44,39 @@ public class GyroIOPigeon2 implements GyroIO {
     pigeon.getConfigurator().apply(new Pigeon2Configuration());
     pigeon.getConfigurator().setYaw(0.0);
 
-    yaw.setUpdateFrequency(100.0);
-    yawVelocity.setUpdateFrequency(100.0);
-
-    roll.setUpdateFrequency(100.0);
-    rollVelocity.setUpdateFrequency(100.0);
+    CanBusBudget budget = CanBusBudget.getInstance();
+    budget.declarePhoenix("Pigeon", constants.canBusId(), Module.ODOMETRY_FREQUENCY, true, yaw);
+    budget.declarePhoenix(
+        "Pigeon", constants.canBusId(), 100.0, false, yawVelocity, roll, rollVelocity);
 
     pigeon.optimizeBusUtilization();
+
+    signals =
+        CanSignalHub.getInstance()
+            .registerPhoenix(constants.canBusId(), yaw, yawVelocity, roll, rollVelocity);
+
+    // The odometry thread refreshes its own copy, so it never races the main loop
+    yawPositionQueue = PhoenixOdometryThread.getInstance().registerSignal(pigeon, yaw.clone());
   }
 
   @Override
   public void updateInputs(GyroIOInputs inputs) {
-    inputs.connected =
-        BaseStatusSignal.refreshAll(yaw, yawVelocity, roll, rollVelocity).equals(StatusCode.OK);
+    inputs.connected = signals.isAllGood();
 
     inputs.yawPosition = Rotation2d.fromDegrees(yaw.getValueAsDouble());
     inputs.yawVelocityRadPerSec = Units.degreesToRadians(yawVelocity.getValueAsDouble());
 
     inputs.rollPosition = Rotation2d.fromDegrees(roll.getValueAsDouble());
     inputs.rollVelocityRadPerSec = Units.degreesToRadians(rollVelocity.getValueAsDouble());
+
+    long readSequence = PhoenixOdometryThread.getInstance().getReadSequence();
+    int sampleCount = yawPositionQueue.timestamps().drainTo(yawTimestampSamples, readSequence);
+    yawPositionQueue.values().drainTo(yawPositionSamples, readSequence);
+    inputs.odometryYawTimestamps = new double[sampleCount];
+    inputs.odometryYawPositions = new Rotation2d[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryYawTimestamps[i] = yawTimestampSamples[i];
+      inputs.odometryYawPositions[i] = Rotation2d.fromDegrees(yawPositionSamples[i]);
+    }
   }
 }
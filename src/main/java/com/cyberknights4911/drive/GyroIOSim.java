@@ -0,0 +1,67 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.drive;
+
+import com.cyberknights4911.constants.DriveConstants;
+import com.cyberknights4911.util.PhysicsSim;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Physics sim implementation of gyro IO.
+ *
+ * <p>Integrates the chassis yaw rate implied by the simulated modules on every {@link PhysicsSim}
+ * sub-step, so the yaw tracks what the wheels actually did rather than what was commanded.
+ */
+public class GyroIOSim implements GyroIO {
+  private final ModuleIOSim[] modules;
+  private final double[] moduleX;
+  private final double[] moduleY;
+  private final double wheelRadius;
+  private final double radiusSquaredSum;
+
+  private double yawRad = 0.0;
+  private double yawVelocityRadPerSec = 0.0;
+
+  /** Modules must be in the same order as {@link Drive#getModuleTranslations}. */
+  public GyroIOSim(DriveConstants driveConstants, ModuleIOSim... modules) {
+    this.modules = modules;
+    wheelRadius = driveConstants.wheelRadius();
+    Translation2d[] translations = Drive.getModuleTranslations(driveConstants);
+    moduleX = new double[modules.length];
+    moduleY = new double[modules.length];
+    double sum = 0.0;
+    for (int i = 0; i < modules.length; i++) {
+      moduleX[i] = translations[i].getX();
+      moduleY[i] = translations[i].getY();
+      sum += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+    }
+    radiusSquaredSum = sum;
+    // Registered after the modules, so each step sees their updated state
+    PhysicsSim.getInstance().register(this::step);
+  }
+
+  private void step(double dtSecs) {
+    // Least squares yaw rate for modules placed symmetrically about the center
+    double omega = 0.0;
+    for (int i = 0; i < modules.length; i++) {
+      double speed = modules[i].getDriveVelocityRadPerSec() * wheelRadius;
+      double angle = modules[i].getTurnAbsolutePositionRad();
+      omega += moduleX[i] * speed * Math.sin(angle) - moduleY[i] * speed * Math.cos(angle);
+    }
+    yawVelocityRadPerSec = omega / radiusSquaredSum;
+    yawRad += yawVelocityRadPerSec * dtSecs;
+  }
+
+  @Override
+  public void updateInputs(GyroIOInputs inputs) {
+    inputs.connected = true;
+    inputs.yawPosition = new Rotation2d(yawRad);
+    inputs.yawVelocityRadPerSec = yawVelocityRadPerSec;
+  }
+}
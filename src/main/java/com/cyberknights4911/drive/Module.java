@@ -10,6 +10,7 @@ package com.cyberknights4911.drive;
 import com.cyberknights4911.constants.Constants;
 import com.cyberknights4911.constants.DriveConstants;
 import com.cyberknights4911.logging.LoggedTunableNumber;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
@@ -32,17 +33,29 @@ public class Module {
   private static final LoggedTunableNumber turnKp = new LoggedTunableNumber("Drive/Module/TurnKp");
   private static final LoggedTunableNumber turnKd = new LoggedTunableNumber("Drive/Module/TurnKd");
 
+  public static final double ODOMETRY_FREQUENCY = 250.0;
+  // Roughly half a second of samples at ODOMETRY_FREQUENCY
+  public static final int ODOMETRY_QUEUE_CAPACITY = 128;
+
   private final ModuleIO io;
   private final ModuleIOInputsAutoLogged inputs = new ModuleIOInputsAutoLogged();
   private final DriveConstants driveConstants;
   private final DriveConstants.ModuleConstants moduleConstants;
+  private final String inputsKey;
 
   private final PIDController driveFeedback;
   private final PIDController turnFeedback;
   private SimpleMotorFeedforward driveFeedforward;
   private Rotation2d angleSetpoint = null; // Setpoint for closed loop control, null for open loop
-  private Double speedSetpoint = null; // Setpoint for closed loop control, null for open loop
+  private double speedSetpoint = Double.NaN; // Setpoint for closed loop control, NaN for open loop
   private Rotation2d turnRelativeOffset = null; // Relative + Offset = Absolute
+  // Odometry samples received this cycle
+  private SwerveModulePosition[] odometryPositions = new SwerveModulePosition[] {};
+  // Last odometry sample, to interpolate from
+  private double lastDriveTimestamp = Double.NaN;
+  private double lastDrivePositionRad = 0.0;
+  private double lastTurnTimestamp = Double.NaN;
+  private Rotation2d lastTurnPosition = new Rotation2d();
 
   public Module(
       Constants constants,
@@ -51,6 +64,7 @@ public class Module {
       ModuleIO io) {
     this.driveConstants = driveConstants;
     this.moduleConstants = moduleConstants;
+    inputsKey = "Drive/Module" + moduleConstants.name();
     this.io = io;
 
     wheelRadius.initDefault(Units.inchesToMeters(driveConstants.wheelRadius()));
@@ -69,16 +83,21 @@ public class Module {
     setBrakeMode(true);
   }
 
-  public void periodic() {
+  public void updateInputs() {
     io.updateInputs(inputs);
-    Logger.processInputs("Drive/Module" + moduleConstants.name(), inputs);
+    Logger.processInputs(inputsKey, inputs);
+  }
 
+  public void periodic() {
     // Update controllers if tunable numbers have changed
+    // These are only sent to the motor controllers when they change
     if (driveKp.hasChanged(hashCode()) || driveKd.hasChanged(hashCode())) {
       driveFeedback.setPID(driveKp.get(), 0.0, driveKd.get());
+      io.configureDrivePID(driveKp.get(), 0.0, driveKd.get());
     }
     if (turnKp.hasChanged(hashCode()) || turnKd.hasChanged(hashCode())) {
       turnFeedback.setPID(turnKp.get(), 0.0, turnKd.get());
+      io.configureTurnPID(turnKp.get(), 0.0, turnKd.get());
     }
     if (driveKs.hasChanged(hashCode()) || driveKv.hasChanged(hashCode())) {
       driveFeedforward = new SimpleMotorFeedforward(driveKs.get(), driveKv.get());
@@ -92,39 +111,108 @@ public class Module {
     boolean LockedDrive = false;
     // Run closed loop turn control
     if (angleSetpoint != null && !LockedDrive) {
-      io.setTurnVoltage(
-          turnFeedback.calculate(getAngle().getRadians(), angleSetpoint.getRadians()));
+      double turnError;
+      if (io.hasOnboardControl()) {
+        io.setTurnPosition(angleSetpoint);
+        turnError = angleSetpoint.minus(getAngle()).getRadians();
+      } else {
+        io.setTurnVoltage(
+            turnFeedback.calculate(getAngle().getRadians(), angleSetpoint.getRadians()));
+        turnError = turnFeedback.getPositionError();
+      }
 
       // Run closed loop drive control
       // Only allowed if closed loop turn control is running
-      if (speedSetpoint != null) {
+      if (!Double.isNaN(speedSetpoint)) {
         // Scale velocity based on turn error
         //
         // When the error is 90°, the velocity setpoint should be 0. As the wheel turns
         // towards the setpoint, its velocity should increase. This is achieved by
         // taking the component of the velocity in the direction of the setpoint.
-        double adjustSpeedSetpoint = speedSetpoint * Math.cos(turnFeedback.getPositionError());
+        double adjustSpeedSetpoint = speedSetpoint * Math.cos(turnError);
 
         // Run drive controller
         double velocityRadPerSec = adjustSpeedSetpoint / driveConstants.wheelRadius();
-        io.setDriveVoltage(
-            driveFeedforward.calculate(velocityRadPerSec)
-                + driveFeedback.calculate(inputs.driveVelocityRadPerSec, velocityRadPerSec));
+        double ffVolts = driveFeedforward.calculate(velocityRadPerSec);
+        if (io.hasOnboardControl()) {
+          io.setDriveVelocity(velocityRadPerSec, ffVolts);
+        } else {
+          io.setDriveVoltage(
+              ffVolts + driveFeedback.calculate(inputs.driveVelocityRadPerSec, velocityRadPerSec));
+        }
+      }
+    }
+
+    // Calculate positions for odometry
+    // Each sample is interpolated from when the device measured it to the common sample time
+    int sampleCount = inputs.odometryTimestamps.length;
+    boolean hasDeviceTimestamps =
+        inputs.odometryDriveTimestamps.length == sampleCount
+            && inputs.odometryTurnTimestamps.length == sampleCount;
+    if (odometryPositions.length != sampleCount) {
+      odometryPositions = new SwerveModulePosition[sampleCount];
+    }
+    for (int i = 0; i < sampleCount; i++) {
+      double drivePositionRad = inputs.odometryDrivePositionsRad[i];
+      Rotation2d turnPosition = inputs.odometryTurnPositions[i];
+      if (hasDeviceTimestamps) {
+        double time = inputs.odometryTimestamps[i];
+        drivePositionRad =
+            MathUtil.interpolate(
+                lastDrivePositionRad,
+                drivePositionRad,
+                interpolationFraction(lastDriveTimestamp, inputs.odometryDriveTimestamps[i], time));
+        turnPosition =
+            lastTurnPosition.interpolate(
+                turnPosition,
+                interpolationFraction(lastTurnTimestamp, inputs.odometryTurnTimestamps[i], time));
+        lastDriveTimestamp = inputs.odometryDriveTimestamps[i];
+        lastTurnTimestamp = inputs.odometryTurnTimestamps[i];
       }
+      lastDrivePositionRad = inputs.odometryDrivePositionsRad[i];
+      lastTurnPosition = inputs.odometryTurnPositions[i];
+
+      // Like getAngle, the samples are absolute angles
+      Rotation2d angle = turnRelativeOffset == null ? new Rotation2d() : turnPosition;
+      odometryPositions[i] =
+          new SwerveModulePosition(drivePositionRad * driveConstants.wheelRadius(), angle);
     }
   }
 
-  /** Runs the module with the specified setpoint state. Returns the optimized state. */
-  public SwerveModuleState runSetpoint(SwerveModuleState state) {
-    // Optimize state based on current angle
-    // Controllers run in "periodic" when the setpoint is not null
-    var optimizedState = SwerveModuleState.optimize(state, getAngle());
+  /**
+   * Returns how far from the previous sample to the next one a time is, for interpolating. Times
+   * outside of the samples are clamped to them.
+   */
+  static double interpolationFraction(double previousTime, double nextTime, double time) {
+    // Also true when there is no previous sample, which is NaN
+    if (!(nextTime > previousTime)) {
+      return 1.0;
+    }
+    return MathUtil.clamp((time - previousTime) / (nextTime - previousTime), 0.0, 1.0);
+  }
 
-    // Update setpoints, controllers run in "periodic"
-    angleSetpoint = optimizedState.angle;
-    speedSetpoint = optimizedState.speedMetersPerSecond;
+  /**
+   * Runs the module with the specified setpoint state, and writes the optimized state to {@code
+   * optimizedState}.
+   */
+  public void runSetpoint(SwerveModuleState state, SwerveModuleState optimizedState) {
+    // Optimize state based on current angle, like SwerveModuleState.optimize
+    double angleRad = state.angle.getRadians();
+    double speed = state.speedMetersPerSecond;
+    if (Math.abs(MathUtil.angleModulus(angleRad - getAngle().getRadians())) > Math.PI / 2.0) {
+      angleRad = MathUtil.angleModulus(angleRad + Math.PI);
+      speed = -speed;
+    }
+
+    // Update setpoints, controllers run in "periodic" when the setpoint is not null
+    // The angle is kept while it's unchanged, so holding a heading doesn't allocate
+    if (angleSetpoint == null || angleSetpoint.getRadians() != angleRad) {
+      angleSetpoint = angleRad == state.angle.getRadians() ? state.angle : new Rotation2d(angleRad);
+    }
+    speedSetpoint = speed;
 
-    return optimizedState;
+    optimizedState.speedMetersPerSecond = speed;
+    optimizedState.angle = angleSetpoint;
   }
 
   /** Runs the module with the specified voltage while controlling to zero degrees. */
@@ -134,7 +222,7 @@ public class Module {
 
     // Open loop drive control
     io.setDriveVoltage(volts);
-    speedSetpoint = null;
+    speedSetpoint = Double.NaN;
   }
 
   /** Disables all outputs to motors. */
@@ -144,7 +232,7 @@ public class Module {
 
     // Disable closed loop control for turn and drive
     angleSetpoint = null;
-    speedSetpoint = null;
+    speedSetpoint = Double.NaN;
   }
 
   /** Sets whether brake mode is enabled. */
@@ -185,6 +273,26 @@ public class Module {
     return new SwerveModuleState(getVelocityMetersPerSec(), getAngle());
   }
 
+  /** Returns the module positions of the odometry samples received this cycle. */
+  public SwerveModulePosition[] getOdometryPositions() {
+    return odometryPositions;
+  }
+
+  /** Returns the timestamps of the odometry samples received this cycle. */
+  public double[] getOdometryTimestamps() {
+    return inputs.odometryTimestamps;
+  }
+
+  /** Returns when the drive motor measured each odometry sample, if the IO reports it. */
+  public double[] getOdometryDriveTimestamps() {
+    return inputs.odometryDriveTimestamps;
+  }
+
+  /** Returns when the turn motor measured each odometry sample, if the IO reports it. */
+  public double[] getOdometryTurnTimestamps() {
+    return inputs.odometryTurnTimestamps;
+  }
+
   /** Returns the drive velocity in radians/sec. */
   public double getCharacterizationVelocity() {
     return inputs.driveVelocityRadPerSec;
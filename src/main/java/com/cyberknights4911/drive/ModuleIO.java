@@ -27,6 +27,9 @@ public interface ModuleIO {
     public double[] odometryTimestamps = new double[] {};
     public double[] odometryDrivePositionsRad = new double[] {};
     public Rotation2d[] odometryTurnPositions = new Rotation2d[] {};
+    // When each odometry sample was measured, if it differs from odometryTimestamps
+    public double[] odometryDriveTimestamps = new double[] {};
+    public double[] odometryTurnTimestamps = new double[] {};
   }
 
   /** Updates the set of loggable inputs. */
@@ -38,6 +41,27 @@ public interface ModuleIO {
   /** Run the turn motor at the specified voltage. */
   public default void setTurnVoltage(double volts) {}
 
+  /**
+   * Returns true if this IO runs drive velocity and turn position control on the motor
+   * controllers. If it does, setpoints are sent with {@link #setDriveVelocity} and {@link
+   * #setTurnPosition}, otherwise the module runs the controllers and sends voltages.
+   */
+  public default boolean hasOnboardControl() {
+    return false;
+  }
+
+  /** Run the drive motor closed loop at the specified wheel velocity, plus feedforward. */
+  public default void setDriveVelocity(double velocityRadPerSec, double ffVolts) {}
+
+  /** Run the turn motor closed loop to the specified absolute module angle. */
+  public default void setTurnPosition(Rotation2d angle) {}
+
+  /** Set drive velocity PID constants, in volts per radian per second of the wheel. */
+  public default void configureDrivePID(double kP, double kI, double kD) {}
+
+  /** Set turn position PID constants, in volts per radian of the module. */
+  public default void configureTurnPID(double kP, double kI, double kD) {}
+
   /** Enable or disable brake mode on the drive motor. */
   public default void setDriveBrakeMode(boolean enable) {}
 
@@ -7,6 +7,7 @@
 
 package com.cyberknights4911.drive;
 
+import com.cyberknights4911.util.PhysicsSim;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.system.plant.DCMotor;
@@ -16,24 +17,39 @@ import edu.wpi.first.wpilibj.simulation.DCMotorSim;
  * Physics sim implementation of module IO.
  *
  * <p>Uses two flywheel sims for the drive and turn motors, with the absolute position initialized
- * to a random value. The flywheel sims are not physically accurate, but provide a decent
- * approximation for the behavior of the module.
+ * to a random value from the {@link PhysicsSim} seed. The flywheel sims are not physically
+ * accurate, but provide a decent approximation for the behavior of the module.
  */
 public class ModuleIOSim implements ModuleIO {
-  private static final double LOOP_PERIOD_SECS = 0.02;
-
   private DCMotorSim driveSim = new DCMotorSim(DCMotor.getNEO(1), 6.75, 0.025);
   private DCMotorSim turnSim = new DCMotorSim(DCMotor.getNEO(1), 150.0 / 7.0, 0.004);
 
-  private final Rotation2d turnAbsoluteInitPosition = new Rotation2d(Math.random() * 2.0 * Math.PI);
+  private final Rotation2d turnAbsoluteInitPosition =
+      new Rotation2d(PhysicsSim.getInstance().getRandom().nextDouble() * 2.0 * Math.PI);
   private double driveAppliedVolts = 0.0;
   private double turnAppliedVolts = 0.0;
 
+  public ModuleIOSim() {
+    PhysicsSim.getInstance().register(this::step);
+  }
+
+  private void step(double dtSecs) {
+    driveSim.update(dtSecs);
+    turnSim.update(dtSecs);
+  }
+
+  /** Returns the drive wheel velocity, for sims that depend on the module's motion. */
+  double getDriveVelocityRadPerSec() {
+    return driveSim.getAngularVelocityRadPerSec();
+  }
+
+  /** Returns the absolute module angle in radians, for sims that depend on the module's motion. */
+  double getTurnAbsolutePositionRad() {
+    return turnSim.getAngularPositionRad() + turnAbsoluteInitPosition.getRadians();
+  }
+
   @Override
   public void updateInputs(ModuleIOInputs inputs) {
-    driveSim.update(LOOP_PERIOD_SECS);
-    turnSim.update(LOOP_PERIOD_SECS);
-
     inputs.drivePositionRad = driveSim.getAngularPositionRad();
     inputs.driveVelocityRadPerSec = driveSim.getAngularVelocityRadPerSec();
     inputs.driveAppliedVolts = driveAppliedVolts;
@@ -7,17 +7,23 @@
 
 package com.cyberknights4911.drive;
 
-import com.ctre.phoenix6.BaseStatusSignal;
 import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.CANcoderConfiguration;
 import com.ctre.phoenix6.configs.MotorOutputConfigs;
+import com.ctre.phoenix6.configs.Slot0Configs;
 import com.ctre.phoenix6.configs.TalonFXConfiguration;
+import com.ctre.phoenix6.controls.PositionVoltage;
+import com.ctre.phoenix6.controls.VelocityVoltage;
 import com.ctre.phoenix6.controls.VoltageOut;
 import com.ctre.phoenix6.hardware.CANcoder;
 import com.ctre.phoenix6.hardware.TalonFX;
+import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
 import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 import com.cyberknights4911.constants.DriveConstants;
+import com.cyberknights4911.util.CanBusBudget;
+import com.cyberknights4911.util.CanSignalHub;
+import com.cyberknights4911.util.DoubleRingBuffer;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
 
@@ -32,6 +38,14 @@ import edu.wpi.first.math.util.Units;
  * motion on the drive motor will propel the robot forward) and copy the reported values from the
  * absolute encoders using AdvantageScope. These values are logged under
  * "/Drive/ModuleX/TurnAbsolutePositionRad"
+ *
+ * <p>Drive velocity and turn position control run on the Talons at 1 kHz, with the CANcoder as the
+ * turn Talon's remote feedback sensor. On a Phoenix Pro licensed bus, see {@link
+ * DriveConstants#phoenixProLicensed()}, the CANcoder is fused with the rotor instead.
+ *
+ * <p>Drive and turn positions are also sampled at {@link Module#ODOMETRY_FREQUENCY} by the {@link
+ * PhoenixOdometryThread}, and every sample since the last loop is reported for odometry with the
+ * time each Talon measured it.
  */
 public class ModuleIOTalonFX implements ModuleIO {
   private final TalonFX driveTalon;
@@ -49,10 +63,25 @@ public class ModuleIOTalonFX implements ModuleIO {
   private final StatusSignal<Double> turnAppliedVolts;
   private final StatusSignal<Double> turnCurrent;
 
+  private final DoubleRingBuffer timestampQueue;
+  private final PhoenixOdometryThread.SignalQueue drivePositionQueue;
+  private final PhoenixOdometryThread.SignalQueue turnPositionQueue;
+  // Reused drain buffers, sized to the queue capacity
+  private final double[] timestampSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
+  private final double[] drivePositionSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
+  private final double[] driveTimestampSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
+  private final double[] turnPositionSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
+  private final double[] turnTimestampSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
+
   private final boolean isTurnMotorInverted = true;
   private final Rotation2d absoluteEncoderOffset;
   private final DriveConstants driveConstants;
 
+  private final VoltageOut driveVoltageRequest = new VoltageOut(0.0);
+  private final VoltageOut turnVoltageRequest = new VoltageOut(0.0);
+  private final VelocityVoltage driveVelocityRequest = new VelocityVoltage(0.0);
+  private final PositionVoltage turnPositionRequest = new PositionVoltage(0.0);
+
   public ModuleIOTalonFX(
       DriveConstants driveConstants, DriveConstants.ModuleConstants moduleConstants) {
     this.driveConstants = driveConstants;
@@ -70,6 +99,16 @@ public class ModuleIOTalonFX implements ModuleIO {
     var turnConfig = new TalonFXConfiguration();
     turnConfig.CurrentLimits.StatorCurrentLimit = 30.0;
     turnConfig.CurrentLimits.StatorCurrentLimitEnable = true;
+    // Position is in module rotations, measured by the CANcoder
+    turnConfig.Feedback.FeedbackRemoteSensorID = moduleConstants.encoderId();
+    // Fusing without a Pro license faults the turn Talon
+    turnConfig.Feedback.FeedbackSensorSource =
+        driveConstants.phoenixProLicensed()
+            ? FeedbackSensorSourceValue.FusedCANcoder
+            : FeedbackSensorSourceValue.RemoteCANcoder;
+    turnConfig.Feedback.RotorToSensorRatio = driveConstants.turnGearRatio();
+    turnConfig.Feedback.SensorToMechanismRatio = 1.0;
+    turnConfig.ClosedLoopGeneral.ContinuousWrap = true;
     turnTalon.getConfigurator().apply(turnConfig);
     setTurnBrakeMode(true);
 
@@ -86,35 +125,47 @@ public class ModuleIOTalonFX implements ModuleIO {
     turnAppliedVolts = turnTalon.getMotorVoltage();
     turnCurrent = turnTalon.getStatorCurrent();
 
-    BaseStatusSignal.setUpdateFrequencyForAll(
-        100.0, drivePosition, turnPosition); // Required for odometry, use faster rate
-    BaseStatusSignal.setUpdateFrequencyForAll(
-        50.0,
-        driveVelocity,
-        driveAppliedVolts,
-        driveCurrent,
-        turnAbsolutePosition,
-        turnVelocity,
-        turnAppliedVolts,
-        turnCurrent);
+    String module = "Module" + moduleConstants.name();
+    String canBus = driveConstants.canBusId();
+    CanBusBudget budget = CanBusBudget.getInstance();
+    // Required for odometry, use faster rate
+    budget.declarePhoenix(module + "Drive", canBus, Module.ODOMETRY_FREQUENCY, true, drivePosition);
+    budget.declarePhoenix(module + "Turn", canBus, Module.ODOMETRY_FREQUENCY, true, turnPosition);
+    budget.declarePhoenix(
+        module + "Drive", canBus, 50.0, false, driveVelocity, driveAppliedVolts, driveCurrent);
+    budget.declarePhoenix(
+        module + "Turn", canBus, 50.0, false, turnVelocity, turnAppliedVolts, turnCurrent);
+    budget.declarePhoenix(module + "Encoder", canBus, 50.0, false, turnAbsolutePosition);
+    // Feedback for the turn Talon's position control, so keep these fast too
+    budget.declarePhoenix(
+        module + "Encoder", canBus, 100.0, true, cancoder.getPosition(), cancoder.getVelocity());
     driveTalon.optimizeBusUtilization();
     turnTalon.optimizeBusUtilization();
     cancoder.optimizeBusUtilization();
+
+    // Refreshed with every other signal on the bus
+    CanSignalHub.getInstance()
+        .registerPhoenix(
+            driveConstants.canBusId(),
+            drivePosition,
+            driveVelocity,
+            driveAppliedVolts,
+            driveCurrent,
+            turnAbsolutePosition,
+            turnPosition,
+            turnVelocity,
+            turnAppliedVolts,
+            turnCurrent);
+
+    // The odometry thread refreshes its own copies, so it never races the main loop
+    PhoenixOdometryThread odometryThread = PhoenixOdometryThread.getInstance();
+    timestampQueue = odometryThread.makeTimestampQueue();
+    drivePositionQueue = odometryThread.registerSignal(driveTalon, drivePosition.clone());
+    turnPositionQueue = odometryThread.registerSignal(turnTalon, turnPosition.clone());
   }
 
   @Override
   public void updateInputs(ModuleIOInputs inputs) {
-    BaseStatusSignal.refreshAll(
-        drivePosition,
-        driveVelocity,
-        driveAppliedVolts,
-        driveCurrent,
-        turnAbsolutePosition,
-        turnPosition,
-        turnVelocity,
-        turnAppliedVolts,
-        turnCurrent);
-
     inputs.drivePositionRad =
         Units.rotationsToRadians(drivePosition.getValueAsDouble())
             / driveConstants.driveGearRatio();
@@ -127,22 +178,82 @@ public class ModuleIOTalonFX implements ModuleIO {
     inputs.turnAbsolutePosition =
         Rotation2d.fromRotations(turnAbsolutePosition.getValueAsDouble())
             .minus(absoluteEncoderOffset);
-    inputs.turnPosition =
-        Rotation2d.fromRotations(turnPosition.getValueAsDouble() / driveConstants.turnGearRatio());
-    inputs.turnVelocityRadPerSec =
-        Units.rotationsToRadians(turnVelocity.getValueAsDouble()) / driveConstants.turnGearRatio();
+    // The turn Talon reports module rotations, through the CANcoder
+    inputs.turnPosition = Rotation2d.fromRotations(turnPosition.getValueAsDouble());
+    inputs.turnVelocityRadPerSec = Units.rotationsToRadians(turnVelocity.getValueAsDouble());
     inputs.turnAppliedVolts = turnAppliedVolts.getValueAsDouble();
     inputs.turnCurrentAmps = new double[] {turnCurrent.getValueAsDouble()};
+
+    long readSequence = PhoenixOdometryThread.getInstance().getReadSequence();
+    int sampleCount = timestampQueue.drainTo(timestampSamples, readSequence);
+    drivePositionQueue.values().drainTo(drivePositionSamples, readSequence);
+    drivePositionQueue.timestamps().drainTo(driveTimestampSamples, readSequence);
+    turnPositionQueue.values().drainTo(turnPositionSamples, readSequence);
+    turnPositionQueue.timestamps().drainTo(turnTimestampSamples, readSequence);
+    inputs.odometryTimestamps = new double[sampleCount];
+    inputs.odometryDrivePositionsRad = new double[sampleCount];
+    inputs.odometryTurnPositions = new Rotation2d[sampleCount];
+    inputs.odometryDriveTimestamps = new double[sampleCount];
+    inputs.odometryTurnTimestamps = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryTimestamps[i] = timestampSamples[i];
+      inputs.odometryDriveTimestamps[i] = driveTimestampSamples[i];
+      inputs.odometryTurnTimestamps[i] = turnTimestampSamples[i];
+      inputs.odometryDrivePositionsRad[i] =
+          Units.rotationsToRadians(drivePositionSamples[i]) / driveConstants.driveGearRatio();
+      // Absolute, like turnAbsolutePosition
+      inputs.odometryTurnPositions[i] =
+          Rotation2d.fromRotations(turnPositionSamples[i]).minus(absoluteEncoderOffset);
+    }
   }
 
   @Override
   public void setDriveVoltage(double volts) {
-    driveTalon.setControl(new VoltageOut(volts));
+    driveTalon.setControl(driveVoltageRequest.withOutput(volts));
   }
 
   @Override
   public void setTurnVoltage(double volts) {
-    turnTalon.setControl(new VoltageOut(volts));
+    turnTalon.setControl(turnVoltageRequest.withOutput(volts));
+  }
+
+  @Override
+  public boolean hasOnboardControl() {
+    return true;
+  }
+
+  @Override
+  public void setDriveVelocity(double velocityRadPerSec, double ffVolts) {
+    driveTalon.setControl(
+        driveVelocityRequest
+            .withVelocity(
+                Units.radiansToRotations(velocityRadPerSec) * driveConstants.driveGearRatio())
+            .withFeedForward(ffVolts));
+  }
+
+  @Override
+  public void setTurnPosition(Rotation2d angle) {
+    // The CANcoder reads the angle plus the offset
+    turnTalon.setControl(
+        turnPositionRequest.withPosition(angle.plus(absoluteEncoderOffset).getRotations()));
+  }
+
+  @Override
+  public void configureDrivePID(double kP, double kI, double kD) {
+    // Convert from volts per radian per second of the wheel to volts per rotor rotation per second
+    double scale = 2.0 * Math.PI / driveConstants.driveGearRatio();
+    driveTalon
+        .getConfigurator()
+        .apply(new Slot0Configs().withKP(kP * scale).withKI(kI * scale).withKD(kD * scale));
+  }
+
+  @Override
+  public void configureTurnPID(double kP, double kI, double kD) {
+    // Convert from volts per radian to volts per module rotation
+    double scale = 2.0 * Math.PI;
+    turnTalon
+        .getConfigurator()
+        .apply(new Slot0Configs().withKP(kP * scale).withKI(kI * scale).withKD(kD * scale));
   }
 
   @Override
@@ -0,0 +1,195 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.drive;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.StatusCode;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.Utils;
+import com.ctre.phoenix6.hardware.ParentDevice;
+import com.cyberknights4911.util.DoubleRingBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Provides an interface for asynchronously reading high-frequency measurements to a set of queues.
+ *
+ * <p>Each queue is a single-producer/single-consumer {@link DoubleRingBuffer}, so neither this
+ * thread nor the main loop takes a lock or allocates per sample. Samples are written to every queue
+ * in lockstep; call {@link #latchSampleSequence()} once per loop before draining so that all
+ * queues are drained to the same sample.
+ *
+ * <p>This version is intended for Phoenix 6 devices on both the RIO and CANivore buses. When using
+ * a CANivore, the thread uses the "waitForAll" blocking method to enable more consistent sampling.
+ * This also allows Phoenix Pro users to benefit from lower latency between devices using CANivore
+ * time synchronization.
+ *
+ * <p>Every sample of a signal carries its own timestamp, the most accurate one Phoenix has for it:
+ * when the device measured it with CANivore time synchronization, otherwise when the CANivore or
+ * the robot received it. The timestamp queues hold the common time of each sample, the earliest
+ * timestamp of a signal that is still updating, so every signal can be interpolated back to it.
+ */
+public class PhoenixOdometryThread extends Thread {
+  // A signal this many odometry periods old is stale, e.g. its device is disconnected
+  private static final double STALE_PERIODS = 3.0;
+
+  private final Lock signalsLock =
+      new ReentrantLock(); // Prevents conflicts when registering signals
+  private BaseStatusSignal[] signals = new BaseStatusSignal[0];
+  private final List<DoubleRingBuffer> queues = new ArrayList<>();
+  private final List<DoubleRingBuffer> signalTimestampQueues = new ArrayList<>();
+  private double[] signalTimestamps = new double[0];
+  private final List<DoubleRingBuffer> timestampQueues = new ArrayList<>();
+  private boolean isCANFD = false;
+
+  // Number of samples fully written to every queue. Only written by this thread.
+  private volatile long sampleSequence = 0;
+  // Snapshot of sampleSequence taken by the main loop
+  private long readSequence = 0;
+
+  private static PhoenixOdometryThread instance = null;
+
+  public static PhoenixOdometryThread getInstance() {
+    if (instance == null) {
+      instance = new PhoenixOdometryThread();
+    }
+    return instance;
+  }
+
+  private PhoenixOdometryThread() {
+    setName("PhoenixOdometryThread");
+    setDaemon(true);
+  }
+
+  @Override
+  public void start() {
+    if (signals.length > 0 || timestampQueues.size() > 0) {
+      super.start();
+    }
+  }
+
+  /** The samples of a signal and the time each one was measured, in FPGA seconds. */
+  public record SignalQueue(DoubleRingBuffer values, DoubleRingBuffer timestamps) {}
+
+  public SignalQueue registerSignal(ParentDevice device, StatusSignal<Double> signal) {
+    SignalQueue queue;
+    signalsLock.lock();
+    try {
+      // Created under the lock so no sample can be published between reading the sequence and
+      // adding the queues
+      queue =
+          new SignalQueue(
+              new DoubleRingBuffer(Module.ODOMETRY_QUEUE_CAPACITY, sampleSequence),
+              new DoubleRingBuffer(Module.ODOMETRY_QUEUE_CAPACITY, sampleSequence));
+      isCANFD = CANBus.isNetworkFD(device.getNetwork());
+      BaseStatusSignal[] newSignals = new BaseStatusSignal[signals.length + 1];
+      System.arraycopy(signals, 0, newSignals, 0, signals.length);
+      newSignals[signals.length] = signal;
+      signals = newSignals;
+      signalTimestamps = new double[signals.length];
+      queues.add(queue.values());
+      signalTimestampQueues.add(queue.timestamps());
+    } finally {
+      signalsLock.unlock();
+    }
+    return queue;
+  }
+
+  public DoubleRingBuffer makeTimestampQueue() {
+    DoubleRingBuffer queue;
+    signalsLock.lock();
+    try {
+      queue = new DoubleRingBuffer(Module.ODOMETRY_QUEUE_CAPACITY, sampleSequence);
+      timestampQueues.add(queue);
+    } finally {
+      signalsLock.unlock();
+    }
+    return queue;
+  }
+
+  /**
+   * Records how many samples have been published so far. Should be called once per loop, before
+   * any queue is drained with {@link #getReadSequence()}.
+   */
+  public void latchSampleSequence() {
+    readSequence = sampleSequence;
+  }
+
+  /** Returns the sample sequence recorded by the last call to {@link #latchSampleSequence()}. */
+  public long getReadSequence() {
+    return readSequence;
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      // Wait for updates from all signals
+      signalsLock.lock();
+      try {
+        if (isCANFD) {
+          BaseStatusSignal.waitForAll(2.0 / Module.ODOMETRY_FREQUENCY, signals);
+        } else {
+          // "waitForAll" does not support blocking on multiple
+          // signals with a bus that is not CAN FD, regardless
+          // of Pro licensing. No reasoning for this behavior
+          // is provided by the documentation.
+          Thread.sleep((long) (1000.0 / Module.ODOMETRY_FREQUENCY));
+          if (signals.length > 0) BaseStatusSignal.refreshAll(signals);
+        }
+
+        // Phoenix timestamps are in its own time base, convert them to FPGA time
+        double now = Logger.getRealTimestamp() / 1e6;
+        double timeBaseOffset = now - Utils.getCurrentTimeSeconds();
+        double staleBefore = now - STALE_PERIODS / Module.ODOMETRY_FREQUENCY;
+        double timestamp = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < signals.length; i++) {
+          signalTimestamps[i] = signals[i].getTimestamp().getTime() + timeBaseOffset;
+          // Stale signals would hold every sample back to their last update
+          if (signals[i].getStatus() == StatusCode.OK && signalTimestamps[i] >= staleBefore) {
+            timestamp = Math.min(timestamp, signalTimestamps[i]);
+          }
+        }
+        if (timestamp == Double.POSITIVE_INFINITY) {
+          timestamp = now;
+        }
+
+        // Save new data to queues
+        // Drop the whole sample if any queue is full so the queues stay aligned
+        if (hasCapacity(queues)
+            && hasCapacity(signalTimestampQueues)
+            && hasCapacity(timestampQueues)) {
+          for (int i = 0; i < signals.length; i++) {
+            queues.get(i).offer(signals[i].getValueAsDouble());
+            signalTimestampQueues.get(i).offer(signalTimestamps[i]);
+          }
+          for (int i = 0; i < timestampQueues.size(); i++) {
+            timestampQueues.get(i).offer(timestamp);
+          }
+          sampleSequence++;
+        }
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      } finally {
+        signalsLock.unlock();
+      }
+    }
+  }
+
+  private static boolean hasCapacity(List<DoubleRingBuffer> queues) {
+    for (int i = 0; i < queues.size(); i++) {
+      if (!queues.get(i).hasCapacity()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
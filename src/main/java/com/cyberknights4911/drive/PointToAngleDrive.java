@@ -61,6 +61,15 @@ public final class PointToAngleDrive extends Command {
     return new PointToAngleDrive(drive, controlConstants, xSupplier, ySupplier, () -> angleRadians);
   }
 
+  static PointToAngleDrive createDriveFacingAngle(
+      Drive drive,
+      ControlConstants controlConstants,
+      DoubleSupplier xSupplier,
+      DoubleSupplier ySupplier,
+      DoubleSupplier angleSupplier) {
+    return new PointToAngleDrive(drive, controlConstants, xSupplier, ySupplier, angleSupplier);
+  }
+
   private PointToAngleDrive(
       Drive drive,
       ControlConstants controlConstants,
@@ -50,6 +50,7 @@ public class PoseTracker {
     experimental =
         new SwerveDrivePoseEstimatorExperimental(
             kinematics, gyroAngle, modulePositions, initialPoseMeters);
+    experimental.setVisionReplayEnabled(true);
   }
 
   public Pose2d update(Rotation2d gyroAngle, SwerveModulePosition[] modulePositions) {
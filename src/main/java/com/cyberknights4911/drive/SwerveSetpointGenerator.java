@@ -0,0 +1,192 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.drive;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * Turns desired chassis speeds into module setpoints the modules can actually reach in one loop,
+ * starting from the previous setpoint.
+ *
+ * <p>The desired module velocities are found like {@code SwerveDriveKinematics} does, after
+ * discretizing and desaturating. The robot then moves only part of the way from the previous
+ * module velocities to the desired ones, the same fraction for every module so the chassis keeps a
+ * consistent motion, small enough that no module accelerates faster than the drive acceleration
+ * limit or has to steer faster than the steering rate limit. A module that reverses direction
+ * slows down through zero instead of spinning around, and a module that is still steering drives
+ * only with the part of its speed along the direction it is pointing, so wheels don't scrub.
+ *
+ * <p>Everything is kept in primitive arrays, so generating a setpoint allocates nothing.
+ */
+public final class SwerveSetpointGenerator {
+  private static final double EPSILON = 1e-6;
+  private static final int STEER_SEARCH_ITERATIONS = 8;
+
+  private final int moduleCount;
+  private final double[] moduleX;
+  private final double[] moduleY;
+  private final double maxSpeed;
+  private final double maxAcceleration;
+  private final double maxSteerRate;
+
+  // Previous setpoint, as signed speed along the module angle
+  private final double[] speeds;
+  private final double[] angles;
+  // Desired module velocities
+  private final double[] desiredVx;
+  private final double[] desiredVy;
+
+  /**
+   * @param moduleTranslations module locations relative to the center of the robot, in meters
+   * @param maxSpeed max module speed, in meters per second
+   * @param maxAcceleration max module acceleration, in meters per second squared
+   * @param maxSteerRate max module steering rate, in radians per second
+   */
+  public SwerveSetpointGenerator(
+      Translation2d[] moduleTranslations,
+      double maxSpeed,
+      double maxAcceleration,
+      double maxSteerRate) {
+    moduleCount = moduleTranslations.length;
+    moduleX = new double[moduleCount];
+    moduleY = new double[moduleCount];
+    for (int i = 0; i < moduleCount; i++) {
+      moduleX[i] = moduleTranslations[i].getX();
+      moduleY[i] = moduleTranslations[i].getY();
+    }
+    this.maxSpeed = maxSpeed;
+    this.maxAcceleration = maxAcceleration;
+    this.maxSteerRate = maxSteerRate;
+    speeds = new double[moduleCount];
+    angles = new double[moduleCount];
+    desiredVx = new double[moduleCount];
+    desiredVy = new double[moduleCount];
+  }
+
+  /** Starts from the measured module states, e.g. after the drive was disabled or stopped. */
+  public void reset(SwerveModuleState[] measuredStates) {
+    for (int i = 0; i < moduleCount; i++) {
+      speeds[i] = measuredStates[i].speedMetersPerSecond;
+      angles[i] = measuredStates[i].angle.getRadians();
+    }
+  }
+
+  /** Generates the next setpoint toward the desired robot relative speeds. */
+  public void generate(ChassisSpeeds desired, double dtSeconds) {
+    // Discretize, like ChassisSpeeds.discretize
+    double dx = desired.vxMetersPerSecond * dtSeconds;
+    double dy = desired.vyMetersPerSecond * dtSeconds;
+    double dtheta = desired.omegaRadiansPerSecond * dtSeconds;
+    double halfTheta = dtheta / 2.0;
+    double cosMinusOne = Math.cos(dtheta) - 1.0;
+    double halfThetaByTanOfHalfDtheta =
+        Math.abs(cosMinusOne) < 1e-9
+            ? 1.0 - dtheta * dtheta / 12.0
+            : -(halfTheta * Math.sin(dtheta)) / cosMinusOne;
+    double vx = (dx * halfThetaByTanOfHalfDtheta + dy * halfTheta) / dtSeconds;
+    double vy = (dy * halfThetaByTanOfHalfDtheta - dx * halfTheta) / dtSeconds;
+    double omega = desired.omegaRadiansPerSecond;
+
+    // Module velocities, desaturated
+    double fastest = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      desiredVx[i] = vx - omega * moduleY[i];
+      desiredVy[i] = vy + omega * moduleX[i];
+      fastest = Math.max(fastest, Math.hypot(desiredVx[i], desiredVy[i]));
+    }
+    if (fastest > maxSpeed) {
+      double scale = maxSpeed / fastest;
+      for (int i = 0; i < moduleCount; i++) {
+        desiredVx[i] *= scale;
+        desiredVy[i] *= scale;
+      }
+    }
+
+    // How far toward the desired velocities every module can get this loop
+    double fraction = 1.0;
+    double maxVelocityChange = maxAcceleration * dtSeconds;
+    double maxSteer = maxSteerRate * dtSeconds;
+    for (int i = 0; i < moduleCount; i++) {
+      double changeX = desiredVx[i] - previousVx(i);
+      double changeY = desiredVy[i] - previousVy(i);
+      double change = Math.hypot(changeX, changeY);
+      if (change * fraction > maxVelocityChange) {
+        fraction = maxVelocityChange / change;
+      }
+    }
+    for (int i = 0; i < moduleCount; i++) {
+      // A stopped module can point anywhere, so it is limited by its speed below instead
+      if (Math.abs(speeds[i]) < EPSILON || steerNeeded(i, fraction) <= maxSteer) {
+        continue;
+      }
+      double feasible = 0.0;
+      double infeasible = fraction;
+      for (int j = 0; j < STEER_SEARCH_ITERATIONS; j++) {
+        double middle = (feasible + infeasible) / 2.0;
+        if (steerNeeded(i, middle) <= maxSteer) {
+          feasible = middle;
+        } else {
+          infeasible = middle;
+        }
+      }
+      fraction = feasible;
+    }
+
+    for (int i = 0; i < moduleCount; i++) {
+      double targetVx = MathUtil.interpolate(previousVx(i), desiredVx[i], fraction);
+      double targetVy = MathUtil.interpolate(previousVy(i), desiredVy[i], fraction);
+      double speed = Math.hypot(targetVx, targetVy);
+      double error = 0.0;
+      if (speed >= EPSILON) {
+        error = MathUtil.angleModulus(Math.atan2(targetVy, targetVx) - angles[i]);
+        // Reverse the wheel rather than turn it more than 90 degrees
+        if (Math.abs(error) > Math.PI / 2.0) {
+          error -= Math.copySign(Math.PI, error);
+          speed = -speed;
+        }
+      }
+      double steer = MathUtil.clamp(error, -maxSteer, maxSteer);
+      angles[i] = MathUtil.angleModulus(angles[i] + steer);
+      // Only drive along the direction the wheel is pointing
+      speeds[i] = speed * Math.cos(error - steer);
+    }
+  }
+
+  /** Returns a module's setpoint speed, in meters per second. */
+  public double getSpeed(int module) {
+    return speeds[module];
+  }
+
+  /** Returns a module's setpoint angle, in radians. */
+  public double getAngleRadians(int module) {
+    return angles[module];
+  }
+
+  private double previousVx(int module) {
+    return speeds[module] * Math.cos(angles[module]);
+  }
+
+  private double previousVy(int module) {
+    return speeds[module] * Math.sin(angles[module]);
+  }
+
+  /** Returns how far a module must steer to move the given fraction toward its desired velocity. */
+  private double steerNeeded(int module, double fraction) {
+    double targetVx = MathUtil.interpolate(previousVx(module), desiredVx[module], fraction);
+    double targetVy = MathUtil.interpolate(previousVy(module), desiredVy[module], fraction);
+    if (Math.hypot(targetVx, targetVy) < EPSILON) {
+      return 0.0;
+    }
+    double error = Math.abs(MathUtil.angleModulus(Math.atan2(targetVy, targetVx) - angles[module]));
+    // Reversing the wheel is free
+    return Math.min(error, Math.PI - error);
+  }
+}
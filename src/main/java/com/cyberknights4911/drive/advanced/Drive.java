@@ -15,47 +15,75 @@ import com.cyberknights4911.constants.DriveConstants;
 import com.cyberknights4911.drive.GyroIO;
 import com.cyberknights4911.drive.GyroIOInputsAutoLogged;
 import com.cyberknights4911.drive.ModuleIO;
+import com.cyberknights4911.drive.PhoenixOdometryThread;
+import com.cyberknights4911.drive.SwerveSetpointGenerator;
+import com.cyberknights4911.logging.LoopProfiler;
+import com.cyberknights4911.logging.ProfiledSubsystem;
 import edu.wpi.first.math.MathUtil;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimatorExperimental;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.DoubleSupplier;
 import org.littletonrobotics.junction.Logger;
 
-public class Drive extends SubsystemBase {
+public class Drive extends ProfiledSubsystem {
+  // Start over from the measured states if setpoints haven't been sent for this long
+  private static final double SETPOINT_TIMEOUT_SECS = 0.1;
+  private static final ChassisSpeeds STOPPED = new ChassisSpeeds();
 
-  static final Lock odometryLock = new ReentrantLock();
   private final GyroIO gyroIO;
   private final GyroIOInputsAutoLogged gyroInputs = new GyroIOInputsAutoLogged();
+  private final LoopProfiler.Phase odometryPhase = LoopProfiler.phase("Drive/Odometry");
+  private final LoopProfiler.Phase setpointPhase = LoopProfiler.phase("Drive/SetpointGenerator");
   private final Module[] modules = new Module[4]; // FL, FR, BL, BR
   private final DriveConstants driveConstants;
   private final double maxAngularSpeedMetersPerSecond;
   private final SysIdRoutine sysId;
 
   private final SwerveDriveKinematics kinematics;
-  private Rotation2d rawGyroRotation = new Rotation2d();
-  private SwerveModulePosition[] lastModulePositions = // For delta tracking
-      new SwerveModulePosition[] {
-        new SwerveModulePosition(),
-        new SwerveModulePosition(),
-        new SwerveModulePosition(),
-        new SwerveModulePosition()
+  private final SwerveSetpointGenerator setpointGenerator;
+  private final double loopPeriodSecs;
+  private double lastSetpointTimestamp = 0.0;
+  // Updated in place, so running the drive every loop doesn't allocate them
+  private final SwerveModuleState[] measuredStates =
+      new SwerveModuleState[] {
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState()
       };
-  private final SwerveDrivePoseEstimator poseEstimator;
+  private final SwerveModuleState[] setpointStates =
+      new SwerveModuleState[] {
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState()
+      };
+  private final SwerveModuleState[] optimizedSetpointStates =
+      new SwerveModuleState[] {
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState()
+      };
+  private final SwerveModuleState[] xStates = new SwerveModuleState[4];
+  private final SwerveTwistAccumulator twistAccumulator;
+  // Reused per-sample module positions for the twist accumulator
+  private final double[] sampleDistancesMeters = new double[4];
+  private final double[] sampleAnglesRad = new double[4];
+  private double lastGyroYawRad = 0.0;
+  private final SwerveDrivePoseEstimatorExperimental poseEstimator;
 
   public Drive(
       Constants constants,
@@ -65,13 +93,34 @@ public class Drive extends SubsystemBase {
       ModuleIO frModuleIO,
       ModuleIO blModuleIO,
       ModuleIO brModuleIO) {
+    super("Drive");
     this.driveConstants = driveConstants;
+    loopPeriodSecs = constants.loopPeriodSecs();
     this.gyroIO = gyroIO;
 
     kinematics = new SwerveDriveKinematics(getModuleTranslations(driveConstants));
+    setpointGenerator =
+        new SwerveSetpointGenerator(
+            getModuleTranslations(driveConstants),
+            driveConstants.maxLinearSpeed(),
+            driveConstants.maxModuleAcceleration(),
+            driveConstants.maxModuleSteerRate());
+    for (int i = 0; i < 4; i++) {
+      xStates[i] = new SwerveModuleState(0.0, getModuleTranslations(driveConstants)[i].getAngle());
+    }
+    twistAccumulator = new SwerveTwistAccumulator(getModuleTranslations(driveConstants));
     poseEstimator =
-        new SwerveDrivePoseEstimator(
-            kinematics, rawGyroRotation, lastModulePositions, new Pose2d());
+        new SwerveDrivePoseEstimatorExperimental(
+            kinematics,
+            new Rotation2d(),
+            new SwerveModulePosition[] {
+              new SwerveModulePosition(),
+              new SwerveModulePosition(),
+              new SwerveModulePosition(),
+              new SwerveModulePosition()
+            },
+            new Pose2d());
+    poseEstimator.setVisionReplayEnabled(true);
     double driveBaseRadius =
         Math.hypot(driveConstants.trackWidthX() / 2.0, driveConstants.trackWidthY() / 2.0);
     maxAngularSpeedMetersPerSecond = driveConstants.maxLinearSpeed() / driveBaseRadius;
@@ -102,18 +151,23 @@ public class Drive extends SubsystemBase {
                 this));
   }
 
-  public void periodic() {
-    odometryLock.lock(); // Prevents odometry updates while reading data
+  @Override
+  protected void updateInputs() {
+    // Drain every odometry queue up to the same sample
+    PhoenixOdometryThread.getInstance().latchSampleSequence();
+    SparkMaxOdometryThread.getInstance().latchSampleSequence();
     gyroIO.updateInputs(gyroInputs);
     for (var module : modules) {
       module.updateInputs();
     }
-    odometryLock.unlock();
     Logger.processInputs("Drive/Gyro", gyroInputs);
     for (var module : modules) {
       module.periodic();
     }
+  }
 
+  @Override
+  protected void onPeriodic() {
     // Stop moving when disabled
     if (DriverStation.isDisabled()) {
       for (var module : modules) {
@@ -127,36 +181,33 @@ public class Drive extends SubsystemBase {
     }
 
     // Update odometry
+    long odometryStart = LoopProfiler.start();
     double[] sampleTimestamps =
         modules[0].getOdometryTimestamps(); // All signals are sampled together
-    int sampleCount = sampleTimestamps.length;
+    int sampleCount = modules[0].getOdometrySampleCount();
     for (int i = 0; i < sampleCount; i++) {
-      // Read wheel positions and deltas from each module
-      SwerveModulePosition[] modulePositions = new SwerveModulePosition[4];
-      SwerveModulePosition[] moduleDeltas = new SwerveModulePosition[4];
+      // Read wheel positions from each module
       for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
-        modulePositions[moduleIndex] = modules[moduleIndex].getOdometryPositions()[i];
-        moduleDeltas[moduleIndex] =
-            new SwerveModulePosition(
-                modulePositions[moduleIndex].distanceMeters
-                    - lastModulePositions[moduleIndex].distanceMeters,
-                modulePositions[moduleIndex].angle);
-        lastModulePositions[moduleIndex] = modulePositions[moduleIndex];
+        sampleDistancesMeters[moduleIndex] =
+            modules[moduleIndex].getOdometryDrivePositionMeters(i);
+        sampleAnglesRad[moduleIndex] = modules[moduleIndex].getOdometryTurnPositionRad(i);
       }
+      twistAccumulator.update(sampleDistancesMeters, sampleAnglesRad);
 
       // Update gyro angle
       if (gyroInputs.connected) {
         // Use the real gyro angle
-        rawGyroRotation = gyroInputs.odometryYawPositions[i];
-      } else {
-        // Use the angle delta from the kinematics and module deltas
-        Twist2d twist = kinematics.toTwist2d(moduleDeltas);
-        rawGyroRotation = rawGyroRotation.plus(new Rotation2d(twist.dtheta));
+        double gyroYawRad = gyroInputs.odometryYawPositions[i].getRadians();
+        twistAccumulator.dtheta = MathUtil.angleModulus(gyroYawRad - lastGyroYawRad);
       }
+      // Tracks the raw gyro angle, or the kinematic angle if the gyro is disconnected
+      lastGyroYawRad += twistAccumulator.dtheta;
 
       // Apply update
-      poseEstimator.updateWithTime(sampleTimestamps[i], rawGyroRotation, modulePositions);
+      poseEstimator.updateWithTwist(
+          sampleTimestamps[i], twistAccumulator.dx, twistAccumulator.dy, twistAccumulator.dtheta);
     }
+    odometryPhase.record(odometryStart);
   }
 
   /**
@@ -165,26 +216,42 @@ public class Drive extends SubsystemBase {
    * @param speeds Speeds in meters/sec
    */
   public void runVelocity(ChassisSpeeds speeds) {
-    // Calculate module setpoints
-    ChassisSpeeds discreteSpeeds = ChassisSpeeds.discretize(speeds, 0.02);
-    SwerveModuleState[] setpointStates = kinematics.toSwerveModuleStates(discreteSpeeds);
-    SwerveDriveKinematics.desaturateWheelSpeeds(setpointStates, driveConstants.maxLinearSpeed());
+    // Calculate module setpoints the modules can reach from the last ones
+    long start = LoopProfiler.start();
+    double timestamp = Timer.getFPGATimestamp();
+    if (timestamp - lastSetpointTimestamp > SETPOINT_TIMEOUT_SECS) {
+      setpointGenerator.reset(getModuleStates());
+    }
+    lastSetpointTimestamp = timestamp;
+    setpointGenerator.generate(speeds, loopPeriodSecs);
+    setpointPhase.record(start);
 
+    for (int i = 0; i < 4; i++) {
+      setpointStates[i].speedMetersPerSecond = setpointGenerator.getSpeed(i);
+      // The angle only changes while the module is steering
+      double angleRad = setpointGenerator.getAngleRadians(i);
+      if (setpointStates[i].angle.getRadians() != angleRad) {
+        setpointStates[i].angle = new Rotation2d(angleRad);
+      }
+    }
+    runSetpoints(setpointStates);
+  }
+
+  private void runSetpoints(SwerveModuleState[] states) {
     // Send setpoints to modules
-    SwerveModuleState[] optimizedSetpointStates = new SwerveModuleState[4];
     for (int i = 0; i < 4; i++) {
-      // The module returns the optimized state, useful for logging
-      optimizedSetpointStates[i] = modules[i].runSetpoint(setpointStates[i]);
+      // The module writes out the optimized state, useful for logging
+      modules[i].runSetpoint(states[i], optimizedSetpointStates[i]);
     }
 
     // Log setpoint states
-    Logger.recordOutput("SwerveStates/Setpoints", setpointStates);
+    Logger.recordOutput("SwerveStates/Setpoints", states);
     Logger.recordOutput("SwerveStates/SetpointsOptimized", optimizedSetpointStates);
   }
 
   /** Stops the drive. */
   public void stop() {
-    runVelocity(new ChassisSpeeds());
+    runVelocity(STOPPED);
   }
 
   /** Returns a command to run a quasistatic test in the specified direction. */
@@ -199,12 +266,12 @@ public class Drive extends SubsystemBase {
 
   /** Returns the module states (turn angles and drive velocities) for all of the modules. */
   private SwerveModuleState[] getModuleStates() {
-    SwerveModuleState[] states = new SwerveModuleState[4];
     for (int i = 0; i < 4; i++) {
-      states[i] = modules[i].getState();
+      measuredStates[i].speedMetersPerSecond = modules[i].getVelocityMetersPerSec();
+      measuredStates[i].angle = modules[i].getAngle();
     }
-    Logger.recordOutput("SwerveStates/Measured", states);
-    return states;
+    Logger.recordOutput("SwerveStates/Measured", measuredStates);
+    return measuredStates;
   }
 
   /** Returns the module positions (turn angles and drive positions) for all of the modules. */
@@ -230,7 +297,7 @@ public class Drive extends SubsystemBase {
 
   /** Resets the current odometry pose. */
   public void setPose(Pose2d pose) {
-    poseEstimator.resetPosition(rawGyroRotation, getModulePositions(), pose);
+    poseEstimator.resetPosition(new Rotation2d(lastGyroYawRad), getModulePositions(), pose);
   }
 
   /**
@@ -250,12 +317,8 @@ public class Drive extends SubsystemBase {
   public Command stopWithX() {
     return Commands.runOnce(
         () -> {
-          Rotation2d[] headings = new Rotation2d[4];
-          for (int i = 0; i < 4; i++) {
-            headings[i] = getModuleTranslations(driveConstants)[i].getAngle();
-          }
-          kinematics.resetHeadings(headings);
-          stop();
+          setpointGenerator.reset(xStates);
+          runSetpoints(xStates);
         },
         this);
   }
@@ -12,6 +12,7 @@ import com.cyberknights4911.constants.DriveConstants;
 import com.cyberknights4911.drive.ModuleIO;
 import com.cyberknights4911.drive.ModuleIOInputsAutoLogged;
 import com.cyberknights4911.logging.LoggedTunableNumber;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
@@ -34,20 +35,27 @@ public class Module {
   private static final LoggedTunableNumber turnKp = new LoggedTunableNumber("Drive/Module/TurnKp");
   private static final LoggedTunableNumber turnKd = new LoggedTunableNumber("Drive/Module/TurnKd");
 
-  static final double ODOMETRY_FREQUENCY = 250.0;
+  // Shared with the basic drive, which reads the same Phoenix odometry thread
+  static final double ODOMETRY_FREQUENCY = com.cyberknights4911.drive.Module.ODOMETRY_FREQUENCY;
+  static final int ODOMETRY_QUEUE_CAPACITY =
+      com.cyberknights4911.drive.Module.ODOMETRY_QUEUE_CAPACITY;
 
   private final ModuleIO io;
   private final ModuleIOInputsAutoLogged inputs = new ModuleIOInputsAutoLogged();
   private final DriveConstants driveConstants;
   private final DriveConstants.ModuleConstants moduleConstants;
+  private final String inputsKey;
 
   private final SimpleMotorFeedforward driveFeedforward;
   private final PIDController driveFeedback;
   private final PIDController turnFeedback;
   private Rotation2d angleSetpoint = null; // Setpoint for closed loop control, null for open loop
-  private Double speedSetpoint = null; // Setpoint for closed loop control, null for open loop
+  private double speedSetpoint = Double.NaN; // Setpoint for closed loop control, NaN for open loop
   private Rotation2d turnRelativeOffset = null; // Relative + Offset = Absolute
-  private SwerveModulePosition[] odometryPositions = new SwerveModulePosition[] {};
+  // Odometry samples received this cycle, preallocated so periodic does not allocate
+  private final double[] odometryDrivePositionsMeters = new double[ODOMETRY_QUEUE_CAPACITY];
+  private final double[] odometryTurnPositionsRad = new double[ODOMETRY_QUEUE_CAPACITY];
+  private int odometrySampleCount = 0;
 
   public Module(
       Constants constants,
@@ -57,6 +65,7 @@ public class Module {
     this.io = io;
     this.driveConstants = driveConstants;
     this.moduleConstants = moduleConstants;
+    inputsKey = "Drive/Module" + moduleConstants.name();
 
     wheelRadius.initDefault(Units.inchesToMeters(driveConstants.wheelRadius()));
     driveKp.initDefault(driveConstants.driveFeedBackValues().kP());
@@ -83,7 +92,7 @@ public class Module {
   }
 
   public void periodic() {
-    Logger.processInputs("Drive/Module" + moduleConstants.name(), inputs);
+    Logger.processInputs(inputsKey, inputs);
 
     // On first cycle, reset relative turn encoder
     // Wait until absolute angle is nonzero in case it wasn't initialized yet
@@ -98,7 +107,7 @@ public class Module {
 
       // Run closed loop drive control
       // Only allowed if closed loop turn control is running
-      if (speedSetpoint != null) {
+      if (!Double.isNaN(speedSetpoint)) {
         // Scale velocity based on turn error
         //
         // When the error is 90°, the velocity setpoint should be 0. As the wheel turns
@@ -115,28 +124,38 @@ public class Module {
     }
 
     // Calculate positions for odometry
-    int sampleCount = inputs.odometryTimestamps.length; // All signals are sampled together
-    odometryPositions = new SwerveModulePosition[sampleCount];
-    for (int i = 0; i < sampleCount; i++) {
-      double positionMeters = inputs.odometryDrivePositionsRad[i] * driveConstants.wheelRadius();
-      Rotation2d angle =
-          inputs.odometryTurnPositions[i].plus(
-              turnRelativeOffset != null ? turnRelativeOffset : new Rotation2d());
-      odometryPositions[i] = new SwerveModulePosition(positionMeters, angle);
+    // All signals are sampled together
+    odometrySampleCount = Math.min(inputs.odometryTimestamps.length, ODOMETRY_QUEUE_CAPACITY);
+    double offsetRad = turnRelativeOffset != null ? turnRelativeOffset.getRadians() : 0.0;
+    for (int i = 0; i < odometrySampleCount; i++) {
+      odometryDrivePositionsMeters[i] =
+          inputs.odometryDrivePositionsRad[i] * driveConstants.wheelRadius();
+      odometryTurnPositionsRad[i] = inputs.odometryTurnPositions[i].getRadians() + offsetRad;
     }
   }
 
-  /** Runs the module with the specified setpoint state. Returns the optimized state. */
-  public SwerveModuleState runSetpoint(SwerveModuleState state) {
-    // Optimize state based on current angle
-    // Controllers run in "periodic" when the setpoint is not null
-    var optimizedState = SwerveModuleState.optimize(state, getAngle());
+  /**
+   * Runs the module with the specified setpoint state, and writes the optimized state to {@code
+   * optimizedState}.
+   */
+  public void runSetpoint(SwerveModuleState state, SwerveModuleState optimizedState) {
+    // Optimize state based on current angle, like SwerveModuleState.optimize
+    double angleRad = state.angle.getRadians();
+    double speed = state.speedMetersPerSecond;
+    if (Math.abs(MathUtil.angleModulus(angleRad - getAngle().getRadians())) > Math.PI / 2.0) {
+      angleRad = MathUtil.angleModulus(angleRad + Math.PI);
+      speed = -speed;
+    }
 
-    // Update setpoints, controllers run in "periodic"
-    angleSetpoint = optimizedState.angle;
-    speedSetpoint = optimizedState.speedMetersPerSecond;
+    // Update setpoints, controllers run in "periodic" when the setpoint is not null
+    // The angle is kept while it's unchanged, so holding a heading doesn't allocate
+    if (angleSetpoint == null || angleSetpoint.getRadians() != angleRad) {
+      angleSetpoint = angleRad == state.angle.getRadians() ? state.angle : new Rotation2d(angleRad);
+    }
+    speedSetpoint = speed;
 
-    return optimizedState;
+    optimizedState.speedMetersPerSecond = speed;
+    optimizedState.angle = angleSetpoint;
   }
 
   /** Runs the module with the specified voltage while controlling to zero degrees. */
@@ -146,7 +165,7 @@ public class Module {
 
     // Open loop drive control
     io.setDriveVoltage(volts);
-    speedSetpoint = null;
+    speedSetpoint = Double.NaN;
   }
 
   /** Disables all outputs to motors. */
@@ -156,7 +175,7 @@ public class Module {
 
     // Disable closed loop control for turn and drive
     angleSetpoint = null;
-    speedSetpoint = null;
+    speedSetpoint = Double.NaN;
   }
 
   /** Sets whether brake mode is enabled. */
@@ -194,9 +213,19 @@ public class Module {
     return new SwerveModuleState(getVelocityMetersPerSec(), getAngle());
   }
 
-  /** Returns the module positions received this cycle. */
-  public SwerveModulePosition[] getOdometryPositions() {
-    return odometryPositions;
+  /** Returns the number of odometry samples received this cycle. */
+  public int getOdometrySampleCount() {
+    return odometrySampleCount;
+  }
+
+  /** Returns the drive position in meters of the given odometry sample from this cycle. */
+  public double getOdometryDrivePositionMeters(int sample) {
+    return odometryDrivePositionsMeters[sample];
+  }
+
+  /** Returns the turn angle in radians of the given odometry sample from this cycle. */
+  public double getOdometryTurnPositionRad(int sample) {
+    return odometryTurnPositionsRad[sample];
   }
 
   /** Returns the timestamps of the samples received this cycle. */
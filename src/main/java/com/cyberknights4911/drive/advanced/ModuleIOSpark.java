@@ -13,7 +13,10 @@ import com.ctre.phoenix6.configs.CANcoderConfiguration;
 import com.ctre.phoenix6.hardware.CANcoder;
 import com.cyberknights4911.constants.DriveConstants;
 import com.cyberknights4911.drive.ModuleIO;
+import com.cyberknights4911.util.CanBusBudget;
+import com.cyberknights4911.util.DoubleRingBuffer;
 import com.cyberknights4911.util.SparkBurnManager;
+import com.cyberknights4911.util.SparkSettings;
 import com.revrobotics.CANSparkBase;
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkFlex;
@@ -22,7 +25,7 @@ import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
 import com.revrobotics.RelativeEncoder;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
-import java.util.Queue;
+import java.util.function.Consumer;
 
 /**
  * Module IO implementation for SparkMax drive motor controller, SparkMax turn motor controller (NEO
@@ -47,9 +50,13 @@ public class ModuleIOSpark implements ModuleIO {
 
   private final StatusSignal<Double> turnAbsolutePosition;
 
-  private final Queue<Double> timestampQueue;
-  private final Queue<Double> drivePositionQueue;
-  private final Queue<Double> turnPositionQueue;
+  private final DoubleRingBuffer timestampQueue;
+  private final DoubleRingBuffer drivePositionQueue;
+  private final DoubleRingBuffer turnPositionQueue;
+  // Reused drain buffers, sized to the queue capacity
+  private final double[] timestampSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
+  private final double[] drivePositionSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
+  private final double[] turnPositionSamples = new double[Module.ODOMETRY_QUEUE_CAPACITY];
 
   private final boolean isTurnMotorInverted = true;
   private final Rotation2d absoluteEncoderOffset;
@@ -67,41 +74,43 @@ public class ModuleIOSpark implements ModuleIO {
 
     cancoder.getConfigurator().apply(new CANcoderConfiguration());
     turnAbsolutePosition = cancoder.getAbsolutePosition();
-    BaseStatusSignal.setUpdateFrequencyForAll(50.0, turnAbsolutePosition);
+    CanBusBudget.getInstance()
+        .declarePhoenix(
+            "Module" + moduleConstants.name(),
+            CanBusBudget.RIO_BUS,
+            50.0,
+            false,
+            turnAbsolutePosition);
 
     driveEncoder = driveMotor.getEncoder();
     turnRelativeEncoder = turnMotor.getEncoder();
 
-    sparkBurnManager.maybeBurnConfig(
-        () -> {
-          turnMotor.setInverted(isTurnMotorInverted);
-          driveMotor.setSmartCurrentLimit(40);
-          turnMotor.setSmartCurrentLimit(30);
-          driveMotor.enableVoltageCompensation(12.0);
-          turnMotor.enableVoltageCompensation(12.0);
-
-          driveEncoder.setPosition(0.0);
-          driveEncoder.setMeasurementPeriod(10);
-          driveEncoder.setAverageDepth(2);
-
-          turnRelativeEncoder.setPosition(0.0);
-          turnRelativeEncoder.setMeasurementPeriod(10);
-          turnRelativeEncoder.setAverageDepth(2);
-        },
-        driveMotor,
-        turnMotor);
-    driveMotor.setPeriodicFramePeriod(
-        PeriodicFrame.kStatus2, (int) (1000.0 / Module.ODOMETRY_FREQUENCY));
-    turnMotor.setPeriodicFramePeriod(
-        PeriodicFrame.kStatus2, (int) (1000.0 / Module.ODOMETRY_FREQUENCY));
+    int odometryPeriodMs = (int) (1000.0 / Module.ODOMETRY_FREQUENCY);
+    Consumer<CANSparkBase> odometryFrames =
+        spark ->
+            CanBusBudget.getInstance()
+                .declareSpark(spark, PeriodicFrame.kStatus2, odometryPeriodMs, true);
+    sparkBurnManager.configure(
+        new SparkSettings(driveMotor)
+            .smartCurrentLimit(40)
+            .voltageCompensation(12.0)
+            .encoderPosition(0.0)
+            .encoderMeasurementPeriod(10)
+            .encoderAverageDepth(2)
+            .frames("odometry", odometryFrames),
+        new SparkSettings(turnMotor)
+            .inverted(isTurnMotorInverted)
+            .smartCurrentLimit(30)
+            .voltageCompensation(12.0)
+            .encoderPosition(0.0)
+            .encoderMeasurementPeriod(10)
+            .encoderAverageDepth(2)
+            .frames("odometry", odometryFrames));
     timestampQueue = SparkMaxOdometryThread.getInstance().makeTimestampQueue();
     drivePositionQueue =
         SparkMaxOdometryThread.getInstance().registerSignal(driveEncoder::getPosition);
     turnPositionQueue =
         SparkMaxOdometryThread.getInstance().registerSignal(turnRelativeEncoder::getPosition);
-
-    driveMotor.burnFlash();
-    turnMotor.burnFlash();
   }
 
   @Override
@@ -128,20 +137,20 @@ public class ModuleIOSpark implements ModuleIO {
     inputs.turnAppliedVolts = turnMotor.getAppliedOutput() * turnMotor.getBusVoltage();
     inputs.turnCurrentAmps = new double[] {turnMotor.getOutputCurrent()};
 
-    inputs.odometryTimestamps =
-        timestampQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.odometryDrivePositionsRad =
-        drivePositionQueue.stream()
-            .mapToDouble(
-                (Double value) -> Units.rotationsToRadians(value) / driveConstants.driveGearRatio())
-            .toArray();
-    inputs.odometryTurnPositions =
-        turnPositionQueue.stream()
-            .map((Double value) -> Rotation2d.fromRotations(value / driveConstants.turnGearRatio()))
-            .toArray(Rotation2d[]::new);
-    timestampQueue.clear();
-    drivePositionQueue.clear();
-    turnPositionQueue.clear();
+    long readSequence = SparkMaxOdometryThread.getInstance().getReadSequence();
+    int sampleCount = timestampQueue.drainTo(timestampSamples, readSequence);
+    drivePositionQueue.drainTo(drivePositionSamples, readSequence);
+    turnPositionQueue.drainTo(turnPositionSamples, readSequence);
+    inputs.odometryTimestamps = new double[sampleCount];
+    inputs.odometryDrivePositionsRad = new double[sampleCount];
+    inputs.odometryTurnPositions = new Rotation2d[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryTimestamps[i] = timestampSamples[i];
+      inputs.odometryDrivePositionsRad[i] =
+          Units.rotationsToRadians(drivePositionSamples[i]) / driveConstants.driveGearRatio();
+      inputs.odometryTurnPositions[i] =
+          Rotation2d.fromRotations(turnPositionSamples[i] / driveConstants.turnGearRatio());
+    }
   }
 
   @Override
@@ -7,11 +7,13 @@
 
 package com.cyberknights4911.drive.advanced;
 
+import com.cyberknights4911.drive.PhoenixOdometryThread;
+import com.cyberknights4911.util.DoubleRingBuffer;
 import edu.wpi.first.wpilibj.Notifier;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.DoubleSupplier;
 import org.littletonrobotics.junction.Logger;
 
@@ -20,11 +22,21 @@ import org.littletonrobotics.junction.Logger;
  *
  * <p>This version is intended for devices like the SparkMax that require polling rather than a
  * blocking thread. A Notifier thread is used to gather samples with consistent timing.
+ *
+ * <p>Queues are lock-free {@link DoubleRingBuffer}s written in lockstep; see {@link
+ * PhoenixOdometryThread} for how the main loop drains them.
  */
 public class SparkMaxOdometryThread {
-  private List<DoubleSupplier> signals = new ArrayList<>();
-  private List<Queue<Double>> queues = new ArrayList<>();
-  private List<Queue<Double>> timestampQueues = new ArrayList<>();
+  private final Lock signalsLock =
+      new ReentrantLock(); // Prevents conflicts when registering signals
+  private final List<DoubleSupplier> signals = new ArrayList<>();
+  private final List<DoubleRingBuffer> queues = new ArrayList<>();
+  private final List<DoubleRingBuffer> timestampQueues = new ArrayList<>();
+
+  // Number of samples fully written to every queue. Only written by the notifier thread.
+  private volatile long sampleSequence = 0;
+  // Snapshot of sampleSequence taken by the main loop
+  private long readSequence = 0;
 
   private final Notifier notifier;
   private static SparkMaxOdometryThread instance = null;
@@ -47,41 +59,70 @@ public class SparkMaxOdometryThread {
     }
   }
 
-  public Queue<Double> registerSignal(DoubleSupplier signal) {
-    Queue<Double> queue = new ArrayDeque<>(100);
-    Drive.odometryLock.lock();
+  public DoubleRingBuffer registerSignal(DoubleSupplier signal) {
+    DoubleRingBuffer queue;
+    signalsLock.lock();
     try {
+      // Created under the lock so no sample can be published between reading the sequence and
+      // adding the queue
+      queue = new DoubleRingBuffer(Module.ODOMETRY_QUEUE_CAPACITY, sampleSequence);
       signals.add(signal);
       queues.add(queue);
     } finally {
-      Drive.odometryLock.unlock();
+      signalsLock.unlock();
     }
     return queue;
   }
 
-  public Queue<Double> makeTimestampQueue() {
-    Queue<Double> queue = new ArrayDeque<>(100);
-    Drive.odometryLock.lock();
+  public DoubleRingBuffer makeTimestampQueue() {
+    DoubleRingBuffer queue;
+    signalsLock.lock();
     try {
+      queue = new DoubleRingBuffer(Module.ODOMETRY_QUEUE_CAPACITY, sampleSequence);
       timestampQueues.add(queue);
     } finally {
-      Drive.odometryLock.unlock();
+      signalsLock.unlock();
     }
     return queue;
   }
 
+  /**
+   * Records how many samples have been published so far. Should be called once per loop, before
+   * any queue is drained with {@link #getReadSequence()}.
+   */
+  public void latchSampleSequence() {
+    readSequence = sampleSequence;
+  }
+
+  /** Returns the sample sequence recorded by the last call to {@link #latchSampleSequence()}. */
+  public long getReadSequence() {
+    return readSequence;
+  }
+
   private void periodic() {
-    Drive.odometryLock.lock();
-    double timestamp = Logger.getRealTimestamp() / 1e6;
+    signalsLock.lock();
     try {
+      double timestamp = Logger.getRealTimestamp() / 1e6;
+      // Drop the whole sample if any queue is full so the queues stay aligned
+      for (int i = 0; i < queues.size(); i++) {
+        if (!queues.get(i).hasCapacity()) {
+          return;
+        }
+      }
+      for (int i = 0; i < timestampQueues.size(); i++) {
+        if (!timestampQueues.get(i).hasCapacity()) {
+          return;
+        }
+      }
       for (int i = 0; i < signals.size(); i++) {
         queues.get(i).offer(signals.get(i).getAsDouble());
       }
       for (int i = 0; i < timestampQueues.size(); i++) {
         timestampQueues.get(i).offer(timestamp);
       }
+      sampleSequence++;
     } finally {
-      Drive.odometryLock.unlock();
+      signalsLock.unlock();
     }
   }
 }
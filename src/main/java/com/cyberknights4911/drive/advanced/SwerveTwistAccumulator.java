@@ -0,0 +1,74 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.drive.advanced;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Computes robot-relative odometry twists from per-module drive distances and turn angles without
+ * allocating. This is the same least-squares forward kinematics as {@link
+ * edu.wpi.first.math.kinematics.SwerveDriveKinematics#toTwist2d}, but works on primitive arrays and
+ * writes its result into mutable fields.
+ */
+final class SwerveTwistAccumulator {
+  private final int moduleCount;
+  // 3 x (2 * moduleCount) pseudo-inverse of the inverse kinematics matrix, row-major
+  private final double[] forwardKinematics;
+  private final double[] lastDistances;
+
+  // Result of the last call to update
+  double dx;
+  double dy;
+  double dtheta;
+
+  SwerveTwistAccumulator(Translation2d[] moduleTranslations) {
+    moduleCount = moduleTranslations.length;
+    lastDistances = new double[moduleCount];
+
+    var inverseKinematics = new SimpleMatrix(moduleCount * 2, 3);
+    for (int i = 0; i < moduleCount; i++) {
+      inverseKinematics.setRow(i * 2, 0, 1, 0, -moduleTranslations[i].getY());
+      inverseKinematics.setRow(i * 2 + 1, 0, 0, 1, moduleTranslations[i].getX());
+    }
+    var pseudoInverse = inverseKinematics.pseudoInverse();
+    forwardKinematics = new double[3 * moduleCount * 2];
+    for (int row = 0; row < 3; row++) {
+      for (int col = 0; col < moduleCount * 2; col++) {
+        forwardKinematics[row * moduleCount * 2 + col] = pseudoInverse.get(row, col);
+      }
+    }
+  }
+
+  /**
+   * Computes the twist since the previous call from the current module positions and stores it in
+   * {@link #dx}, {@link #dy} and {@link #dtheta}.
+   *
+   * @param distancesMeters current drive distance of each module
+   * @param anglesRad current turn angle of each module
+   */
+  void update(double[] distancesMeters, double[] anglesRad) {
+    dx = 0.0;
+    dy = 0.0;
+    dtheta = 0.0;
+    int columns = moduleCount * 2;
+    for (int i = 0; i < moduleCount; i++) {
+      double delta = distancesMeters[i] - lastDistances[i];
+      lastDistances[i] = distancesMeters[i];
+      double deltaX = delta * Math.cos(anglesRad[i]);
+      double deltaY = delta * Math.sin(anglesRad[i]);
+      dx += forwardKinematics[i * 2] * deltaX + forwardKinematics[i * 2 + 1] * deltaY;
+      dy +=
+          forwardKinematics[columns + i * 2] * deltaX
+              + forwardKinematics[columns + i * 2 + 1] * deltaY;
+      dtheta +=
+          forwardKinematics[2 * columns + i * 2] * deltaX
+              + forwardKinematics[2 * columns + i * 2 + 1] * deltaY;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.entrypoint;
+
+import com.cyberknights4911.entrypoint.HeadlessSim.CommandTiming;
+import com.cyberknights4911.entrypoint.HeadlessSim.Result;
+import com.cyberknights4911.util.PhysicsSim;
+import edu.wpi.first.wpilibj.Filesystem;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs every auto in deploy/pathplanner/autos in the headless sim and writes a report.
+ *
+ * <p>WPILib, the command scheduler and PathPlanner all keep global state, so each auto runs in its
+ * own JVM with {@link HeadlessSim}, several at a time. For each auto the report has whether it
+ * finished and in how long, its tracking error, how long it took to build compiled and generated,
+ * and when each named command ran and how long it took. The report is printed and written to
+ * {@link #REPORT_FILE}.
+ *
+ * <p>Run with {@code ./gradlew simulateAllAutos [-Pseed=<seed>] [-Pjobs=<count>]}.
+ */
+public final class AutoBatch {
+  public static final String REPORT_FILE = "build/reports/autos.txt";
+
+  private AutoBatch() {}
+
+  public static void main(String... args) throws Exception {
+    long seed = args.length > 0 ? Long.parseLong(args[0]) : PhysicsSim.DEFAULT_SEED;
+    int jobs =
+        args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+    File autosDirectory = new File(Filesystem.getDeployDirectory(), "pathplanner/autos");
+    String[] files = autosDirectory.list((directory, name) -> name.endsWith(".auto"));
+    if (files == null) {
+      throw new IOException("No autos found in " + autosDirectory);
+    }
+    Arrays.sort(files);
+    File workDirectory = Files.createTempDirectory("autos").toFile();
+
+    long start = System.nanoTime();
+    ExecutorService executor = Executors.newFixedThreadPool(jobs);
+    List<Future<String>> sections = new ArrayList<>();
+    for (String file : files) {
+      String auto = file.substring(0, file.length() - ".auto".length());
+      sections.add(executor.submit(() -> runAuto(auto, seed, workDirectory)));
+    }
+    StringBuilder report = new StringBuilder();
+    for (Future<String> section : sections) {
+      report.append(section.get());
+    }
+    executor.shutdown();
+    report.append(
+        String.format(
+            "%d autos with seed %d in %.1f s wall clock, %d at a time%n",
+            files.length, seed, (System.nanoTime() - start) / 1e9, jobs));
+
+    System.out.print(report);
+    File reportFile = new File(REPORT_FILE);
+    reportFile.getParentFile().mkdirs();
+    Files.writeString(reportFile.toPath(), report);
+    System.out.println("[AutoBatch] Report written to " + reportFile.getAbsolutePath());
+  }
+
+  /** Runs one auto in its own JVM and returns its section of the report. */
+  private static String runAuto(String auto, long seed, File workDirectory)
+      throws IOException, InterruptedException {
+    File resultFile = new File(workDirectory, auto + ".csv");
+    File logFile = new File(workDirectory, auto + ".log");
+    Process process =
+        new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Djava.library.path=" + System.getProperty("java.library.path"),
+                "-cp",
+                System.getProperty("java.class.path"),
+                HeadlessSim.class.getName(),
+                auto,
+                Long.toString(seed),
+                resultFile.getPath())
+            .redirectErrorStream(true)
+            .redirectOutput(logFile)
+            .start();
+    process.waitFor();
+    if (!resultFile.exists()) {
+      return String.format("%s: failed, see %s%n", auto, logFile);
+    }
+
+    Result result = HeadlessSim.readResult(resultFile);
+    StringBuilder section = new StringBuilder();
+    section.append(result).append(System.lineSeparator());
+    for (CommandTiming timing : result.commands()) {
+      section.append(
+          String.format(
+              "  %s: started at %.2f s, took %.2f s%s%n",
+              timing.name(),
+              timing.startSecs(),
+              timing.durationSecs(),
+              timing.interrupted() ? ", interrupted" : ""));
+    }
+    return section.toString();
+  }
+}
@@ -0,0 +1,381 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.entrypoint;
+
+import com.cyberknights4911.constants.Constants;
+import com.cyberknights4911.logging.LoopProfiler;
+import com.cyberknights4911.robot2024.SimRobot2024Constants;
+import com.cyberknights4911.util.PhysicsSim;
+import com.pathplanner.lib.auto.NamedCommands;
+import com.pathplanner.lib.commands.PathPlannerAuto;
+import com.pathplanner.lib.util.PathPlannerLogging;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Runs a PathPlanner auto against the sim robot without a GUI or driver station, as fast as the
+ * host allows.
+ *
+ * <p>The harness pauses the sim clock and steps it one loop period at a time, so every loop sees
+ * exactly one period of simulated time and, with {@link PhysicsSim}, a run is reproducible from its
+ * seed. Tracking error is the distance between PathPlanner's target pose and the odometry pose,
+ * sampled every loop a path is being followed. Every named command the auto uses is timed.
+ *
+ * <p>The auto is built the way the robot's chooser builds it, from the compiled autos when there
+ * are any. The result records the time that took next to the time PathPlanner takes to generate
+ * the same auto, which is what building it cost before autos were precompiled.
+ *
+ * <p>Run with {@code ./gradlew simulateAuto -Pauto=<name> [-Pseed=<seed>]}, where the name is an
+ * auto in deploy/pathplanner/autos. {@link AutoBatch} runs every auto this way, and passes a
+ * third argument, a file to write the result to.
+ */
+public final class HeadlessSim {
+  public static final String DEFAULT_AUTO = "SHOOT_WAIT_AND_LEAVE_AMP";
+  // Length of the autonomous period
+  private static final double AUTO_TIMEOUT_SECS = 15.0;
+  // Loops to run disabled first, like the robot would before a match starts
+  private static final int DISABLED_LOOPS = 10;
+
+  private HeadlessSim() {}
+
+  /** A run of a named command, with times in seconds since the auto started. */
+  public record CommandTiming(
+      String name, double startSecs, double durationSecs, boolean interrupted) {}
+
+  /** The outcome of running one auto. */
+  public record Result(
+      String auto,
+      long seed,
+      boolean finished,
+      double simSecs,
+      double wallSecs,
+      double maxErrorMeters,
+      double rmsErrorMeters,
+      double maxRotationErrorRad,
+      double buildMs,
+      double generateMs,
+      List<CommandTiming> commands) {
+
+    /** Returns how many times faster than real time the auto ran. */
+    public double speedup() {
+      return simSecs / wallSecs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s (seed %d): %s in %.2f s, %.2f s wall clock (%.1fx real time), "
+              + "tracking error max %.3f m, RMS %.3f m, max rotation %.1f deg, "
+              + "built in %.1f ms (PathPlanner generates it in %.1f ms)",
+          auto,
+          seed,
+          finished ? "finished" : "timed out",
+          simSecs,
+          wallSecs,
+          speedup(),
+          maxErrorMeters,
+          rmsErrorMeters,
+          Math.toDegrees(maxRotationErrorRad),
+          buildMs,
+          generateMs);
+    }
+  }
+
+  public static void main(String... args) throws IOException {
+    String auto = args.length > 0 ? args[0] : DEFAULT_AUTO;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : PhysicsSim.DEFAULT_SEED;
+    Result result = run(SimRobot2024Constants.SIM_ROBOT_2024, auto, seed);
+    System.out.println("[HeadlessSim] " + result);
+    for (CommandTiming timing : result.commands()) {
+      System.out.println("[HeadlessSim]   " + timing);
+    }
+    if (args.length > 2) {
+      writeResult(result, new File(args[2]));
+    }
+    // Notifier and NetworkTables threads would otherwise keep the JVM alive
+    System.exit(result.finished() ? 0 : 1);
+  }
+
+  /**
+   * Constructs a robot from the given sim constants and runs an auto to completion or until the
+   * autonomous period ends. Only one robot can be run per JVM.
+   */
+  public static Result run(Constants constants, String autoName, long seed) {
+    HAL.initialize(500, 0);
+    SimHooks.pauseTiming();
+    PhysicsSim.getInstance().setSeed(seed);
+    Constants.override(constants);
+
+    Robot robot = new Robot(constants);
+    robot.robotInit();
+    robot.simulationInit();
+    Logger.periodicAfterUser(0, 0);
+
+    Tracker tracker = new Tracker();
+    PathPlannerLogging.setLogCurrentPoseCallback(tracker::setCurrentPose);
+    // Replaces the callback set up with the autos, so keep logging the setpoint
+    PathPlannerLogging.setLogTargetPoseCallback(
+        targetPose -> {
+          Logger.recordOutput("Odometry/TrajectorySetpoint", targetPose);
+          tracker.addTarget(targetPose);
+        });
+    // Named commands are looked up when the auto is constructed, so wrap them first
+    CommandTimer commandTimer = new CommandTimer();
+    for (String name : findNamedCommands(autoName)) {
+      if (NamedCommands.hasCommand(name)) {
+        NamedCommands.registerCommand(
+            name, new TimedCommand(name, NamedCommands.getCommand(name), commandTimer));
+      }
+    }
+    long buildStart = System.nanoTime();
+    Command auto = robot.getContainer().buildAuto(autoName);
+    double buildMs = (System.nanoTime() - buildStart) / 1e6;
+    long generateStart = System.nanoTime();
+    new PathPlannerAuto(autoName);
+    double generateMs = (System.nanoTime() - generateStart) / 1e6;
+    // Profiled the way the handler would, so this is the command it schedules
+    auto = LoopProfiler.profile(auto);
+    robot.getAutoCommandHandler().setOverride(auto);
+
+    double period = robot.getPeriod();
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setAutonomous(true);
+    DriverStationSim.setEnabled(false);
+    DriverStationSim.notifyNewData();
+    for (int i = 0; i < DISABLED_LOOPS; i++) {
+      step(robot, period);
+    }
+
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.notifyNewData();
+    commandTimer.autoStartSecs = Timer.getFPGATimestamp() + period;
+    long wallStart = System.nanoTime();
+    int loops = 0;
+    do {
+      step(robot, period);
+      loops++;
+    } while (auto.isScheduled() && loops * period < AUTO_TIMEOUT_SECS);
+    double wallSecs = (System.nanoTime() - wallStart) / 1e9;
+    boolean finished = !auto.isScheduled();
+
+    DriverStationSim.setEnabled(false);
+    DriverStationSim.notifyNewData();
+    step(robot, period);
+    Logger.end();
+
+    return new Result(
+        autoName,
+        seed,
+        finished,
+        loops * period,
+        wallSecs,
+        tracker.maxError,
+        tracker.rmsError(),
+        tracker.maxRotationError,
+        buildMs,
+        generateMs,
+        commandTimer.timings);
+  }
+
+  /** Returns the names of the named commands an auto uses, in the order they appear. */
+  private static Set<String> findNamedCommands(String autoName) {
+    Set<String> names = new LinkedHashSet<>();
+    File file =
+        new File(Filesystem.getDeployDirectory(), "pathplanner/autos/" + autoName + ".auto");
+    try (Reader reader = new FileReader(file)) {
+      JSONObject json = (JSONObject) new JSONParser().parse(reader);
+      addNamedCommands((JSONObject) json.get("command"), names);
+    } catch (IOException | ParseException e) {
+      e.printStackTrace();
+    }
+    return names;
+  }
+
+  private static void addNamedCommands(JSONObject command, Set<String> names) {
+    JSONObject data = (JSONObject) command.get("data");
+    if ("named".equals(command.get("type"))) {
+      names.add((String) data.get("name"));
+    } else if (data.get("commands") instanceof JSONArray children) {
+      for (Object child : children) {
+        addNamedCommands((JSONObject) child, names);
+      }
+    }
+  }
+
+  /**
+   * Writes a result as comma separated lines: one "auto" line, then one "command" line per named
+   * command run.
+   */
+  static void writeResult(Result result, File file) throws IOException {
+    try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+      writer.printf(
+          "auto,%s,%d,%b,%f,%f,%f,%f,%f,%f,%f%n",
+          result.auto(),
+          result.seed(),
+          result.finished(),
+          result.simSecs(),
+          result.wallSecs(),
+          result.maxErrorMeters(),
+          result.rmsErrorMeters(),
+          result.maxRotationErrorRad(),
+          result.buildMs(),
+          result.generateMs());
+      for (CommandTiming timing : result.commands()) {
+        writer.printf(
+            "command,%s,%f,%f,%b%n",
+            timing.name(), timing.startSecs(), timing.durationSecs(), timing.interrupted());
+      }
+    }
+  }
+
+  /** Reads a result written by {@link #writeResult}. */
+  static Result readResult(File file) throws IOException {
+    List<String> lines = Files.readAllLines(file.toPath());
+    String[] auto = lines.get(0).split(",");
+    List<CommandTiming> commands = new ArrayList<>();
+    for (String line : lines.subList(1, lines.size())) {
+      String[] fields = line.split(",");
+      commands.add(
+          new CommandTiming(
+              fields[1],
+              Double.parseDouble(fields[2]),
+              Double.parseDouble(fields[3]),
+              Boolean.parseBoolean(fields[4])));
+    }
+    return new Result(
+        auto[1],
+        Long.parseLong(auto[2]),
+        Boolean.parseBoolean(auto[3]),
+        Double.parseDouble(auto[4]),
+        Double.parseDouble(auto[5]),
+        Double.parseDouble(auto[6]),
+        Double.parseDouble(auto[7]),
+        Double.parseDouble(auto[8]),
+        Double.parseDouble(auto[9]),
+        Double.parseDouble(auto[10]),
+        commands);
+  }
+
+  /** Runs one robot loop, the way {@code LoggedRobot} does, after advancing the sim clock. */
+  private static void step(Robot robot, double period) {
+    SimHooks.stepTiming(period);
+    long loopStart = Logger.getRealTimestamp();
+    Logger.periodicBeforeUser();
+    long userStart = Logger.getRealTimestamp();
+    robot.runLoop();
+    Logger.periodicAfterUser(Logger.getRealTimestamp() - userStart, userStart - loopStart);
+  }
+
+  /** Collects the runs of every {@link TimedCommand}. */
+  private static final class CommandTimer {
+    private final List<CommandTiming> timings = new ArrayList<>();
+    private double autoStartSecs = 0.0;
+  }
+
+  /**
+   * Runs a named command and records how long it took. Delegates rather than composes, so it can
+   * be used more than once in an auto.
+   */
+  private static final class TimedCommand extends Command {
+    private final String name;
+    private final Command command;
+    private final CommandTimer timer;
+    private double startSecs = 0.0;
+
+    private TimedCommand(String name, Command command, CommandTimer timer) {
+      this.name = name;
+      this.command = command;
+      this.timer = timer;
+      addRequirements(command.getRequirements().toArray(new Subsystem[0]));
+    }
+
+    @Override
+    public void initialize() {
+      startSecs = Timer.getFPGATimestamp();
+      command.initialize();
+    }
+
+    @Override
+    public void execute() {
+      command.execute();
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+      command.end(interrupted);
+      timer.timings.add(
+          new CommandTiming(
+              name,
+              startSecs - timer.autoStartSecs,
+              Timer.getFPGATimestamp() - startSecs,
+              interrupted));
+    }
+
+    @Override
+    public boolean isFinished() {
+      return command.isFinished();
+    }
+
+    @Override
+    public boolean runsWhenDisabled() {
+      return command.runsWhenDisabled();
+    }
+  }
+
+  /** Accumulates the error between PathPlanner's target pose and the robot's pose. */
+  private static final class Tracker {
+    private Pose2d currentPose = null;
+    private int samples = 0;
+    private double sumSquaredError = 0.0;
+    private double maxError = 0.0;
+    private double maxRotationError = 0.0;
+
+    // PathPlanner reports the current pose before the target pose it is compared to
+    private void setCurrentPose(Pose2d pose) {
+      currentPose = pose;
+    }
+
+    private void addTarget(Pose2d targetPose) {
+      if (currentPose == null) {
+        return;
+      }
+      double error = targetPose.getTranslation().getDistance(currentPose.getTranslation());
+      double rotationError =
+          Math.abs(targetPose.getRotation().minus(currentPose.getRotation()).getRadians());
+      samples++;
+      sumSquaredError += error * error;
+      maxError = Math.max(maxError, error);
+      maxRotationError = Math.max(maxRotationError, rotationError);
+    }
+
+    private double rmsError() {
+      return samples == 0 ? 0.0 : Math.sqrt(sumSquaredError / samples);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.entrypoint;
+
+import com.cyberknights4911.constants.Constants;
+import com.cyberknights4911.constants.DriveConstants;
+import com.cyberknights4911.drive.Drive;
+import com.cyberknights4911.drive.GyroIO;
+import com.cyberknights4911.drive.Module;
+import com.cyberknights4911.drive.ModuleIOSim;
+import com.cyberknights4911.drive.SwerveSetpointGenerator;
+import com.cyberknights4911.robot2024.Robot2024Constants;
+import com.cyberknights4911.robot2024.SimRobot2024Constants;
+import com.cyberknights4911.robot2024.shooter.MovingShotSolver;
+import com.cyberknights4911.robot2024.shooter.ShotTable;
+import com.cyberknights4911.util.DoubleRingBuffer;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.estimator.PoseHistoryBuffer;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Times code that runs every loop and is meant to allocate nothing, on the desktop JVM.
+ *
+ * <p>Each case is called enough times for the JIT to compile it, then timed over many more calls.
+ * The report is the mean time per call and the bytes the calling thread allocated per call, which
+ * should be zero. Desktop times are only a lower bound for the roboRIO, where LoopProfiler phases
+ * give the real figure.
+ *
+ * <p>Run with {@code ./gradlew benchmarkHotPaths}.
+ */
+public final class HotPathBenchmark {
+  private static final int WARMUP_CALLS = 200_000;
+  private static final int TIMED_CALLS = 1_000_000;
+  // Inputs are cycled so the JIT can't fold a constant input away
+  private static final int INPUT_COUNT = 1024;
+  // Odometry samples per main loop at the odometry frequency
+  private static final int SAMPLES_PER_LOOP = 5;
+  private static final double POSE_HISTORY_SECS = 1.5;
+  // A vision measurement's typical age when it reaches the estimator
+  private static final double VISION_LATENCY_SECS = 0.1;
+
+  // Holds results the JIT could otherwise drop as unused
+  private static double[] sink;
+
+  private HotPathBenchmark() {}
+
+  /** How long one call of a case took, and how much it allocated. */
+  public record Result(String name, double nanosPerCall, double bytesPerCall) {}
+
+  /** Something to time, called with the index of the call. */
+  private interface Case {
+    void call(int index);
+  }
+
+  public static void main(String... args) {
+    HAL.initialize(500, 0);
+    for (Result result :
+        run(SimRobot2024Constants.SIM_ROBOT_2024, SimRobot2024Constants.DRIVE_CONSTANTS)) {
+      System.out.printf(
+          "[HotPathBenchmark] %s: %.3f us per call, %.1f bytes allocated per call%n",
+          result.name(), result.nanosPerCall() / 1000.0, result.bytesPerCall());
+    }
+  }
+
+  /** Runs every case and returns the results. */
+  public static List<Result> run(Constants constants, DriveConstants driveConstants) {
+    List<Result> results = new ArrayList<>();
+    results.add(
+        measure(
+            "SwerveSetpointGenerator.generate",
+            setpointGenerator(constants.loopPeriodSecs(), driveConstants)));
+    results.add(measure("Drive.runVelocity", driveRunVelocity(constants, driveConstants)));
+    results.add(measure("MovingShotSolver.solve", movingShotSolver(driveConstants)));
+    results.add(measure("Odometry queue: DoubleRingBuffer", ringBufferQueue()));
+    results.add(measure("Odometry queue: ArrayBlockingQueue", blockingQueue()));
+    results.add(measure("Pose history: PoseHistoryBuffer", poseHistoryBuffer()));
+    results.add(measure("Pose history: TimeInterpolatableBuffer", interpolatableBuffer()));
+    return results;
+  }
+
+  private static Case setpointGenerator(double loopPeriodSecs, DriveConstants driveConstants) {
+    SwerveSetpointGenerator generator =
+        new SwerveSetpointGenerator(
+            Drive.getModuleTranslations(driveConstants),
+            driveConstants.maxLinearSpeed(),
+            driveConstants.maxModuleAcceleration(),
+            driveConstants.maxModuleSteerRate());
+    SwerveModuleState[] stopped = new SwerveModuleState[4];
+    for (int i = 0; i < 4; i++) {
+      stopped[i] = new SwerveModuleState(0.0, new Rotation2d());
+    }
+    generator.reset(stopped);
+
+    ChassisSpeeds[] inputs = spinningSpeeds(driveConstants);
+    return index -> generator.generate(inputs[index % INPUT_COUNT], loopPeriodSecs);
+  }
+
+  /** Includes the setpoint generator, module optimization and logging the setpoints. */
+  private static Case driveRunVelocity(Constants constants, DriveConstants driveConstants) {
+    Drive drive =
+        new Drive(
+            constants,
+            driveConstants,
+            new GyroIO() {},
+            new ModuleIOSim(),
+            new ModuleIOSim(),
+            new ModuleIOSim(),
+            new ModuleIOSim());
+    // Modules report their angle once they have read their absolute encoders
+    drive.periodic();
+
+    ChassisSpeeds[] inputs = spinningSpeeds(driveConstants);
+    return index -> drive.runVelocity(inputs[index % INPUT_COUNT]);
+  }
+
+  /** Full speed in every direction while spinning, so steering and acceleration both limit. */
+  private static ChassisSpeeds[] spinningSpeeds(DriveConstants driveConstants) {
+    ChassisSpeeds[] speeds = new ChassisSpeeds[INPUT_COUNT];
+    for (int i = 0; i < INPUT_COUNT; i++) {
+      double angle = 2.0 * Math.PI * i / INPUT_COUNT;
+      speeds[i] =
+          new ChassisSpeeds(
+              driveConstants.maxLinearSpeed() * Math.cos(7.0 * angle),
+              driveConstants.maxLinearSpeed() * Math.sin(7.0 * angle),
+              Math.PI * Math.sin(3.0 * angle));
+    }
+    return speeds;
+  }
+
+  /**
+   * One loop's worth of odometry samples written then drained into inputs, as the odometry threads
+   * and module IO do. The inputs array is allocated either way, since inputs are sized to the
+   * samples.
+   */
+  private static Case ringBufferQueue() {
+    DoubleRingBuffer queue = new DoubleRingBuffer(Module.ODOMETRY_QUEUE_CAPACITY);
+    double[] drained = new double[queue.capacity()];
+    return index -> {
+      for (int i = 0; i < SAMPLES_PER_LOOP; i++) {
+        queue.offer(index + i);
+      }
+      int count = queue.drainTo(drained);
+      sink = new double[count];
+      System.arraycopy(drained, 0, sink, 0, count);
+    };
+  }
+
+  /** The same as {@link #ringBufferQueue()}, through a queue of boxed samples. */
+  private static Case blockingQueue() {
+    ArrayBlockingQueue<Double> queue = new ArrayBlockingQueue<>(Module.ODOMETRY_QUEUE_CAPACITY);
+    return index -> {
+      for (int i = 0; i < SAMPLES_PER_LOOP; i++) {
+        queue.offer((double) (index + i));
+      }
+      sink = queue.stream().mapToDouble((Double value) -> value).toArray();
+      queue.clear();
+    };
+  }
+
+  /**
+   * An odometry sample added to the pose estimator's history, then a pose looked up for a vision
+   * measurement.
+   */
+  private static Case poseHistoryBuffer() {
+    PoseHistoryBuffer buffer = new PoseHistoryBuffer(POSE_HISTORY_SECS, 1024);
+    Pose2d[] poses = circlingPoses();
+    double[] sample = new double[4];
+    return index -> {
+      double timestamp = index / Module.ODOMETRY_FREQUENCY;
+      Pose2d pose = poses[index % INPUT_COUNT];
+      buffer.addSample(
+          timestamp,
+          pose.getX(),
+          pose.getY(),
+          pose.getRotation().getCos(),
+          pose.getRotation().getSin());
+      buffer.sampleAt(timestamp - VISION_LATENCY_SECS, sample);
+    };
+  }
+
+  /** The same as {@link #poseHistoryBuffer()}, through WPILib's TreeMap backed buffer. */
+  private static Case interpolatableBuffer() {
+    TimeInterpolatableBuffer<Pose2d> buffer =
+        TimeInterpolatableBuffer.createBuffer(POSE_HISTORY_SECS);
+    Pose2d[] poses = circlingPoses();
+    return index -> {
+      double timestamp = index / Module.ODOMETRY_FREQUENCY;
+      buffer.addSample(timestamp, poses[index % INPUT_COUNT]);
+      buffer.getSample(timestamp - VISION_LATENCY_SECS);
+    };
+  }
+
+  private static Pose2d[] circlingPoses() {
+    Pose2d[] poses = new Pose2d[INPUT_COUNT];
+    for (int i = 0; i < INPUT_COUNT; i++) {
+      double angle = 2.0 * Math.PI * i / INPUT_COUNT;
+      poses[i] =
+          new Pose2d(
+              4.0 + 2.0 * Math.cos(angle), 4.0 + 2.0 * Math.sin(angle), new Rotation2d(angle));
+    }
+    return poses;
+  }
+
+  private static Case movingShotSolver(DriveConstants driveConstants) {
+    ShotTable shotTable = new ShotTable(Robot2024Constants.SHOOTER_CONSTANTS.shotCalibrations());
+    MovingShotSolver solver = new MovingShotSolver(shotTable, Pose2d::new, ChassisSpeeds::new);
+
+    // Across the wing, driving in every direction, so time of flight takes a few iterations
+    Pose2d[] poses = new Pose2d[INPUT_COUNT];
+    ChassisSpeeds[] speeds = new ChassisSpeeds[INPUT_COUNT];
+    for (int i = 0; i < INPUT_COUNT; i++) {
+      double angle = 2.0 * Math.PI * i / INPUT_COUNT;
+      poses[i] =
+          new Pose2d(
+              2.0 + 3.0 * (i % 32) / 32.0, 2.0 + 4.0 * (i / 32) / 32.0, new Rotation2d(angle));
+      speeds[i] =
+          new ChassisSpeeds(
+              driveConstants.maxLinearSpeed() * Math.cos(5.0 * angle),
+              driveConstants.maxLinearSpeed() * Math.sin(5.0 * angle),
+              0.0);
+    }
+    return index ->
+        solver.solve(poses[index % INPUT_COUNT], speeds[index % INPUT_COUNT], index % 2 == 0);
+  }
+
+  private static Result measure(String name, Case benchmarkCase) {
+    for (int i = 0; i < WARMUP_CALLS; i++) {
+      benchmarkCase.call(i);
+    }
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long startBytes = threads.getCurrentThreadAllocatedBytes();
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < TIMED_CALLS; i++) {
+      benchmarkCase.call(i);
+    }
+    long elapsedNanos = System.nanoTime() - startNanos;
+    long allocatedBytes = threads.getCurrentThreadAllocatedBytes() - startBytes;
+    return new Result(
+        name, (double) elapsedNanos / TIMED_CALLS, (double) allocatedBytes / TIMED_CALLS);
+  }
+}
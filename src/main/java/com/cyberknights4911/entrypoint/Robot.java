@@ -11,10 +11,15 @@ import com.cyberknights4911.auto.AutoCommandHandler;
 import com.cyberknights4911.constants.Constants;
 import com.cyberknights4911.logging.Alert;
 import com.cyberknights4911.logging.Alert.AlertType;
+import com.cyberknights4911.logging.LoopProfiler;
 import com.cyberknights4911.logging.RobotLogger;
+import com.cyberknights4911.util.CanBusBudget;
+import com.cyberknights4911.util.CanSignalHub;
+import com.cyberknights4911.util.PhysicsSim;
 import edu.wpi.first.wpilibj.Threads;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import org.littletonrobotics.junction.LoggedRobot;
+import org.littletonrobotics.junction.Logger;
 
 public final class Robot extends LoggedRobot {
   private final RobotLogger robotLogger;
@@ -22,10 +27,17 @@ public final class Robot extends LoggedRobot {
   private final Constants constants;
   private final CommandScheduler scheduler;
 
+  private final LoopProfiler.Phase periodicPhase = LoopProfiler.phase("Robot/Periodic");
+  private final LoopProfiler.Phase signalPhase = LoopProfiler.phase("Robot/SignalRefresh");
+  private final LoopProfiler.Phase schedulerPhase = LoopProfiler.phase("Robot/Scheduler");
+  private final LoopProfiler.Phase containerPhase = LoopProfiler.phase("Robot/Container");
+  private final LoopProfiler.Phase loggerPhase = LoopProfiler.phase("Robot/Logger");
+  private final LoopProfiler.Phase autoPhase = LoopProfiler.phase("Robot/AutoCheck");
+
   private RobotContainer container;
 
   public Robot(Constants constants) {
-    super();
+    super(constants.loopPeriodSecs());
     this.constants = constants;
     robotLogger = new RobotLogger(constants, CommandScheduler.getInstance());
     autoCommandHandler = new AutoCommandHandler();
@@ -34,24 +46,65 @@ public final class Robot extends LoggedRobot {
 
   @Override
   public void robotInit() {
+    long initStart = Logger.getRealTimestamp();
     robotLogger.startLogging(this);
+    LoopProfiler.install();
     container = constants.supplier().get();
+    // Every device has been declared by now
+    CanBusBudget.getInstance().plan();
+    long autoStart = Logger.getRealTimestamp();
     container.setupAutos(autoCommandHandler);
+    long initEnd = Logger.getRealTimestamp();
     checkStartupAlerts();
+
+    // Startup time, to see what precompiling autos saves
+    Logger.recordOutput("Robot/AutoSetupMs", (initEnd - autoStart) / 1000.0);
+    Logger.recordOutput("Robot/InitMs", (initEnd - initStart) / 1000.0);
+    System.out.printf(
+        "[Robot] Initialized in %.0f ms, %.0f ms of it setting up autos%n",
+        (initEnd - initStart) / 1000.0, (initEnd - autoStart) / 1000.0);
   }
 
   @Override
   public void robotPeriodic() {
     Threads.setCurrentThreadPriority(true, 99);
+    long periodicStart = LoopProfiler.start();
+    CanSignalHub.getInstance().refresh();
+    signalPhase.record(periodicStart);
+
+    long start = LoopProfiler.start();
     scheduler.run();
+    schedulerPhase.record(start);
+
+    start = LoopProfiler.start();
     if (container != null) {
       container.onRobotPeriodic(this);
     }
+    containerPhase.record(start);
+
+    start = LoopProfiler.start();
     robotLogger.robotPeriodic();
+    loggerPhase.record(start);
+
+    start = LoopProfiler.start();
     autoCommandHandler.checkCurrentCommand();
+    autoPhase.record(start);
+
+    periodicPhase.record(periodicStart);
+    LoopProfiler.periodic();
     Threads.setCurrentThreadPriority(true, 10);
   }
 
+  @Override
+  public void simulationPeriodic() {
+    PhysicsSim.getInstance().advance(getPeriod());
+  }
+
+  @Override
+  public void disabledPeriodic() {
+    autoCommandHandler.prepareSelectedCommand();
+  }
+
   @Override
   public void autonomousInit() {
     autoCommandHandler.startCurrentCommand();
@@ -62,6 +115,19 @@ public final class Robot extends LoggedRobot {
     autoCommandHandler.stopCurrentCommand();
   }
 
+  AutoCommandHandler getAutoCommandHandler() {
+    return autoCommandHandler;
+  }
+
+  RobotContainer getContainer() {
+    return container;
+  }
+
+  /** Runs one iteration of the robot loop, for callers that drive the loop themselves. */
+  void runLoop() {
+    loopFunc();
+  }
+
   private void checkStartupAlerts() {
     if (constants.tuningMode()) {
       new Alert("Tuning mode active, do not use in competition.", AlertType.INFO).set(true);
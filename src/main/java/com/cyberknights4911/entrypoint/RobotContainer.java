@@ -8,10 +8,17 @@
 package com.cyberknights4911.entrypoint;
 
 import com.cyberknights4911.auto.AutoCommandHandler;
+import com.pathplanner.lib.commands.PathPlannerAuto;
+import edu.wpi.first.wpilibj2.command.Command;
 import org.littletonrobotics.junction.LoggedRobot;
 
 public interface RobotContainer {
   void onRobotPeriodic(LoggedRobot robot);
 
   void setupAutos(AutoCommandHandler handler);
+
+  /** Builds an auto from deploy/pathplanner/autos the way this robot's chooser builds it. */
+  default Command buildAuto(String autoName) {
+    return new PathPlannerAuto(autoName);
+  }
 }
@@ -0,0 +1,235 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.logging;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.littletonrobotics.junction.Logger;
+import org.littletonrobotics.junction.networktables.LoggedDashboardBoolean;
+
+/**
+ * Times phases of the main loop, such as subsystem periodics, the command scheduler and IO input
+ * updates, and logs a summary of each phase once per second under "LoopProfile/".
+ *
+ * <p>Timings go into fixed-size log-linear histograms, so recording never allocates. Profiling is
+ * toggled at runtime with the "LoopProfile/Enabled" dashboard switch. When disabled, {@link
+ * #start()} and {@link Phase#record(long)} do nothing but check a flag.
+ *
+ * <p>Where the JVM supports it, the main thread's allocation rate is also logged, as
+ * "LoopProfile/AllocatedBytesPerLoop", to compare hot path changes before and after.
+ *
+ * <p>Subsystems are timed by extending {@link ProfiledSubsystem}. Commands are timed by wrapping
+ * them with {@link #profile(Command)}, which button bindings, default commands and autos do.
+ *
+ * <p>Only use from the main robot thread.
+ */
+public final class LoopProfiler {
+  private static final long NOT_STARTED = Long.MIN_VALUE;
+  private static final long REPORT_PERIOD_NANOS = 1_000_000_000L;
+
+  // Histogram buckets in microseconds: exact below SUB_BUCKETS, then SUB_BUCKETS linear buckets
+  // per power of two, up to about one second
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 20;
+  private static final int BUCKET_COUNT = SUB_BUCKETS * (MAX_EXPONENT - SUB_BUCKET_BITS + 2);
+
+  private static final List<Phase> phases = new ArrayList<>();
+  private static final Map<String, Phase> phasesByName = new HashMap<>();
+  // A command can only be wrapped once, so the same command bound twice shares its wrapper
+  private static final Map<Command, Command> profiledCommands = new IdentityHashMap<>();
+
+  // Created by install, once logging has started
+  private static LoggedDashboardBoolean enabledSwitch = null;
+  private static boolean enabled = false;
+  private static long lastReportNanos = System.nanoTime();
+
+  // Null if the JVM cannot measure per-thread allocation
+  private static final com.sun.management.ThreadMXBean allocationBean = allocationBean();
+  private static long lastAllocatedBytes = 0;
+  private static long loopsSinceReport = 0;
+
+  private LoopProfiler() {}
+
+  /** A timed phase with its own histogram. */
+  public static final class Phase {
+    private final String meanKey;
+    private final String p50Key;
+    private final String p99Key;
+    private final String maxKey;
+    private final String countKey;
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    private Phase(String name) {
+      String prefix = "LoopProfile/" + name + "/";
+      meanKey = prefix + "MeanMs";
+      p50Key = prefix + "P50Ms";
+      p99Key = prefix + "P99Ms";
+      maxKey = prefix + "MaxMs";
+      countKey = prefix + "Count";
+    }
+
+    /** Records the time since {@code startNanos}, a value returned by {@link #start()}. */
+    public void record(long startNanos) {
+      if (startNanos == NOT_STARTED) {
+        return;
+      }
+      long elapsedNanos = System.nanoTime() - startNanos;
+      buckets[bucketFor(elapsedNanos / 1000)]++;
+      count++;
+      totalNanos += elapsedNanos;
+      maxNanos = Math.max(maxNanos, elapsedNanos);
+    }
+
+    private void report() {
+      if (count == 0) {
+        return;
+      }
+      Logger.recordOutput(meanKey, totalNanos / 1e6 / count);
+      Logger.recordOutput(p50Key, percentileMicros(0.5) / 1e3);
+      Logger.recordOutput(p99Key, percentileMicros(0.99) / 1e3);
+      Logger.recordOutput(maxKey, maxNanos / 1e6);
+      Logger.recordOutput(countKey, count);
+      reset();
+    }
+
+    private double percentileMicros(double percentile) {
+      long target = (long) Math.ceil(percentile * count);
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += buckets[i];
+        if (seen >= target) {
+          return bucketMidpoint(i);
+        }
+      }
+      return maxNanos / 1e3;
+    }
+
+    private void reset() {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        buckets[i] = 0;
+      }
+      count = 0;
+      totalNanos = 0;
+      maxNanos = 0;
+    }
+  }
+
+  /** Returns the phase with the given name, creating it if needed. Call once, at construction. */
+  public static Phase phase(String name) {
+    Phase phase = phasesByName.get(name);
+    if (phase == null) {
+      phase = new Phase(name);
+      phasesByName.put(name, phase);
+      phases.add(phase);
+    }
+    return phase;
+  }
+
+  /**
+   * Returns a command that runs the given one and times its {@code execute()} as {@code
+   * Commands/<name>}. Bind or schedule the returned command instead of the given one.
+   */
+  public static Command profile(Command command) {
+    if (command instanceof ProfiledCommand) {
+      return command;
+    }
+    return profiledCommands.computeIfAbsent(command, ProfiledCommand::new);
+  }
+
+  /** Returns a start time to pass to {@link Phase#record(long)}. */
+  public static long start() {
+    return enabled ? System.nanoTime() : NOT_STARTED;
+  }
+
+  /** Creates the enable switch. Call once, after logging has started. */
+  public static void install() {
+    enabledSwitch = new LoggedDashboardBoolean("LoopProfile/Enabled", false);
+  }
+
+  /** Reads the enable switch and logs a report once per second. Call once at the end of a loop. */
+  public static void periodic() {
+    boolean wasEnabled = enabled;
+    enabled = enabledSwitch != null && enabledSwitch.get();
+    if (enabled != wasEnabled) {
+      for (int i = 0; i < phases.size(); i++) {
+        phases.get(i).reset();
+      }
+      lastReportNanos = System.nanoTime();
+      lastAllocatedBytes = allocatedBytes();
+      loopsSinceReport = 0;
+    }
+    if (!enabled) {
+      return;
+    }
+
+    loopsSinceReport++;
+    long now = System.nanoTime();
+    if (now - lastReportNanos >= REPORT_PERIOD_NANOS) {
+      lastReportNanos = now;
+      for (int i = 0; i < phases.size(); i++) {
+        phases.get(i).report();
+      }
+      if (allocationBean != null) {
+        long allocated = allocatedBytes();
+        Logger.recordOutput(
+            "LoopProfile/AllocatedBytesPerLoop",
+            (double) (allocated - lastAllocatedBytes) / loopsSinceReport);
+        lastAllocatedBytes = allocated;
+      }
+      loopsSinceReport = 0;
+    }
+  }
+
+  private static long allocatedBytes() {
+    return allocationBean != null ? allocationBean.getCurrentThreadAllocatedBytes() : 0;
+  }
+
+  private static com.sun.management.ThreadMXBean allocationBean() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+      com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+      allocationBean.setThreadAllocatedMemoryEnabled(true);
+      return allocationBean;
+    }
+    return null;
+  }
+
+  private static int bucketFor(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) Math.max(micros, 0);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+  }
+
+  private static double bucketMidpoint(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket + 0.5;
+    }
+    int exponent = bucket / SUB_BUCKETS - 1 + SUB_BUCKET_BITS;
+    int subBucket = bucket % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    long lower = (1L << exponent) + subBucket * width;
+    return lower + width / 2.0;
+  }
+}
@@ -0,0 +1,28 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.logging;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+
+/** Runs a command, timing its {@code execute()} as {@code Commands/<name>}. */
+final class ProfiledCommand extends WrapperCommand {
+  private final LoopProfiler.Phase executePhase;
+
+  ProfiledCommand(Command command) {
+    super(command);
+    executePhase = LoopProfiler.phase("Commands/" + command.getName());
+  }
+
+  @Override
+  public void execute() {
+    long start = LoopProfiler.start();
+    m_command.execute();
+    executePhase.record(start);
+  }
+}
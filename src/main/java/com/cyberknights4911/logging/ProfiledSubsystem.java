@@ -0,0 +1,50 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.logging;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+/**
+ * A subsystem whose periodic work is timed by the {@link LoopProfiler}: {@link #updateInputs()} as
+ * {@code <name>/Inputs} and the whole periodic as {@code <name>/Periodic}. Its default command is
+ * profiled too, see {@link LoopProfiler#profile(Command)}.
+ */
+public abstract class ProfiledSubsystem extends SubsystemBase {
+  private final LoopProfiler.Phase inputsPhase;
+  private final LoopProfiler.Phase periodicPhase;
+
+  /**
+   * @param profileName prefix of this subsystem's phases
+   */
+  protected ProfiledSubsystem(String profileName) {
+    super();
+    inputsPhase = LoopProfiler.phase(profileName + "/Inputs");
+    periodicPhase = LoopProfiler.phase(profileName + "/Periodic");
+  }
+
+  @Override
+  public final void periodic() {
+    long start = LoopProfiler.start();
+    updateInputs();
+    inputsPhase.record(start);
+    onPeriodic();
+    periodicPhase.record(start);
+  }
+
+  /** Updates and logs the IO inputs. */
+  protected abstract void updateInputs();
+
+  /** Everything else the subsystem does each loop, once its inputs are up to date. */
+  protected abstract void onPeriodic();
+
+  @Override
+  public void setDefaultCommand(Command defaultCommand) {
+    super.setDefaultCommand(LoopProfiler.profile(defaultCommand));
+  }
+}
@@ -20,9 +20,9 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiConsumer;
 import org.littletonrobotics.junction.LogFileUtil;
 import org.littletonrobotics.junction.LoggedRobot;
 import org.littletonrobotics.junction.Logger;
@@ -52,6 +52,18 @@ public final class RobotLogger {
 
   private final CommandScheduler scheduler;
   private final Constants constants;
+  // Commands that are running
+  private final Map<Command, CommandLog> commandLogs = new IdentityHashMap<>();
+  private final Map<String, CommandLog> commandLogsByName = new HashMap<>();
+
+  private static final class CommandLog {
+    private final String key;
+    private int count = 0;
+
+    private CommandLog(String name) {
+      key = "CommandsAll/" + name;
+    }
+  }
 
   public RobotLogger(Constants constants, CommandScheduler scheduler) {
     this.constants = constants;
@@ -96,6 +108,9 @@ public final class RobotLogger {
         break;
 
       case SIM:
+        if (constants.logPath() != null) {
+          Logger.addDataReceiver(new WPILOGWriter(constants.logPath()));
+        }
         Logger.addDataReceiver(new NT4Publisher());
         break;
 
@@ -111,28 +126,17 @@ public final class RobotLogger {
     Logger.start();
 
     // Log active commands
-    Map<String, Integer> commandCounts = new HashMap<>();
-    BiConsumer<Command, Boolean> logCommandFunction =
-        (Command command, Boolean active) -> {
-          String name = command.getName();
-          int count = commandCounts.getOrDefault(name, 0) + (active ? 1 : -1);
-          commandCounts.put(name, count);
-          // Logger.recordOutput(
-          //         "CommandsUnique/" + name + "_" + Integer.toHexString(command.hashCode()),
-          // active);
-          Logger.recordOutput("CommandsAll/" + name, count > 0);
-        };
     scheduler.onCommandInitialize(
         (Command command) -> {
-          logCommandFunction.accept(command, true);
+          logCommand(command, true);
         });
     scheduler.onCommandFinish(
         (Command command) -> {
-          logCommandFunction.accept(command, false);
+          logCommand(command, false);
         });
     scheduler.onCommandInterrupt(
         (Command command) -> {
-          logCommandFunction.accept(command, false);
+          logCommand(command, false);
         });
 
     // Default to blue alliance in sim
@@ -149,6 +153,23 @@ public final class RobotLogger {
     disabledTimer.start();
   }
 
+  private void logCommand(Command command, boolean active) {
+    // Commands with the same name share a count. A running command keeps the log it started with,
+    // and is forgotten when it ends, so commands built on the fly are not kept around.
+    CommandLog log;
+    if (active) {
+      log = commandLogsByName.computeIfAbsent(command.getName(), CommandLog::new);
+      commandLogs.put(command, log);
+    } else {
+      log = commandLogs.remove(command);
+      if (log == null) {
+        return;
+      }
+    }
+    log.count += active ? 1 : -1;
+    Logger.recordOutput(log.key, log.count > 0);
+  }
+
   public void robotPeriodic() {
     // Check logging fault
     logReceiverQueueAlert.set(Logger.getReceiverQueueFault());
@@ -8,6 +8,7 @@
 package com.cyberknights4911.robot2024;
 
 import com.cyberknights4911.auto.AutoCommandHandler;
+import com.cyberknights4911.auto.CompiledAutos;
 import com.cyberknights4911.constants.DriveConstants;
 import com.cyberknights4911.drive.Drive;
 import com.cyberknights4911.robot2024.climb.Climb;
@@ -16,12 +17,12 @@ import com.cyberknights4911.robot2024.shooter.Shooter;
 import com.cyberknights4911.util.Alliance;
 import com.cyberknights4911.util.LocalADStarAK;
 import com.pathplanner.lib.auto.AutoBuilder;
-import com.pathplanner.lib.commands.PathPlannerAuto;
 import com.pathplanner.lib.pathfinding.Pathfinding;
 import com.pathplanner.lib.util.HolonomicPathFollowerConfig;
 import com.pathplanner.lib.util.PathPlannerLogging;
 import com.pathplanner.lib.util.ReplanningConfig;
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import org.littletonrobotics.junction.Logger;
@@ -31,6 +32,7 @@ public final class Autos {
   private final Collect collect;
   private final Shooter shooter;
   private final Drive drive;
+  private final CompiledAutos compiledAutos;
 
   public Autos(
       DriveConstants driveConstants, Climb climb, Collect collect, Shooter shooter, Drive drive) {
@@ -51,6 +53,15 @@ public final class Autos {
             driveConstants.maxLinearSpeed(), driveBaseRadius, new ReplanningConfig()),
         Alliance::isRed,
         drive);
+    compiledAutos =
+        new CompiledAutos(
+            drive::getPose,
+            drive::setPose,
+            drive::getChassisSpeeds,
+            drive::runVelocity,
+            driveConstants.maxLinearSpeed(),
+            driveBaseRadius,
+            drive);
     Pathfinding.setPathfinder(new LocalADStarAK());
     PathPlannerLogging.setLogActivePathCallback(
         (activePath) -> {
@@ -63,11 +74,17 @@ public final class Autos {
         });
   }
 
+  /** Builds an auto from the compiled file, or with PathPlanner if it was not compiled. */
+  public Command buildAuto(String autoName) {
+    return compiledAutos.buildAuto(autoName);
+  }
+
   public void addAllAutos(AutoCommandHandler handler) {
-    handler.addDefaultOption(
-        "Score+Wait+Leave Amp", new PathPlannerAuto("SHOOT_WAIT_AND_LEAVE_AMP"));
-    handler.addOption("Leave, Bro", new PathPlannerAuto("LEAVE"));
-    handler.addOption("Finals and I didnt study", new PathPlannerAuto("FINALSAndIDidntStudy"));
+    handler.addDefaultLoadedOption(
+        "Score+Wait+Leave Amp", () -> compiledAutos.loadAuto("SHOOT_WAIT_AND_LEAVE_AMP"));
+    handler.addLoadedOption("Leave, Bro", () -> compiledAutos.loadAuto("LEAVE"));
+    handler.addLoadedOption(
+        "Finals and I didnt study", () -> compiledAutos.loadAuto("FINALSAndIDidntStudy"));
 
     handler.addOption("Nothing", Commands.none());
     // handler.addOption("Score+Leave Source", new PathPlannerAuto("SHOOT_AND_LEAVE_SOURCE"));
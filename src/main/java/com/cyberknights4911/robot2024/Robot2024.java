@@ -14,6 +14,7 @@ import com.cyberknights4911.control.StickAction;
 import com.cyberknights4911.drive.Drive;
 import com.cyberknights4911.drive.GyroIO;
 import com.cyberknights4911.drive.GyroIOPigeon2;
+import com.cyberknights4911.drive.GyroIOSim;
 import com.cyberknights4911.drive.ModuleIO;
 import com.cyberknights4911.drive.ModuleIOSim;
 import com.cyberknights4911.drive.ModuleIOTalonFX;
@@ -29,6 +30,7 @@ import com.cyberknights4911.robot2024.control.ControllerBinding;
 import com.cyberknights4911.robot2024.indexer.Indexer;
 import com.cyberknights4911.robot2024.indexer.IndexerIO;
 import com.cyberknights4911.robot2024.indexer.IndexerIOReal;
+import com.cyberknights4911.robot2024.shooter.MovingShotSolver;
 import com.cyberknights4911.robot2024.shooter.Shooter;
 import com.cyberknights4911.robot2024.shooter.ShooterIO;
 import com.cyberknights4911.robot2024.shooter.ShooterIOReal;
@@ -39,8 +41,6 @@ import com.cyberknights4911.util.SparkBurnManager;
 import com.cyberknights4911.vision.simple.VisionSimple;
 import com.pathplanner.lib.auto.NamedCommands;
 import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.Commands;
@@ -57,6 +57,8 @@ public final class Robot2024 implements RobotContainer {
   private final Constants constants;
   private final ControllerBinding binding;
   private final SparkBurnManager burnManager;
+  private final MovingShotSolver shotSolver;
+  private Autos autos;
 
   public Robot2024() {
     constants = Constants.get();
@@ -67,6 +69,10 @@ public final class Robot2024 implements RobotContainer {
     shooter = createShooter();
     drive = createDrive();
     vision = createVision();
+    shotSolver =
+        new MovingShotSolver(shooter.getShotTable(), drive::getPose, drive::getChassisSpeeds);
+    // Sparks are configured in parallel while the subsystems are constructed
+    burnManager.awaitConfiguration();
 
     binding = new ControllerBinding(Robot2024Constants.CONTROL_CONSTANTS);
     configureControls();
@@ -98,17 +104,16 @@ public final class Robot2024 implements RobotContainer {
                 binding.supplierFor(StickAction.STRAFE),
                 Field.ampOpeningAngle().getRadians()));
 
-    Translation2d speakerOpening = Field.speakerOpening();
-    // TODO: combine with auto-aim.
     binding
         .triggersFor(ButtonAction.SpeakerLockOn)
         .whileTrue(
-            drive.pointToPointDrive(
-                Robot2024Constants.CONTROL_CONSTANTS,
-                binding.supplierFor(StickAction.FORWARD),
-                binding.supplierFor(StickAction.STRAFE),
-                Units.inchesToMeters(speakerOpening.getX()),
-                Units.inchesToMeters(speakerOpening.getY())));
+            drive
+                .pointToAngleDrive(
+                    Robot2024Constants.CONTROL_CONSTANTS,
+                    binding.supplierFor(StickAction.FORWARD),
+                    binding.supplierFor(StickAction.STRAFE),
+                    shotSolver::getHeadingRadians)
+                .alongWith(shooter.aimContinuous(shotSolver)));
 
     binding.triggersFor(ButtonAction.StowCollector).onTrue(stowEverything());
 
@@ -174,11 +179,16 @@ public final class Robot2024 implements RobotContainer {
     NamedCommands.registerCommand("QUICK_SHOOT", quickscoreForAuto());
     NamedCommands.registerCommand("AIM_SUB", shooter.aimSubwoofer());
 
-    Autos autos = new Autos(Robot2024Constants.DRIVE_CONSTANTS, climb, collect, shooter, drive);
+    autos = new Autos(Robot2024Constants.DRIVE_CONSTANTS, climb, collect, shooter, drive);
 
     autos.addAllAutos(handler);
   }
 
+  @Override
+  public Command buildAuto(String autoName) {
+    return autos.buildAuto(autoName);
+  }
+
   private Climb createClimb() {
     switch (constants.mode()) {
       case SIM:
@@ -241,14 +251,17 @@ public final class Robot2024 implements RobotContainer {
   private Drive createDrive() {
     switch (constants.mode()) {
       case SIM:
+        ModuleIOSim[] modules = {
+          new ModuleIOSim(), new ModuleIOSim(), new ModuleIOSim(), new ModuleIOSim()
+        };
         return new Drive(
             constants,
             Robot2024Constants.DRIVE_CONSTANTS,
-            new GyroIO() {},
-            new ModuleIOSim(),
-            new ModuleIOSim(),
-            new ModuleIOSim(),
-            new ModuleIOSim());
+            new GyroIOSim(Robot2024Constants.DRIVE_CONSTANTS, modules),
+            modules[0],
+            modules[1],
+            modules[2],
+            modules[3]);
       case REAL:
         return new Drive(
             constants,
@@ -280,6 +293,7 @@ public final class Robot2024 implements RobotContainer {
   private VisionSimple createVision() {
     return new VisionSimple(
         Robot2024Constants.VISION_CONSTANTS,
+        drive::getChassisSpeeds,
         drive::addVisionMeasurement,
         Robot2024Constants.CAMERA_CONSTANTS_FRONT_LEFT,
         Robot2024Constants.CAMERA_CONSTANTS_FRONT_RIGHT);
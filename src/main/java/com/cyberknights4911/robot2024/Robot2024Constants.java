@@ -23,6 +23,7 @@ import com.cyberknights4911.robot2024.indexer.IndexerConstants;
 import com.cyberknights4911.robot2024.indexer.IndexerConstantsBuilder;
 import com.cyberknights4911.robot2024.shooter.ShooterConstants;
 import com.cyberknights4911.robot2024.shooter.ShooterConstantsBuilder;
+import com.cyberknights4911.robot2024.shooter.ShotCalibration;
 import com.cyberknights4911.util.FeedForwardValues;
 import com.cyberknights4911.util.Field;
 import com.cyberknights4911.util.PidValues;
@@ -34,6 +35,7 @@ import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.util.Units;
+import java.util.List;
 
 public final class Robot2024Constants {
   private Robot2024Constants() {}
@@ -54,6 +56,8 @@ public final class Robot2024Constants {
   public static final DriveConstants DRIVE_CONSTANTS =
       DriveConstantsBuilder.builder()
           .maxLinearSpeed(Units.feetToMeters(16.5))
+          .maxModuleAcceleration(12.0)
+          .maxModuleSteerRate(4 * Math.PI)
           .trackWidthX(Units.inchesToMeters(22.75))
           .trackWidthY(Units.inchesToMeters(22.75))
           .wheelRadius(Units.inchesToMeters(1.957237517086368))
@@ -61,6 +65,7 @@ public final class Robot2024Constants {
           .driveGearRatio(DriveConstants.L2_GEAR_RATIO)
           .pigeonId(0)
           .canBusId("CANivore")
+          .phoenixProLicensed(false)
           .turnFeedBackValues(new PidValues(7.0, 0.0, 0.0))
           .driveFeedBackValues(new PidValues(0.05, 0.0, 0.0))
           .driveFeedForwardValues(new FeedForwardValues(0.1, 0.13))
@@ -143,6 +148,12 @@ public final class Robot2024Constants {
           .podiumPositionDegrees(38) // was 34, did not try 36, trying 38
           .collectPositionDegrees(34)
           .firePercentOutput(.6)
+          .aimerToleranceDegrees(1.0)
+          .flywheelToleranceRpm(100)
+          // The subwoofer and podium setpoints, at the fire output (60% of free speed)
+          .shotCalibrations(
+              List.of(
+                  new ShotCalibration(1.35, 55, 4070), new ShotCalibration(2.95, 38, 4070)))
           .shooterFeedBackValues(new PidValues(0.1, 0, 0))
           .shooterFeedForwardValues(new FeedForwardValues(0, 0))
           .aimerFeedBackValues(new PidValues(0.3, 0, 0))
@@ -47,6 +47,8 @@ public final class SimRobot2024Constants {
   public static final DriveConstants DRIVE_CONSTANTS =
       DriveConstantsBuilder.builder()
           .maxLinearSpeed(4.5)
+          .maxModuleAcceleration(12.0)
+          .maxModuleSteerRate(4 * Math.PI)
           .trackWidthX(Units.inchesToMeters(22.75))
           .trackWidthY(Units.inchesToMeters(22.75))
           .wheelRadius(Units.inchesToMeters(2))
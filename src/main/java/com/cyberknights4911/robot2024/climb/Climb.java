@@ -11,6 +11,7 @@ import static edu.wpi.first.units.Units.Volts;
 
 import com.cyberknights4911.drive.Drive;
 import com.cyberknights4911.logging.LoggedTunableNumber;
+import com.cyberknights4911.logging.ProfiledSubsystem;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.smartdashboard.Mechanism2d;
@@ -18,11 +19,10 @@ import edu.wpi.first.wpilibj.smartdashboard.MechanismLigament2d;
 import edu.wpi.first.wpilibj.smartdashboard.MechanismRoot2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import org.littletonrobotics.junction.Logger;
 
-public class Climb extends SubsystemBase {
+public class Climb extends ProfiledSubsystem {
   private static final LoggedTunableNumber kP = new LoggedTunableNumber("Climb/kP");
   private static final LoggedTunableNumber kD = new LoggedTunableNumber("Climb/kD");
   private static final LoggedTunableNumber lockToggleTime =
@@ -55,7 +55,7 @@ public class Climb extends SubsystemBase {
   private final double winchConstant;
 
   public Climb(ClimbConstants constants, ClimbIO climbIO) {
-    super();
+    super("Climb");
     this.climbIO = climbIO;
     winchConstant = constants.gearRatio() * WINCH_RADIUS;
     kP.initDefault(constants.feedBackValues().kP());
@@ -100,10 +100,13 @@ public class Climb extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {
+  protected void updateInputs() {
     climbIO.updateInputs(inputs);
     Logger.processInputs("Climb", inputs);
+  }
 
+  @Override
+  protected void onPeriodic() {
     if (kP.hasChanged(hashCode()) || kD.hasChanged(hashCode())) {
       climbIO.configurePID(kP.get(), 0.0, kD.get());
     }
@@ -7,8 +7,10 @@
 
 package com.cyberknights4911.robot2024.climb;
 
+import com.cyberknights4911.util.CanSignalHub;
 import com.cyberknights4911.util.SparkBurnManager;
 import com.cyberknights4911.util.SparkConfig;
+import com.cyberknights4911.util.SparkSettings;
 import com.revrobotics.CANSparkBase;
 import com.revrobotics.CANSparkBase.ControlType;
 import com.revrobotics.CANSparkBase.IdleMode;
@@ -25,6 +27,8 @@ public class ClimbIOReal implements ClimbIO {
   private final RelativeEncoder rightEncoder;
   private final SparkPIDController leftPidController;
   private final SparkPIDController rightPidController;
+  private final CanSignalHub.SparkSignals leftSignals;
+  private final CanSignalHub.SparkSignals rightSignals;
   private final double gearRatio;
   private final SparkBurnManager sparkBurnManager;
 
@@ -40,6 +44,9 @@ public class ClimbIOReal implements ClimbIO {
     gearRatio = constants.gearRatio();
 
     configureDevices();
+
+    leftSignals = CanSignalHub.getInstance().registerSpark(left, leftEncoder);
+    rightSignals = CanSignalHub.getInstance().registerSpark(right, rightEncoder);
   }
 
   @Override
@@ -72,17 +79,17 @@ public class ClimbIOReal implements ClimbIO {
 
   @Override
   public void updateInputs(ClimbIOInputs inputs) {
-    inputs.leftPositionRad = Units.rotationsToRadians(leftEncoder.getPosition()) / gearRatio;
+    inputs.leftPositionRad = Units.rotationsToRadians(leftSignals.getPosition()) / gearRatio;
     inputs.leftVelocityRadPerSec =
-        Units.rotationsPerMinuteToRadiansPerSecond(leftEncoder.getVelocity()) / gearRatio;
-    inputs.rightPositionRad = Units.rotationsToRadians(rightEncoder.getPosition()) / gearRatio;
+        Units.rotationsPerMinuteToRadiansPerSecond(leftSignals.getVelocity()) / gearRatio;
+    inputs.rightPositionRad = Units.rotationsToRadians(rightSignals.getPosition()) / gearRatio;
     inputs.rightVelocityRadPerSec =
-        Units.rotationsPerMinuteToRadiansPerSecond(rightEncoder.getVelocity()) / gearRatio;
+        Units.rotationsPerMinuteToRadiansPerSecond(rightSignals.getVelocity()) / gearRatio;
 
-    inputs.leftAppliedVolts = left.getAppliedOutput() * left.getBusVoltage();
-    inputs.leftCurrentAmps = left.getOutputCurrent();
-    inputs.rightAppliedVolts = right.getAppliedOutput() * right.getBusVoltage();
-    inputs.rightCurrentAmps = right.getOutputCurrent();
+    inputs.leftAppliedVolts = leftSignals.getAppliedVolts();
+    inputs.leftCurrentAmps = leftSignals.getCurrentAmps();
+    inputs.rightAppliedVolts = rightSignals.getAppliedVolts();
+    inputs.rightCurrentAmps = rightSignals.getCurrentAmps();
   }
 
   @Override
@@ -103,36 +110,34 @@ public class ClimbIOReal implements ClimbIO {
 
   @Override
   public void configurePID(double kP, double kI, double kD) {
-    leftPidController.setP(kP, 0);
-    leftPidController.setI(kI, 0);
-    leftPidController.setD(kD, 0);
-    leftPidController.setFF(0, 0);
-    rightPidController.setP(kP, 0);
-    rightPidController.setI(kI, 0);
-    rightPidController.setD(kD, 0);
-    rightPidController.setFF(0, 0);
+    sparkBurnManager.afterConfiguration(
+        () -> {
+          leftPidController.setP(kP, 0);
+          leftPidController.setI(kI, 0);
+          leftPidController.setD(kD, 0);
+          leftPidController.setFF(0, 0);
+          rightPidController.setP(kP, 0);
+          rightPidController.setI(kI, 0);
+          rightPidController.setD(kD, 0);
+          rightPidController.setFF(0, 0);
+        });
   }
 
   private void configureDevices() {
-    sparkBurnManager.maybeBurnConfig(
-        () -> {
-          SparkConfig.configLeaderFollower(left);
-          SparkConfig.configLeaderFollower(right);
-
-          // TODO: one of these has to be inverted
-
-          left.setIdleMode(IdleMode.kBrake);
-          right.setIdleMode(IdleMode.kBrake);
-          left.setSmartCurrentLimit(40);
-          right.setSmartCurrentLimit(40);
-          left.enableVoltageCompensation(12);
-          right.enableVoltageCompensation(12);
-
-          rightEncoder.setPosition(0.0);
-          rightEncoder.setMeasurementPeriod(10);
-          rightEncoder.setAverageDepth(2);
-        },
-        left,
-        right);
+    // TODO: one of these has to be inverted
+    sparkBurnManager.configure(
+        new SparkSettings(left)
+            .frames("leaderFollower", SparkConfig::configLeaderFollower)
+            .idleMode(IdleMode.kBrake)
+            .smartCurrentLimit(40)
+            .voltageCompensation(12),
+        new SparkSettings(right)
+            .frames("leaderFollower", SparkConfig::configLeaderFollower)
+            .idleMode(IdleMode.kBrake)
+            .smartCurrentLimit(40)
+            .voltageCompensation(12)
+            .encoderPosition(0.0)
+            .encoderMeasurementPeriod(10)
+            .encoderAverageDepth(2));
   }
 }
@@ -7,6 +7,7 @@
 
 package com.cyberknights4911.robot2024.climb;
 
+import com.cyberknights4911.util.PhysicsSim;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.wpilibj.simulation.DCMotorSim;
@@ -21,12 +22,11 @@ public final class ClimbIOSim implements ClimbIO {
     // TODO: determine moment of inertia
     sim = new DCMotorSim(DCMotor.getNeoVortex(2), constants.gearRatio(), 0.004);
     pid = new PIDController(0.0, 0.0, 0.0);
+    PhysicsSim.getInstance().register(sim::update);
   }
 
   @Override
   public void updateInputs(ClimbIOInputs inputs) {
-    sim.update(0.02);
-
     inputs.rightPositionRad = 0.0;
     inputs.rightVelocityRadPerSec = sim.getAngularVelocityRadPerSec();
     inputs.leftAppliedVolts = appliedVolts;
@@ -10,6 +10,7 @@ package com.cyberknights4911.robot2024.collect;
 import static edu.wpi.first.units.Units.Volts;
 
 import com.cyberknights4911.logging.LoggedTunableNumber;
+import com.cyberknights4911.logging.ProfiledSubsystem;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.DriverStation;
@@ -18,11 +19,10 @@ import edu.wpi.first.wpilibj.smartdashboard.MechanismLigament2d;
 import edu.wpi.first.wpilibj.smartdashboard.MechanismRoot2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import org.littletonrobotics.junction.Logger;
 
-public class Collect extends SubsystemBase {
+public class Collect extends ProfiledSubsystem {
   private static final LoggedTunableNumber beamThreshold =
       new LoggedTunableNumber("Collect/BeamThreshold");
   private static final LoggedTunableNumber collectOutput =
@@ -58,7 +58,7 @@ public class Collect extends SubsystemBase {
   private final MechanismLigament2d segment2;
 
   public Collect(CollectConstants constants, CollectIO collectIO) {
-    super();
+    super("Collect");
     this.collectIO = collectIO;
     collectKp.initDefault(constants.collectFeedBackValues().kP());
     collectKd.initDefault(constants.collectFeedBackValues().kD());
@@ -99,10 +99,13 @@ public class Collect extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {
+  protected void updateInputs() {
     collectIO.updateInputs(inputs);
     Logger.processInputs("Collect", inputs);
+  }
 
+  @Override
+  protected void onPeriodic() {
     if (collectKp.hasChanged(hashCode()) || collectKd.hasChanged(hashCode())) {
       collectIO.configureCollectPID(collectKp.get(), 0.0, collectKd.get());
     }
@@ -7,8 +7,10 @@
 
 package com.cyberknights4911.robot2024.collect;
 
+import com.cyberknights4911.util.CanSignalHub;
 import com.cyberknights4911.util.SparkBurnManager;
 import com.cyberknights4911.util.SparkConfig;
+import com.cyberknights4911.util.SparkSettings;
 import com.revrobotics.CANSparkBase.ControlType;
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkFlex;
@@ -25,6 +27,7 @@ public class CollectIOReal implements CollectIO {
   private final CANSparkFlex collect;
   private final RelativeEncoder collectEncoder;
   private final SparkPIDController collectPidController;
+  private final CanSignalHub.SparkSignals collectSignals;
 
   private final DoubleSolenoid left;
   private final DoubleSolenoid right;
@@ -55,17 +58,19 @@ public class CollectIOReal implements CollectIO {
     beamBreak = new AnalogInput(constants.sensorId());
 
     configureDevices();
+
+    collectSignals = CanSignalHub.getInstance().registerSpark(collect, collectEncoder);
   }
 
   @Override
   public void updateInputs(CollectIOInputs inputs) {
     inputs.collectPositionRad =
-        Units.rotationsToRadians(collectEncoder.getPosition() / collectGearRatio);
+        Units.rotationsToRadians(collectSignals.getPosition() / collectGearRatio);
     inputs.collectVelocityRadPerSec =
-        Units.rotationsPerMinuteToRadiansPerSecond(collectEncoder.getVelocity() / collectGearRatio);
+        Units.rotationsPerMinuteToRadiansPerSecond(collectSignals.getVelocity() / collectGearRatio);
 
-    inputs.collectAppliedVolts = collect.getAppliedOutput() * collect.getBusVoltage();
-    inputs.collectCurrentAmps = collect.getOutputCurrent();
+    inputs.collectAppliedVolts = collectSignals.getAppliedVolts();
+    inputs.collectCurrentAmps = collectSignals.getCurrentAmps();
 
     // inputs.leftSolenoid = left.get() == Value.kForward;
     // inputs.rightSolenoid = right.get() == Value.kForward;
@@ -103,25 +108,24 @@ public class CollectIOReal implements CollectIO {
 
   @Override
   public void configureCollectPID(double kP, double kI, double kD) {
-    collectPidController.setP(kP, 0);
-    collectPidController.setI(kI, 0);
-    collectPidController.setD(kD, 0);
-    collectPidController.setFF(0, 0);
+    sparkBurnManager.afterConfiguration(
+        () -> {
+          collectPidController.setP(kP, 0);
+          collectPidController.setI(kI, 0);
+          collectPidController.setD(kD, 0);
+          collectPidController.setFF(0, 0);
+        });
   }
 
   private void configureDevices() {
-    sparkBurnManager.maybeBurnConfig(
-        () -> {
-          SparkConfig.configLeaderFollower(collect);
-
-          collect.setIdleMode(IdleMode.kCoast);
-          collect.setSmartCurrentLimit(60);
-          collect.enableVoltageCompensation(12.0);
-
-          collectEncoder.setPosition(0.0);
-          collectEncoder.setMeasurementPeriod(10);
-          collectEncoder.setAverageDepth(2);
-        },
-        collect);
+    sparkBurnManager.configure(
+        new SparkSettings(collect)
+            .frames("leaderFollower", SparkConfig::configLeaderFollower)
+            .idleMode(IdleMode.kCoast)
+            .smartCurrentLimit(60)
+            .voltageCompensation(12.0)
+            .encoderPosition(0.0)
+            .encoderMeasurementPeriod(10)
+            .encoderAverageDepth(2));
   }
 }
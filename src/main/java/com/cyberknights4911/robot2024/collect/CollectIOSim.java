@@ -7,6 +7,7 @@
 
 package com.cyberknights4911.robot2024.collect;
 
+import com.cyberknights4911.util.PhysicsSim;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.system.plant.DCMotor;
@@ -25,20 +26,24 @@ public final class CollectIOSim implements CollectIO {
   public CollectIOSim(CollectConstants constants) {
     // TODO: determine moment of inertia
     sim = new DCMotorSim(DCMotor.getNeoVortex(1), constants.collectGearRatio(), 0.004);
-    pid = new PIDController(0.0, 0.0, 0.0);
+    pid = new PIDController(0.0, 0.0, 0.0, PhysicsSim.SUBSTEP_SECS);
     beamBreakSim = new AnalogInputSim(0);
+    PhysicsSim.getInstance().register(this::step);
   }
 
-  @Override
-  public void updateInputs(CollectIOInputs inputs) {
+  // Closed loop runs every sub-step, like it would on the motor controller
+  private void step(double dtSecs) {
     if (closedLoop) {
       appliedVolts =
           MathUtil.clamp(pid.calculate(sim.getAngularVelocityRadPerSec()) + ffVolts, -12.0, 12.0);
       sim.setInputVoltage(appliedVolts);
     }
 
-    sim.update(0.02);
+    sim.update(dtSecs);
+  }
 
+  @Override
+  public void updateInputs(CollectIOInputs inputs) {
     inputs.beamBreakVoltage = beamBreakSim.getVoltage();
     inputs.collectPositionRad = sim.getAngularPositionRad();
     inputs.collectVelocityRadPerSec = sim.getAngularVelocityRadPerSec();
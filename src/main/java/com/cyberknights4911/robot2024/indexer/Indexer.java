@@ -8,14 +8,14 @@
 package com.cyberknights4911.robot2024.indexer;
 
 import com.cyberknights4911.logging.LoggedTunableNumber;
+import com.cyberknights4911.logging.ProfiledSubsystem;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import org.littletonrobotics.junction.Logger;
 
-public final class Indexer extends SubsystemBase {
+public final class Indexer extends ProfiledSubsystem {
   private static final LoggedTunableNumber beamThreshold =
       new LoggedTunableNumber("Indexer/BeamThreshold");
   private static final LoggedTunableNumber percent =
@@ -27,7 +27,7 @@ public final class Indexer extends SubsystemBase {
   private final IndexerIOInputsAutoLogged inputs = new IndexerIOInputsAutoLogged();
 
   public Indexer(IndexerConstants constants, IndexerIO indexerIO) {
-    super();
+    super("Indexer");
     this.indexerIO = indexerIO;
 
     percent.initDefault(constants.percentOutput());
@@ -38,10 +38,13 @@ public final class Indexer extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {
+  protected void updateInputs() {
     indexerIO.updateInputs(inputs);
     Logger.processInputs("Indexer", inputs);
+  }
 
+  @Override
+  protected void onPeriodic() {
     if (kp.hasChanged(hashCode()) || kd.hasChanged(hashCode())) {
       indexerIO.configurePID(kp.get(), 0.0, kd.get());
     }
@@ -7,7 +7,9 @@
 
 package com.cyberknights4911.robot2024.indexer;
 
+import com.cyberknights4911.util.CanSignalHub;
 import com.cyberknights4911.util.SparkBurnManager;
+import com.cyberknights4911.util.SparkSettings;
 import com.revrobotics.CANSparkBase.ControlType;
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkFlex;
@@ -21,6 +23,7 @@ public final class IndexerIOReal implements IndexerIO {
   private final CANSparkFlex motor;
   private final RelativeEncoder encoder;
   private final SparkPIDController pidController;
+  private final CanSignalHub.SparkSignals signals;
 
   private final AnalogInput beamBreak;
 
@@ -36,24 +39,29 @@ public final class IndexerIOReal implements IndexerIO {
     beamBreak = new AnalogInput(constants.sensorId());
 
     configureDevices();
+
+    signals = CanSignalHub.getInstance().registerSpark(motor, encoder);
   }
 
   @Override
   public void updateInputs(IndexerIOInputs inputs) {
-    inputs.positionRad = Units.rotationsToRadians(encoder.getPosition());
-    inputs.velocityRadPerSec = Units.rotationsPerMinuteToRadiansPerSecond(encoder.getVelocity());
-    inputs.appliedVolts = motor.getAppliedOutput() * motor.getBusVoltage();
-    inputs.currentAmps = motor.getOutputCurrent();
+    inputs.positionRad = Units.rotationsToRadians(signals.getPosition());
+    inputs.velocityRadPerSec = Units.rotationsPerMinuteToRadiansPerSecond(signals.getVelocity());
+    inputs.appliedVolts = signals.getAppliedVolts();
+    inputs.currentAmps = signals.getCurrentAmps();
 
     inputs.beamBreakVoltage = beamBreak.getVoltage();
   }
 
   @Override
   public void configurePID(double kP, double kI, double kD) {
-    pidController.setP(kP, 0);
-    pidController.setI(kI, 0);
-    pidController.setD(kD, 0);
-    pidController.setFF(0, 0);
+    sparkBurnManager.afterConfiguration(
+        () -> {
+          pidController.setP(kP, 0);
+          pidController.setI(kI, 0);
+          pidController.setD(kD, 0);
+          pidController.setFF(0, 0);
+        });
   }
 
   @Override
@@ -78,20 +86,15 @@ public final class IndexerIOReal implements IndexerIO {
   }
 
   private void configureDevices() {
-    sparkBurnManager.maybeBurnConfig(
-        () -> {
-          // SparkConfig.configNotLeader(motor);
-
-          motor.setIdleMode(IdleMode.kCoast);
-          motor.setSmartCurrentLimit(60);
-          // motor.enableVoltageCompensation(12.0);
-
-          encoder.setPosition(0.0);
-          encoder.setMeasurementPeriod(10);
-          encoder.setAverageDepth(2);
-
-          motor.setInverted(true);
-        },
-        motor);
+    sparkBurnManager.configure(
+        new SparkSettings(motor)
+            // .frames("notLeader", SparkConfig::configNotLeader)
+            .idleMode(IdleMode.kCoast)
+            .smartCurrentLimit(60)
+            // .voltageCompensation(12.0)
+            .encoderPosition(0.0)
+            .encoderMeasurementPeriod(10)
+            .encoderAverageDepth(2)
+            .inverted(true));
   }
 }
@@ -9,23 +9,50 @@ package com.cyberknights4911.robot2024.shooter;
 
 import edu.wpi.first.wpilibj2.command.Command;
 import java.util.function.DoubleSupplier;
+import org.littletonrobotics.junction.Logger;
 
 public final class AimContinuousCommand extends Command {
   private final Shooter shooter;
+  private final ShotTable shotTable;
   private final DoubleSupplier distanceSupplier;
+  // Aims with the solver's shot when set, otherwise with the table's shot for the distance
+  private final MovingShotSolver shotSolver;
 
   private double distanceMeters;
+  private double aimerDegrees;
+  private double flywheelRpm;
 
   AimContinuousCommand(Shooter shooter, DoubleSupplier distanceSupplier) {
     addRequirements(shooter);
     this.shooter = shooter;
+    this.shotTable = shooter.getShotTable();
     this.distanceSupplier = distanceSupplier;
+    this.shotSolver = null;
+  }
+
+  AimContinuousCommand(Shooter shooter, MovingShotSolver shotSolver) {
+    addRequirements(shooter);
+    this.shooter = shooter;
+    this.shotTable = shooter.getShotTable();
+    this.distanceSupplier = shotSolver::getDistanceMeters;
+    this.shotSolver = shotSolver;
   }
 
   @Override
   public void execute() {
-    double distanceMeters = distanceSupplier.getAsDouble();
-    // replace this with a call to move the shooter to the optimal angle for the latest distance.
+    distanceMeters = distanceSupplier.getAsDouble();
+    if (shotSolver != null) {
+      aimerDegrees = shotSolver.getAimerDegrees();
+      flywheelRpm = shotSolver.getFlywheelRpm();
+    } else {
+      aimerDegrees = shotTable.aimerDegrees(distanceMeters);
+      flywheelRpm = shotTable.flywheelRpm(distanceMeters);
+    }
+    shooter.setAimerPostion(aimerDegrees);
+    shooter.runShooterVelocity(flywheelRpm);
+
+    Logger.recordOutput("Shooter/AimDistanceMeters", distanceMeters);
+    Logger.recordOutput("Shooter/LockedOn", isLockedOn());
   }
 
   /**
@@ -33,8 +60,9 @@ public final class AimContinuousCommand extends Command {
    * momentary; this method must be continuously checked if the robot is moving.
    */
   public boolean isLockedOn() {
-    // replace this with an expression that returns true when this shooter is in a good position to
-    // fire
-    return false;
+    return isScheduled()
+        && shotTable.inRange(distanceMeters)
+        && shooter.isAimerAt(aimerDegrees)
+        && shooter.isFlywheelAt(flywheelRpm);
   }
 }
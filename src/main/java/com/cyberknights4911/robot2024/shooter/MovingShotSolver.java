@@ -0,0 +1,138 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.robot2024.shooter;
+
+import com.cyberknights4911.logging.LoopProfiler;
+import com.cyberknights4911.util.Alliance;
+import com.cyberknights4911.util.Field;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.util.Units;
+import java.util.function.Supplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Solves for a shot into the speaker while the robot is moving.
+ *
+ * <p>A note keeps the robot's velocity after it leaves, so instead of the speaker the robot aims at
+ * a virtual target: the speaker, moved back by the robot's velocity times the note's time of
+ * flight. Time of flight depends on the distance to the virtual target, so the two are iterated
+ * until the target stops moving. The solution is the chassis heading that faces the virtual target
+ * and the aimer angle and flywheel speed for its distance.
+ *
+ * <p>The solution is computed at most once per loop, by whichever getter is called first, and
+ * allocates nothing. {@code HotPathBenchmark} measures how long solving takes.
+ */
+public final class MovingShotSolver {
+  private static final int MAX_ITERATIONS = 5;
+  private static final double CONVERGED_METERS = 0.001;
+
+  private final ShotTable shotTable;
+  private final Supplier<Pose2d> poseSupplier;
+  private final Supplier<ChassisSpeeds> speedsSupplier;
+  private final double blueSpeakerX;
+  private final double blueSpeakerY;
+  private final double redSpeakerX;
+  private final double redSpeakerY;
+  private final LoopProfiler.Phase solvePhase = LoopProfiler.phase("Shooter/MovingShot");
+
+  private long solvedTimestamp = -1;
+  private double headingRadians;
+  private double distanceMeters;
+  private double aimerDegrees;
+  private double flywheelRpm;
+
+  /**
+   * @param shotTable the shots for a stationary robot
+   * @param poseSupplier the robot's field relative pose
+   * @param speedsSupplier the robot's robot relative speeds
+   */
+  public MovingShotSolver(
+      ShotTable shotTable, Supplier<Pose2d> poseSupplier, Supplier<ChassisSpeeds> speedsSupplier) {
+    this.shotTable = shotTable;
+    this.poseSupplier = poseSupplier;
+    this.speedsSupplier = speedsSupplier;
+    Translation2d blueSpeaker = Field.speakerOpening(false);
+    Translation2d redSpeaker = Field.speakerOpening(true);
+    blueSpeakerX = Units.inchesToMeters(blueSpeaker.getX());
+    blueSpeakerY = Units.inchesToMeters(blueSpeaker.getY());
+    redSpeakerX = Units.inchesToMeters(redSpeaker.getX());
+    redSpeakerY = Units.inchesToMeters(redSpeaker.getY());
+  }
+
+  /** Returns the field relative chassis heading to shoot at, in radians. */
+  public double getHeadingRadians() {
+    update();
+    return headingRadians;
+  }
+
+  /** Returns the horizontal distance to the virtual target, for looking up a stationary shot. */
+  public double getDistanceMeters() {
+    update();
+    return distanceMeters;
+  }
+
+  /** Returns the aimer angle to shoot at. */
+  public double getAimerDegrees() {
+    update();
+    return aimerDegrees;
+  }
+
+  /** Returns the flywheel speed to shoot at. */
+  public double getFlywheelRpm() {
+    update();
+    return flywheelRpm;
+  }
+
+  private void update() {
+    long timestamp = Logger.getTimestamp();
+    if (timestamp == solvedTimestamp) {
+      return;
+    }
+    solvedTimestamp = timestamp;
+    long start = LoopProfiler.start();
+    solve(poseSupplier.get(), speedsSupplier.get(), Alliance.isRed());
+    solvePhase.record(start);
+  }
+
+  /**
+   * Solves for the given pose and speeds, replacing this loop's solution. The getters solve for
+   * the current pose and speeds themselves, so this is only needed to solve for other ones.
+   */
+  public void solve(Pose2d pose, ChassisSpeeds speeds, boolean isRed) {
+    double robotX = pose.getX();
+    double robotY = pose.getY();
+    double cos = pose.getRotation().getCos();
+    double sin = pose.getRotation().getSin();
+    double fieldVx = speeds.vxMetersPerSecond * cos - speeds.vyMetersPerSecond * sin;
+    double fieldVy = speeds.vxMetersPerSecond * sin + speeds.vyMetersPerSecond * cos;
+
+    double speakerX = isRed ? redSpeakerX : blueSpeakerX;
+    double speakerY = isRed ? redSpeakerY : blueSpeakerY;
+    double targetX = speakerX;
+    double targetY = speakerY;
+    for (int i = 0; i < MAX_ITERATIONS; i++) {
+      double timeOfFlight =
+          shotTable.timeOfFlightSecs(Math.hypot(targetX - robotX, targetY - robotY));
+      double nextX = speakerX - fieldVx * timeOfFlight;
+      double nextY = speakerY - fieldVy * timeOfFlight;
+      double moved = Math.hypot(nextX - targetX, nextY - targetY);
+      targetX = nextX;
+      targetY = nextY;
+      if (moved < CONVERGED_METERS) {
+        break;
+      }
+    }
+
+    headingRadians = Math.atan2(targetY - robotY, targetX - robotX);
+    distanceMeters = Math.hypot(targetX - robotX, targetY - robotY);
+    aimerDegrees = shotTable.aimerDegrees(distanceMeters);
+    flywheelRpm = shotTable.flywheelRpm(distanceMeters);
+  }
+}
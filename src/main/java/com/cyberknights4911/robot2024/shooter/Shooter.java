@@ -10,6 +10,7 @@ package com.cyberknights4911.robot2024.shooter;
 import static edu.wpi.first.units.Units.Volts;
 
 import com.cyberknights4911.logging.LoggedTunableNumber;
+import com.cyberknights4911.logging.ProfiledSubsystem;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.util.Units;
@@ -19,12 +20,11 @@ import edu.wpi.first.wpilibj.smartdashboard.MechanismLigament2d;
 import edu.wpi.first.wpilibj.smartdashboard.MechanismRoot2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import java.util.function.DoubleSupplier;
 import org.littletonrobotics.junction.Logger;
 
-public class Shooter extends SubsystemBase {
+public class Shooter extends ProfiledSubsystem {
   private static final LoggedTunableNumber beamThreshold =
       new LoggedTunableNumber("Shooter/beamThreshold");
   private static final LoggedTunableNumber flyWheelKp =
@@ -58,6 +58,10 @@ public class Shooter extends SubsystemBase {
       new LoggedTunableNumber("Shooter/forwardLimit");
   private static final LoggedTunableNumber backwardLimit =
       new LoggedTunableNumber("Shooter/backwardLimit");
+  private static final LoggedTunableNumber aimerTolerance =
+      new LoggedTunableNumber("Shooter/AimerToleranceDegrees");
+  private static final LoggedTunableNumber flywheelTolerance =
+      new LoggedTunableNumber("Shooter/FlywheelToleranceRPM");
 
   // Measured in OnShape
   // motor distance 5.558
@@ -67,13 +71,14 @@ public class Shooter extends SubsystemBase {
 
   private final ShooterIO shooterIO;
   private final ShooterIOInputsAutoLogged inputs = new ShooterIOInputsAutoLogged();
+  private final ShotTable shotTable;
   private SimpleMotorFeedforward feedforward;
   private final SysIdRoutine sysId;
   private final Mechanism2d mechanism;
   private final MechanismLigament2d segment;
 
   public Shooter(ShooterConstants constants, ShooterIO shooterIO) {
-    super();
+    super("Shooter");
     this.shooterIO = shooterIO;
     flyWheelKs.initDefault(constants.shooterFeedForwardValues().kS());
     flyWheelKv.initDefault(constants.shooterFeedForwardValues().kV());
@@ -94,6 +99,9 @@ public class Shooter extends SubsystemBase {
     forwardLimit.initDefault(constants.aimerForwardLimit());
     backwardLimit.initDefault(constants.aimerBackwardLimit());
     beamThreshold.initDefault(constants.beamThreshold());
+    aimerTolerance.initDefault(constants.aimerToleranceDegrees());
+    flywheelTolerance.initDefault(constants.flywheelToleranceRpm());
+    shotTable = new ShotTable(constants.shotCalibrations());
 
     feedforward = new SimpleMotorFeedforward(flyWheelKs.get(), flyWheelKv.get());
     shooterIO.configureShooterPID(flyWheelKp.get(), 0.0, flyWheelKd.get());
@@ -161,6 +169,24 @@ public class Shooter extends SubsystemBase {
     Logger.recordOutput("Shooter/AimerSetpointDegrees", positionDegrees);
   }
 
+  /** Returns true if the aimer is within tolerance of the given position. */
+  public boolean isAimerAt(double positionDegrees) {
+    return Math.abs(Math.toDegrees(inputs.aimerPositionRad) - positionDegrees)
+        <= aimerTolerance.get();
+  }
+
+  /** Returns true if the flywheel is within tolerance of the given velocity. */
+  public boolean isFlywheelAt(double velocityRPM) {
+    double currentRPM =
+        Units.radiansPerSecondToRotationsPerMinute(inputs.shooterTopVelocityRadPerSec);
+    return Math.abs(currentRPM - velocityRPM) <= flywheelTolerance.get();
+  }
+
+  /** Returns the aimer angles and flywheel speeds for shooting into the speaker. */
+  public ShotTable getShotTable() {
+    return shotTable;
+  }
+
   public void runGuideOutput(double percent) {
     shooterIO.setGuideOutput(percent);
 
@@ -186,10 +212,13 @@ public class Shooter extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {
+  protected void updateInputs() {
     shooterIO.updateInputs(inputs);
     Logger.processInputs("Shooter", inputs);
+  }
 
+  @Override
+  protected void onPeriodic() {
     if (flyWheelKp.hasChanged(hashCode()) || flyWheelKd.hasChanged(hashCode())) {
       shooterIO.configureShooterPID(flyWheelKp.get(), 0.0, flyWheelKd.get());
     }
@@ -291,7 +320,15 @@ public class Shooter extends SubsystemBase {
    * @param distanceSupplier returns the current horizontal distance from the speaker opening (not
    *     diagonal)
    */
-  public Command aimContinuous(DoubleSupplier distanceSupplier) {
+  public AimContinuousCommand aimContinuous(DoubleSupplier distanceSupplier) {
     return new AimContinuousCommand(this, distanceSupplier);
   }
+
+  /**
+   * Like {@link #aimContinuous(DoubleSupplier)}, but aims with the solver's shot, which accounts
+   * for the robot's motion.
+   */
+  public AimContinuousCommand aimContinuous(MovingShotSolver shotSolver) {
+    return new AimContinuousCommand(this, shotSolver);
+  }
 }
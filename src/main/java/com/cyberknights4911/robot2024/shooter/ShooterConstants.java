@@ -10,6 +10,7 @@ package com.cyberknights4911.robot2024.shooter;
 import com.cyberknights4911.util.FeedForwardValues;
 import com.cyberknights4911.util.PidValues;
 import io.soabase.recordbuilder.core.RecordBuilder;
+import java.util.List;
 
 @RecordBuilder
 public record ShooterConstants(
@@ -31,6 +32,9 @@ public record ShooterConstants(
     double ampPositionDegrees,
     double speakerPositionDegrees,
     double podiumPositionDegrees,
+    double aimerToleranceDegrees,
+    double flywheelToleranceRpm,
+    List<ShotCalibration> shotCalibrations,
     PidValues shooterFeedBackValues,
     FeedForwardValues shooterFeedForwardValues,
     PidValues aimerFeedBackValues,
@@ -7,8 +7,10 @@
 
 package com.cyberknights4911.robot2024.shooter;
 
+import com.cyberknights4911.util.CanSignalHub;
 import com.cyberknights4911.util.SparkBurnManager;
 import com.cyberknights4911.util.SparkConfig;
+import com.cyberknights4911.util.SparkSettings;
 import com.revrobotics.CANSparkBase.ControlType;
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkFlex;
@@ -34,6 +36,11 @@ public class ShooterIOReal implements ShooterIO {
   private final SparkPIDController aimerPidController;
   private final SparkPIDController guidePidController;
 
+  private final CanSignalHub.SparkSignals shooterTopSignals;
+  private final CanSignalHub.SparkSignals shooterBottomSignals;
+  private final CanSignalHub.SparkSignals aimerSignals;
+  private final CanSignalHub.SparkSignals guideSignals;
+
   private final AnalogInput beamBreak;
 
   private final double aimerGearRatio;
@@ -61,6 +68,12 @@ public class ShooterIOReal implements ShooterIO {
     beamBreak = new AnalogInput(constants.sensorId());
 
     configureDevices();
+
+    CanSignalHub hub = CanSignalHub.getInstance();
+    shooterTopSignals = hub.registerSpark(shooterTop, shooterTopEncoder);
+    shooterBottomSignals = hub.registerSpark(shooterBottom, shooterBottomEncoder);
+    aimerSignals = hub.registerSpark(aimer, aimerEncoder);
+    guideSignals = hub.registerSpark(guide, guideEncoder);
   }
 
   @Override
@@ -125,28 +138,27 @@ public class ShooterIOReal implements ShooterIO {
 
   @Override
   public void updateInputs(ShooterIOInputs inputs) {
-    inputs.shooterTopPositionRad = Units.rotationsToRadians(shooterTopEncoder.getPosition());
+    inputs.shooterTopPositionRad = Units.rotationsToRadians(shooterTopSignals.getPosition());
     inputs.shooterTopVelocityRadPerSec =
-        Units.rotationsPerMinuteToRadiansPerSecond(shooterTopEncoder.getVelocity());
-    inputs.shooterBottomPositionRad = Units.rotationsToRadians(shooterBottomEncoder.getPosition());
+        Units.rotationsPerMinuteToRadiansPerSecond(shooterTopSignals.getVelocity());
+    inputs.shooterBottomPositionRad = Units.rotationsToRadians(shooterBottomSignals.getPosition());
     inputs.shooterBottomVelocityRadPerSec =
-        Units.rotationsPerMinuteToRadiansPerSecond(shooterBottomEncoder.getVelocity());
-    inputs.aimerPositionRad = Units.rotationsToRadians(aimerEncoder.getPosition()) / aimerGearRatio;
+        Units.rotationsPerMinuteToRadiansPerSecond(shooterBottomSignals.getVelocity());
+    inputs.aimerPositionRad = Units.rotationsToRadians(aimerSignals.getPosition()) / aimerGearRatio;
     inputs.aimerVelocityRadPerSec =
-        Units.rotationsPerMinuteToRadiansPerSecond(aimerEncoder.getVelocity()) / aimerGearRatio;
-    inputs.guidePositionRad = Units.rotationsToRadians(guideEncoder.getPosition());
+        Units.rotationsPerMinuteToRadiansPerSecond(aimerSignals.getVelocity()) / aimerGearRatio;
+    inputs.guidePositionRad = Units.rotationsToRadians(guideSignals.getPosition());
     inputs.guideVelocityRadPerSec =
-        Units.rotationsPerMinuteToRadiansPerSecond(guideEncoder.getVelocity());
-
-    inputs.shooterTopAppliedVolts = shooterTop.getAppliedOutput() * shooterTop.getBusVoltage();
-    inputs.shooterTopCurrentAmps = shooterTop.getOutputCurrent();
-    inputs.shooterBottomAppliedVolts =
-        shooterBottom.getAppliedOutput() * shooterBottom.getBusVoltage();
-    inputs.shooterBottomCurrentAmps = shooterBottom.getOutputCurrent();
-    inputs.aimerAppliedVolts = aimer.getAppliedOutput() * aimer.getBusVoltage();
-    inputs.aimerCurrentAmps = aimer.getOutputCurrent();
-    inputs.guideAppliedVolts = guide.getAppliedOutput() * guide.getBusVoltage();
-    inputs.guideCurrentAmps = guide.getOutputCurrent();
+        Units.rotationsPerMinuteToRadiansPerSecond(guideSignals.getVelocity());
+
+    inputs.shooterTopAppliedVolts = shooterTopSignals.getAppliedVolts();
+    inputs.shooterTopCurrentAmps = shooterTopSignals.getCurrentAmps();
+    inputs.shooterBottomAppliedVolts = shooterBottomSignals.getAppliedVolts();
+    inputs.shooterBottomCurrentAmps = shooterBottomSignals.getCurrentAmps();
+    inputs.aimerAppliedVolts = aimerSignals.getAppliedVolts();
+    inputs.aimerCurrentAmps = aimerSignals.getCurrentAmps();
+    inputs.guideAppliedVolts = guideSignals.getAppliedVolts();
+    inputs.guideCurrentAmps = guideSignals.getCurrentAmps();
 
     inputs.beamBreakValue = beamBreak.getVoltage();
   }
@@ -168,26 +180,35 @@ public class ShooterIOReal implements ShooterIO {
 
   @Override
   public void configureShooterPID(double kP, double kI, double kD) {
-    shooterPidController.setP(kP, 0);
-    shooterPidController.setI(kI, 0);
-    shooterPidController.setD(kD, 0);
-    shooterPidController.setFF(0, 0);
+    sparkBurnManager.afterConfiguration(
+        () -> {
+          shooterPidController.setP(kP, 0);
+          shooterPidController.setI(kI, 0);
+          shooterPidController.setD(kD, 0);
+          shooterPidController.setFF(0, 0);
+        });
   }
 
   @Override
   public void configureAimerPID(double kP, double kI, double kD) {
-    aimerPidController.setP(kP, 0);
-    aimerPidController.setI(kI, 0);
-    aimerPidController.setD(kD, 0);
-    aimerPidController.setFF(0, 0);
+    sparkBurnManager.afterConfiguration(
+        () -> {
+          aimerPidController.setP(kP, 0);
+          aimerPidController.setI(kI, 0);
+          aimerPidController.setD(kD, 0);
+          aimerPidController.setFF(0, 0);
+        });
   }
 
   @Override
   public void configureGuidePID(double kP, double kI, double kD) {
-    guidePidController.setP(kP, 0);
-    guidePidController.setI(kI, 0);
-    guidePidController.setD(kD, 0);
-    guidePidController.setFF(0, 0);
+    sparkBurnManager.afterConfiguration(
+        () -> {
+          guidePidController.setP(kP, 0);
+          guidePidController.setI(kI, 0);
+          guidePidController.setD(kD, 0);
+          guidePidController.setFF(0, 0);
+        });
   }
 
   @Override
@@ -199,47 +220,41 @@ public class ShooterIOReal implements ShooterIO {
   }
 
   private void configureDevices() {
-    sparkBurnManager.maybeBurnConfig(
-        () -> {
-          SparkConfig.configLeaderFollower(shooterBottom);
-          SparkConfig.configLeaderFollower(shooterTop);
-          SparkConfig.configNotLeader(aimer);
-          SparkConfig.configNotLeader(guide);
-
-          shooterBottom.follow(shooterTop, true);
-          guide.setInverted(true);
-          // aimer.setInverted(true);
-
-          shooterTop.setSmartCurrentLimit(80);
-          shooterBottom.setSmartCurrentLimit(80);
-          aimer.setSmartCurrentLimit(80);
-          guide.setSmartCurrentLimit(60);
-          shooterTop.enableVoltageCompensation(12);
-          shooterBottom.enableVoltageCompensation(12);
-          aimer.enableVoltageCompensation(12);
-          guide.enableVoltageCompensation(12);
-
-          shooterTop.setIdleMode(IdleMode.kBrake);
-          shooterBottom.setIdleMode(IdleMode.kBrake);
-          aimer.setIdleMode(IdleMode.kBrake);
-          guide.setIdleMode(IdleMode.kBrake);
-
-          shooterTopEncoder.setPosition(0.0);
-          shooterTopEncoder.setMeasurementPeriod(10);
-          shooterTopEncoder.setAverageDepth(2);
-          shooterBottomEncoder.setPosition(0.0);
-          shooterBottomEncoder.setMeasurementPeriod(10);
-          shooterBottomEncoder.setAverageDepth(2);
-          aimerEncoder.setPosition(0.0);
-          aimerEncoder.setMeasurementPeriod(10);
-          aimerEncoder.setAverageDepth(2);
-          guideEncoder.setPosition(0.0);
-          guideEncoder.setMeasurementPeriod(10);
-          guideEncoder.setAverageDepth(2);
-        },
-        shooterTop,
-        shooterBottom,
-        aimer,
-        guide);
+    sparkBurnManager.configure(
+        new SparkSettings(shooterTop)
+            .frames("leaderFollower", SparkConfig::configLeaderFollower)
+            .smartCurrentLimit(80)
+            .voltageCompensation(12)
+            .idleMode(IdleMode.kBrake)
+            .encoderPosition(0.0)
+            .encoderMeasurementPeriod(10)
+            .encoderAverageDepth(2),
+        new SparkSettings(shooterBottom)
+            .frames("leaderFollower", SparkConfig::configLeaderFollower)
+            .follow(shooterTop, true)
+            .smartCurrentLimit(80)
+            .voltageCompensation(12)
+            .idleMode(IdleMode.kBrake)
+            .encoderPosition(0.0)
+            .encoderMeasurementPeriod(10)
+            .encoderAverageDepth(2),
+        new SparkSettings(aimer)
+            .frames("notLeader", SparkConfig::configNotLeader)
+            // .inverted(true)
+            .smartCurrentLimit(80)
+            .voltageCompensation(12)
+            .idleMode(IdleMode.kBrake)
+            .encoderPosition(0.0)
+            .encoderMeasurementPeriod(10)
+            .encoderAverageDepth(2),
+        new SparkSettings(guide)
+            .frames("notLeader", SparkConfig::configNotLeader)
+            .inverted(true)
+            .smartCurrentLimit(60)
+            .voltageCompensation(12)
+            .idleMode(IdleMode.kBrake)
+            .encoderPosition(0.0)
+            .encoderMeasurementPeriod(10)
+            .encoderAverageDepth(2));
   }
 }
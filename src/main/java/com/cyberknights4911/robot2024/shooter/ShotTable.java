@@ -0,0 +1,143 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.robot2024.shooter;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.util.Units;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Aimer angle and flywheel speed for shooting into the speaker, by horizontal distance from the
+ * speaker opening.
+ *
+ * <p>The table is computed once, at startup, at evenly spaced distances, so a lookup is an index
+ * and one interpolation. Flywheel speed is interpolated between the calibration points. The angle
+ * comes from a drag free projectile model at that speed, corrected by how far the model was off
+ * at the calibration points, so the table goes through every measured shot. Time of flight is
+ * the horizontal distance over the horizontal speed of the note.
+ */
+public final class ShotTable {
+  private static final double MIN_DISTANCE_METERS = 1.0;
+  private static final double MAX_DISTANCE_METERS = 6.0;
+  private static final double STEP_METERS = 0.02;
+  private static final double GRAVITY = 9.81;
+  // Center of the speaker opening
+  private static final double SPEAKER_HEIGHT_METERS = Units.inchesToMeters(80.5);
+  // Where the note leaves the shooter
+  private static final double EXIT_HEIGHT_METERS = Units.inchesToMeters(22.0);
+  private static final double WHEEL_RADIUS_METERS = Units.inchesToMeters(2.0);
+  // Fraction of the flywheel surface speed the note leaves with
+  private static final double EXIT_EFFICIENCY = 0.45;
+  // Used when there are no calibration points
+  private static final double DEFAULT_FLYWHEEL_RPM = 4000.0;
+
+  private final double[] aimerDegrees;
+  private final double[] flywheelRpm;
+  private final double[] timeOfFlightSecs;
+
+  public ShotTable(List<ShotCalibration> calibrations) {
+    List<ShotCalibration> sorted = new ArrayList<>(calibrations == null ? List.of() : calibrations);
+    sorted.sort(Comparator.comparingDouble(ShotCalibration::distanceMeters));
+    int count = sorted.size();
+    double[] calibrationDistances = new double[count];
+    double[] calibrationRpms = new double[count];
+    double[] calibrationOffsets = new double[count];
+    for (int i = 0; i < count; i++) {
+      ShotCalibration calibration = sorted.get(i);
+      calibrationDistances[i] = calibration.distanceMeters();
+      calibrationRpms[i] = calibration.flywheelRpm();
+      calibrationOffsets[i] =
+          calibration.aimerDegrees()
+              - modelDegrees(calibration.distanceMeters(), calibration.flywheelRpm());
+    }
+
+    int size = (int) Math.round((MAX_DISTANCE_METERS - MIN_DISTANCE_METERS) / STEP_METERS) + 1;
+    aimerDegrees = new double[size];
+    flywheelRpm = new double[size];
+    timeOfFlightSecs = new double[size];
+    for (int i = 0; i < size; i++) {
+      double distance = MIN_DISTANCE_METERS + i * STEP_METERS;
+      double rpm =
+          count == 0
+              ? DEFAULT_FLYWHEEL_RPM
+              : interpolate(calibrationDistances, calibrationRpms, distance);
+      double offset =
+          count == 0 ? 0.0 : interpolate(calibrationDistances, calibrationOffsets, distance);
+      flywheelRpm[i] = rpm;
+      aimerDegrees[i] = modelDegrees(distance, rpm) + offset;
+      timeOfFlightSecs[i] =
+          distance / (exitVelocity(rpm) * Math.cos(Math.toRadians(aimerDegrees[i])));
+    }
+  }
+
+  /** Returns the aimer angle for a horizontal distance from the speaker opening. */
+  public double aimerDegrees(double distanceMeters) {
+    return lookup(aimerDegrees, distanceMeters);
+  }
+
+  /** Returns the flywheel speed for a horizontal distance from the speaker opening. */
+  public double flywheelRpm(double distanceMeters) {
+    return lookup(flywheelRpm, distanceMeters);
+  }
+
+  /** Returns how long the note takes to reach the speaker from a horizontal distance. */
+  public double timeOfFlightSecs(double distanceMeters) {
+    return lookup(timeOfFlightSecs, distanceMeters);
+  }
+
+  /** Returns true if the distance is covered by the table, rather than clamped to its ends. */
+  public boolean inRange(double distanceMeters) {
+    return distanceMeters >= MIN_DISTANCE_METERS && distanceMeters <= MAX_DISTANCE_METERS;
+  }
+
+  private static double lookup(double[] column, double distanceMeters) {
+    double index =
+        MathUtil.clamp((distanceMeters - MIN_DISTANCE_METERS) / STEP_METERS, 0, column.length - 1);
+    int lower = (int) index;
+    if (lower == column.length - 1) {
+      return column[lower];
+    }
+    return MathUtil.interpolate(column[lower], column[lower + 1], index - lower);
+  }
+
+  /** Returns the exit speed of the note with the flywheel at the given speed. */
+  private static double exitVelocity(double rpm) {
+    return Units.rotationsPerMinuteToRadiansPerSecond(rpm) * WHEEL_RADIUS_METERS * EXIT_EFFICIENCY;
+  }
+
+  /**
+   * Returns the flatter of the two launch angles that reach the speaker opening at this speed, or
+   * the angle that gets closest if it can't be reached.
+   */
+  private static double modelDegrees(double distanceMeters, double rpm) {
+    double v = exitVelocity(rpm);
+    double v2 = v * v;
+    double height = SPEAKER_HEIGHT_METERS - EXIT_HEIGHT_METERS;
+    double discriminant =
+        v2 * v2 - GRAVITY * (GRAVITY * distanceMeters * distanceMeters + 2 * height * v2);
+    if (discriminant < 0) {
+      return Math.toDegrees(Math.atan2(v2, GRAVITY * distanceMeters));
+    }
+    return Math.toDegrees(Math.atan2(v2 - Math.sqrt(discriminant), GRAVITY * distanceMeters));
+  }
+
+  /** Linearly interpolates between sorted points, holding the end values outside of them. */
+  private static double interpolate(double[] xs, double[] ys, double x) {
+    if (x <= xs[0]) {
+      return ys[0];
+    }
+    for (int i = 1; i < xs.length; i++) {
+      if (x <= xs[i]) {
+        return MathUtil.interpolate(ys[i - 1], ys[i], (x - xs[i - 1]) / (xs[i] - xs[i - 1]));
+      }
+    }
+    return ys[ys.length - 1];
+  }
+}
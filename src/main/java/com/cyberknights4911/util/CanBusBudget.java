@@ -0,0 +1,217 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.util;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.cyberknights4911.logging.Alert;
+import com.cyberknights4911.logging.Alert.AlertType;
+import com.revrobotics.CANSparkBase;
+import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Plans status frame rates so each CAN bus stays under a utilization target.
+ *
+ * <p>IO implementations declare the rate they want for each Phoenix 6 signal and Spark status
+ * frame, which is applied right away. Once every device is constructed, {@link #plan()} estimates
+ * each bus's load and, if a bus is over the target, slows every frame on it that does not feed
+ * odometry by a common factor, down to {@link #MIN_RATE_HZ}. The plan is logged under "CANBudget/"
+ * and an alert is raised for any bus that is still over budget.
+ *
+ * <p>Declarations are thread safe, so devices can be configured concurrently.
+ *
+ * <p>The load estimate assumes one classic CAN frame per signal or status frame, which overstates
+ * Phoenix devices that pack several signals into a frame.
+ */
+public final class CanBusBudget {
+  /** Default fraction of each bus's bandwidth that status frames may use. */
+  public static final double DEFAULT_UTILIZATION_TARGET = 0.6;
+  /** Slowest rate a frame is reduced to, unless it was requested slower. */
+  public static final double MIN_RATE_HZ = 10.0;
+  /** Bus used by Sparks, which are always on the roboRIO's bus. */
+  public static final String RIO_BUS = "rio";
+
+  private static final double BUS_BITS_PER_SECOND = 1_000_000.0;
+  // Extended id, 8 data bytes, without bit stuffing
+  private static final double BITS_PER_FRAME = 131.0;
+  private static final int SEARCH_ITERATIONS = 30;
+
+  private static CanBusBudget instance = null;
+
+  // Keyed by signal, or by Spark and frame, so declaring a frame again replaces it
+  private final Map<Object, Frame> frames = new LinkedHashMap<>();
+  private final Map<String, Alert> overBudgetAlerts = new LinkedHashMap<>();
+  private double utilizationTarget = DEFAULT_UTILIZATION_TARGET;
+
+  public static CanBusBudget getInstance() {
+    if (instance == null) {
+      instance = new CanBusBudget();
+    }
+    return instance;
+  }
+
+  private CanBusBudget() {}
+
+  private static final class Frame {
+    private final String bus;
+    private final String name;
+    private final double requestedHz;
+    private final boolean odometry;
+    private final DoubleConsumer apply;
+    private double plannedHz;
+
+    private Frame(
+        String bus, String name, double requestedHz, boolean odometry, DoubleConsumer apply) {
+      this.bus = bus;
+      this.name = name;
+      this.requestedHz = requestedHz;
+      this.odometry = odometry;
+      this.apply = apply;
+      plannedHz = requestedHz;
+    }
+
+    private double minHz() {
+      return odometry ? requestedHz : Math.min(requestedHz, MIN_RATE_HZ);
+    }
+
+    private double rateAt(double scale) {
+      return odometry ? requestedHz : Math.max(requestedHz * scale, minHz());
+    }
+  }
+
+  /** Sets the fraction of each bus's bandwidth that status frames may use. */
+  public void setUtilizationTarget(double utilizationTarget) {
+    this.utilizationTarget = utilizationTarget;
+  }
+
+  /**
+   * Declares and applies the update rate for Phoenix 6 signals.
+   *
+   * @param device name of the device, used in the logged plan
+   * @param bus the CAN bus the device is on
+   * @param rateHz the requested update rate
+   * @param odometry whether the signals feed odometry, which keeps them at the requested rate
+   */
+  public synchronized void declarePhoenix(
+      String device, String bus, double rateHz, boolean odometry, BaseStatusSignal... signals) {
+    BaseStatusSignal.setUpdateFrequencyForAll(rateHz, signals);
+    for (BaseStatusSignal signal : signals) {
+      String name = device + "/" + signal.getName();
+      frames.put(
+          signal,
+          new Frame(busName(bus), name, rateHz, odometry, hz -> signal.setUpdateFrequency(hz)));
+    }
+  }
+
+  /**
+   * Declares and applies a Spark status frame period.
+   *
+   * @param odometry whether the frame feeds odometry, which keeps it at the requested period
+   */
+  public synchronized void declareSpark(
+      CANSparkBase spark, PeriodicFrame frame, int periodMs, boolean odometry) {
+    spark.setPeriodicFramePeriod(frame, periodMs);
+    String name = "Spark" + spark.getDeviceId() + "/" + frame.name();
+    frames.put(
+        name,
+        new Frame(
+            RIO_BUS,
+            name,
+            1000.0 / periodMs,
+            odometry,
+            hz -> spark.setPeriodicFramePeriod(frame, (int) Math.round(1000.0 / hz))));
+  }
+
+  /**
+   * Fits every bus to the utilization target, applies any slowed rates, and logs the plan. Call
+   * once, after every device is constructed.
+   */
+  public synchronized void plan() {
+    Map<String, List<Frame>> buses = new LinkedHashMap<>();
+    for (Frame frame : frames.values()) {
+      buses.computeIfAbsent(frame.bus, bus -> new ArrayList<>()).add(frame);
+    }
+
+    for (Map.Entry<String, List<Frame>> entry : buses.entrySet()) {
+      String bus = entry.getKey();
+      List<Frame> busFrames = entry.getValue();
+      double budgetHz = utilizationTarget * BUS_BITS_PER_SECOND / BITS_PER_FRAME;
+      double requestedHz = totalHz(busFrames, 1.0);
+
+      // Largest common scale for the non-odometry frames that fits the budget
+      double scale = 1.0;
+      if (requestedHz > budgetHz) {
+        double low = 0.0;
+        double high = 1.0;
+        for (int i = 0; i < SEARCH_ITERATIONS; i++) {
+          double mid = (low + high) / 2.0;
+          if (totalHz(busFrames, mid) > budgetHz) {
+            high = mid;
+          } else {
+            low = mid;
+          }
+        }
+        scale = low;
+      }
+
+      String[] plan = new String[busFrames.size()];
+      for (int i = 0; i < busFrames.size(); i++) {
+        Frame frame = busFrames.get(i);
+        frame.plannedHz = frame.rateAt(scale);
+        if (frame.plannedHz != frame.requestedHz) {
+          frame.apply.accept(frame.plannedHz);
+        }
+        plan[i] =
+            String.format(
+                "%s: %.1f Hz%s", frame.name, frame.plannedHz, frame.odometry ? " (odometry)" : "");
+      }
+
+      double plannedHz = totalHz(busFrames, scale);
+      double utilization = plannedHz * BITS_PER_FRAME / BUS_BITS_PER_SECOND;
+      String prefix = "CANBudget/" + bus + "/";
+      Logger.recordOutput(prefix + "RequestedFramesPerSec", requestedHz);
+      Logger.recordOutput(prefix + "PlannedFramesPerSec", plannedHz);
+      Logger.recordOutput(prefix + "EstimatedUtilization", utilization);
+      Logger.recordOutput(prefix + "Scale", scale);
+      Logger.recordOutput(prefix + "Plan", plan);
+      System.out.println(
+          String.format(
+              "[CanBusBudget] %s: %.0f frames/s, %.0f%% estimated utilization",
+              bus, plannedHz, utilization * 100));
+
+      boolean overBudget = plannedHz > budgetHz;
+      if (overBudget || overBudgetAlerts.containsKey(bus)) {
+        Alert alert =
+            overBudgetAlerts.computeIfAbsent(
+                bus, key -> new Alert("CAN bus over budget.", AlertType.WARNING));
+        alert.setText(
+            String.format(
+                "CAN bus %s over budget: %.0f%% estimated utilization, target %.0f%%.",
+                bus, utilization * 100, utilizationTarget * 100));
+        alert.set(overBudget);
+      }
+    }
+  }
+
+  private static double totalHz(List<Frame> frames, double scale) {
+    double total = 0.0;
+    for (Frame frame : frames) {
+      total += frame.rateAt(scale);
+    }
+    return total;
+  }
+
+  private static String busName(String bus) {
+    return bus.isEmpty() ? RIO_BUS : bus;
+  }
+}
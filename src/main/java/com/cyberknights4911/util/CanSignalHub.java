@@ -0,0 +1,241 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.util;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.revrobotics.CANSparkBase;
+import com.revrobotics.RelativeEncoder;
+import edu.wpi.first.wpilibj.Notifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Refreshes every registered CAN signal in one place, once per loop, so IO implementations read a
+ * snapshot instead of each blocking on the bus.
+ *
+ * <p>Phoenix 6 signals are grouped by bus, and each bus is refreshed with a single {@link
+ * BaseStatusSignal#refreshAll} call. Spark values are read by one poll thread, and {@link
+ * #refresh()} copies the latest poll into each device's snapshot, so every IO sees values from the
+ * same poll. The time each bus refresh and each Spark poll takes is logged under "CANSignalHub/".
+ *
+ * <p>Register signals when constructing IO, and call {@link #refresh()} at the start of each loop,
+ * before any subsystem reads its inputs.
+ */
+public final class CanSignalHub {
+  private static final double SPARK_POLL_PERIOD_SECS = 0.01;
+  private static final String SPARK_POLL_KEY = "CANSignalHub/Spark/PollMs";
+
+  private static CanSignalHub instance = null;
+
+  private final List<PhoenixBus> phoenixBuses = new ArrayList<>();
+
+  // Replaced, never modified, when a device is registered, so the poll thread can iterate it
+  private volatile SparkSignals[] sparks = new SparkSignals[0];
+  // Guards the values written by each poll, so a snapshot never mixes two polls
+  private final StampedLock sparkLock = new StampedLock();
+  private final Notifier sparkNotifier;
+  private volatile double sparkPollMillis = 0.0;
+
+  public static CanSignalHub getInstance() {
+    if (instance == null) {
+      instance = new CanSignalHub();
+    }
+    return instance;
+  }
+
+  private CanSignalHub() {
+    sparkNotifier = new Notifier(this::pollSparks);
+    sparkNotifier.setName("CanSignalHub");
+  }
+
+  /** Phoenix 6 signals registered together, refreshed as part of their bus. */
+  public static final class PhoenixSignals {
+    private final BaseStatusSignal[] signals;
+
+    private PhoenixSignals(BaseStatusSignal[] signals) {
+      this.signals = signals;
+    }
+
+    /** Returns true if every signal was received by the last refresh. */
+    public boolean isAllGood() {
+      for (int i = 0; i < signals.length; i++) {
+        if (!signals[i].getStatus().isOK()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A snapshot of a Spark's periodic status frames, as of the last {@link #refresh()}. Values are
+   * in the Spark's native units.
+   */
+  public static final class SparkSignals {
+    private final CANSparkBase spark;
+    private final RelativeEncoder encoder;
+
+    // Only touched by the poll thread
+    private double readPosition = 0.0;
+    private double readVelocity = 0.0;
+    private double readAppliedVolts = 0.0;
+    private double readCurrentAmps = 0.0;
+
+    // Written by the poll thread while holding the write lock
+    private double polledPosition = 0.0;
+    private double polledVelocity = 0.0;
+    private double polledAppliedVolts = 0.0;
+    private double polledCurrentAmps = 0.0;
+
+    // Only touched by the main loop
+    private double position = 0.0;
+    private double velocity = 0.0;
+    private double appliedVolts = 0.0;
+    private double currentAmps = 0.0;
+
+    private SparkSignals(CANSparkBase spark, RelativeEncoder encoder) {
+      this.spark = spark;
+      this.encoder = encoder;
+    }
+
+    private void read() {
+      readPosition = encoder.getPosition();
+      readVelocity = encoder.getVelocity();
+      readAppliedVolts = spark.getAppliedOutput() * spark.getBusVoltage();
+      readCurrentAmps = spark.getOutputCurrent();
+    }
+
+    private void publish() {
+      polledPosition = readPosition;
+      polledVelocity = readVelocity;
+      polledAppliedVolts = readAppliedVolts;
+      polledCurrentAmps = readCurrentAmps;
+    }
+
+    private void latch() {
+      position = polledPosition;
+      velocity = polledVelocity;
+      appliedVolts = polledAppliedVolts;
+      currentAmps = polledCurrentAmps;
+    }
+
+    /** Encoder position in rotations, scaled by the encoder's conversion factor. */
+    public double getPosition() {
+      return position;
+    }
+
+    /** Encoder velocity in RPM, scaled by the encoder's conversion factor. */
+    public double getVelocity() {
+      return velocity;
+    }
+
+    public double getAppliedVolts() {
+      return appliedVolts;
+    }
+
+    public double getCurrentAmps() {
+      return currentAmps;
+    }
+  }
+
+  private static final class PhoenixBus {
+    private final String name;
+    private final String refreshKey;
+    private BaseStatusSignal[] signals = new BaseStatusSignal[0];
+
+    private PhoenixBus(String name) {
+      this.name = name;
+      refreshKey = "CANSignalHub/" + (name.isEmpty() ? "rio" : name) + "/RefreshMs";
+    }
+  }
+
+  /** Registers Phoenix 6 signals on a bus, to be refreshed by {@link #refresh()}. */
+  public PhoenixSignals registerPhoenix(String canBus, BaseStatusSignal... signals) {
+    PhoenixBus bus = null;
+    for (PhoenixBus existing : phoenixBuses) {
+      if (existing.name.equals(canBus)) {
+        bus = existing;
+      }
+    }
+    if (bus == null) {
+      bus = new PhoenixBus(canBus);
+      phoenixBuses.add(bus);
+    }
+    int start = bus.signals.length;
+    bus.signals = Arrays.copyOf(bus.signals, start + signals.length);
+    System.arraycopy(signals, 0, bus.signals, start, signals.length);
+    return new PhoenixSignals(signals.clone());
+  }
+
+  /** Registers a Spark and its encoder, to be read by the poll thread. */
+  public SparkSignals registerSpark(CANSparkBase spark, RelativeEncoder encoder) {
+    SparkSignals signals = new SparkSignals(spark, encoder);
+    SparkSignals[] registered = Arrays.copyOf(sparks, sparks.length + 1);
+    registered[registered.length - 1] = signals;
+    sparks = registered;
+    if (registered.length == 1) {
+      sparkNotifier.startPeriodic(SPARK_POLL_PERIOD_SECS);
+    }
+    return signals;
+  }
+
+  /** Refreshes every Phoenix bus and latches the latest Spark poll. Call once per loop. */
+  public void refresh() {
+    for (int i = 0; i < phoenixBuses.size(); i++) {
+      PhoenixBus bus = phoenixBuses.get(i);
+      long start = System.nanoTime();
+      BaseStatusSignal.refreshAll(bus.signals);
+      Logger.recordOutput(bus.refreshKey, (System.nanoTime() - start) / 1e6);
+    }
+
+    SparkSignals[] registered = sparks;
+    if (registered.length == 0) {
+      return;
+    }
+    long stamp = sparkLock.tryOptimisticRead();
+    latchSparks(registered);
+    if (!sparkLock.validate(stamp)) {
+      // A poll was in progress, wait for it to finish
+      stamp = sparkLock.readLock();
+      try {
+        latchSparks(registered);
+      } finally {
+        sparkLock.unlockRead(stamp);
+      }
+    }
+    Logger.recordOutput(SPARK_POLL_KEY, sparkPollMillis);
+  }
+
+  private static void latchSparks(SparkSignals[] registered) {
+    for (int i = 0; i < registered.length; i++) {
+      registered[i].latch();
+    }
+  }
+
+  private void pollSparks() {
+    SparkSignals[] registered = sparks;
+    long start = System.nanoTime();
+    for (int i = 0; i < registered.length; i++) {
+      registered[i].read();
+    }
+    sparkPollMillis = (System.nanoTime() - start) / 1e6;
+
+    // Only hold the lock while copying, not while reading the devices
+    long stamp = sparkLock.writeLock();
+    try {
+      for (int i = 0; i < registered.length; i++) {
+        registered[i].publish();
+      }
+    } finally {
+      sparkLock.unlockWrite(stamp);
+    }
+  }
+}
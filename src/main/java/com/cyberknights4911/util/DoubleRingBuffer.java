@@ -0,0 +1,125 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.util;
+
+/**
+ * Fixed-capacity ring buffer of primitive doubles for exactly one producer thread and one consumer
+ * thread. Neither side takes a lock or allocates after construction.
+ *
+ * <p>Reads and writes are tracked with absolute sequence numbers. A producer that writes to several
+ * buffers in lockstep can therefore publish a single "samples written" sequence, and a consumer can
+ * drain every buffer up to that sequence to get equally sized, aligned batches.
+ */
+public final class DoubleRingBuffer {
+  private final double[] buffer;
+  private final int mask;
+
+  // Next sequence to write. Only written by the producer.
+  private volatile long head;
+  // Next sequence to read. Only written by the consumer.
+  private volatile long tail;
+
+  /**
+   * Creates a buffer that starts at sequence zero.
+   *
+   * @param minCapacity minimum number of values held, rounded up to a power of two
+   */
+  public DoubleRingBuffer(int minCapacity) {
+    this(minCapacity, 0);
+  }
+
+  /**
+   * Creates a buffer that starts at the given sequence.
+   *
+   * @param minCapacity minimum number of values held, rounded up to a power of two
+   * @param startSequence sequence number of the first value that will be written
+   */
+  public DoubleRingBuffer(int minCapacity, long startSequence) {
+    if (minCapacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive: " + minCapacity);
+    }
+    int capacity = Integer.highestOneBit(minCapacity);
+    if (capacity < minCapacity) {
+      capacity <<= 1;
+    }
+    buffer = new double[capacity];
+    mask = capacity - 1;
+    head = startSequence;
+    tail = startSequence;
+  }
+
+  /** Returns the number of values this buffer can hold. */
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /** Returns the number of values waiting to be drained. */
+  public int size() {
+    return (int) (head - tail);
+  }
+
+  /** Producer only. Returns true if the next {@link #offer} will succeed. */
+  public boolean hasCapacity() {
+    return head - tail < buffer.length;
+  }
+
+  /** Producer only. Returns the number of values that can be offered before the buffer is full. */
+  public int remainingCapacity() {
+    return buffer.length - (int) (head - tail);
+  }
+
+  /**
+   * Producer only. Appends a value, returning false (and dropping the value) if the buffer is full.
+   */
+  public boolean offer(double value) {
+    long currentHead = head;
+    if (currentHead - tail >= buffer.length) {
+      return false;
+    }
+    buffer[(int) currentHead & mask] = value;
+    // Volatile write publishes the value to the consumer
+    head = currentHead + 1;
+    return true;
+  }
+
+  /** Returns the sequence number that the next written value will receive. */
+  public long writeSequence() {
+    return head;
+  }
+
+  /**
+   * Consumer only. Copies all available values, oldest first, into the destination.
+   *
+   * @return the number of values copied
+   */
+  public int drainTo(double[] destination) {
+    return drainTo(destination, Long.MAX_VALUE);
+  }
+
+  /**
+   * Consumer only. Copies available values with a sequence number below {@code untilSequence},
+   * oldest first, into the destination.
+   *
+   * @return the number of values copied
+   */
+  public int drainTo(double[] destination, long untilSequence) {
+    long currentTail = tail;
+    long end = Math.min(head, untilSequence);
+    int count = (int) Math.min(Math.max(end - currentTail, 0), destination.length);
+    for (int i = 0; i < count; i++) {
+      destination[i] = buffer[(int) (currentTail + i) & mask];
+    }
+    tail = currentTail + count;
+    return count;
+  }
+
+  /** Consumer only. Discards all available values. */
+  public void clear() {
+    tail = head;
+  }
+}
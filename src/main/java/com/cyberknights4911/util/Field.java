@@ -36,7 +36,12 @@ public final class Field {
   }
 
   public static Translation2d speakerOpening() {
-    if (Alliance.isRed()) {
+    return speakerOpening(Alliance.isRed());
+  }
+
+  /** Returns the speaker opening, in inches, for the given alliance. */
+  public static Translation2d speakerOpening(boolean isRed) {
+    if (isRed) {
       return new Translation2d(652.73, 218.42);
     } else {
       return new Translation2d(-1.50, 218.42);
@@ -0,0 +1,86 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Advances every physics sim together on a fixed sub-step, so a simulated match plays out the same
+ * way every time regardless of how fast the host runs the robot loop.
+ *
+ * <p>Sim IO implementations register a {@link Body} when constructed and only read its state in
+ * {@code updateInputs}. The robot calls {@link #advance} once per loop, which steps every body, in
+ * the order they were registered, in {@link #SUBSTEP_SECS} increments. Sims that need randomness
+ * take it from {@link #getRandom()}, which is seeded, so a run can be reproduced from its seed.
+ */
+public final class PhysicsSim {
+  /** Fixed step every body is advanced by. */
+  public static final double SUBSTEP_SECS = 0.001;
+
+  public static final long DEFAULT_SEED = 4911;
+
+  private static PhysicsSim instance = null;
+
+  private final List<Body> bodies = new ArrayList<>();
+  private Random random = new Random(DEFAULT_SEED);
+  private long seed = DEFAULT_SEED;
+  private long steps = 0;
+
+  /** A simulated mechanism, advanced by a fixed step. */
+  @FunctionalInterface
+  public interface Body {
+    void step(double dtSecs);
+  }
+
+  public static PhysicsSim getInstance() {
+    if (instance == null) {
+      instance = new PhysicsSim();
+    }
+    return instance;
+  }
+
+  private PhysicsSim() {}
+
+  /** Registers a body to be advanced with the others. Call when constructing sim IO. */
+  public void register(Body body) {
+    bodies.add(body);
+  }
+
+  /** Reseeds the shared random source. Call before any sim IO is constructed. */
+  public void setSeed(long seed) {
+    this.seed = seed;
+    random = new Random(seed);
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /** Returns the seeded random source shared by every sim. */
+  public Random getRandom() {
+    return random;
+  }
+
+  /** Returns the simulated time, in seconds, that has been advanced so far. */
+  public double getElapsedSecs() {
+    return steps * SUBSTEP_SECS;
+  }
+
+  /** Advances every body by a whole number of sub-steps, as close to the given time as possible. */
+  public void advance(double seconds) {
+    long count = Math.round(seconds / SUBSTEP_SECS);
+    for (long i = 0; i < count; i++) {
+      for (int j = 0; j < bodies.size(); j++) {
+        bodies.get(j).step(SUBSTEP_SECS);
+      }
+    }
+    steps += count;
+  }
+}
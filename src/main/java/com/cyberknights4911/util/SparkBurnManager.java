@@ -7,96 +7,279 @@
 
 package com.cyberknights4911.util;
 
-import com.cyberknights4911.BuildConstants;
 import com.cyberknights4911.constants.Constants;
+import com.cyberknights4911.logging.Alert;
+import com.cyberknights4911.logging.Alert.AlertType;
 import com.cyberknights4911.logging.Mode;
 import com.revrobotics.CANSparkBase;
+import com.revrobotics.REVLibError;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.littletonrobotics.junction.Logger;
 
-/** Determines whether to burn Spark configs to flash. */
+/**
+ * Configures Sparks at startup and determines whether to burn their configs to flash.
+ *
+ * <p>Devices passed to {@link #configure} are configured concurrently, one thread per device. Each
+ * setting is verified after it is applied, and only the settings that failed are retried.
+ *
+ * <p>A device is only factory reset and burned when the fingerprint of its persistent settings
+ * differs from the one stored after it was last burned, or when reading back its settings shows
+ * its flash does not hold them, e.g. after the controller is replaced. Otherwise only its runtime
+ * settings are applied. {@link #awaitConfiguration()} waits for every device and logs the total
+ * time and each device's outcome under "SparkConfig/".
+ *
+ * <p>Configuration may factory reset a device, so anything set on a device outside of its {@link
+ * SparkSettings}, like PID gains from tunable numbers, must go through {@link
+ * #afterConfiguration}.
+ */
 public final class SparkBurnManager {
   public static final int CAN_TIMEOUT = 500;
-  // How many times to set the config on init
+  // How many times to try each setting
   public static final int CONFIG_ATTEMPT_COUNT = 4;
-  private static final String BUILD_DATE_FILE = "/home/lvuser/build-date.txt";
+  private static final String FINGERPRINT_FILE = "/home/lvuser/spark-fingerprints.bin";
+  private static final int FINGERPRINT_FILE_MAGIC = 0x53504b46; // "SPKF"
+  private static final int FINGERPRINT_FILE_VERSION = 1;
 
-  private final boolean shouldBurn;
+  private final boolean enabled;
+  // Fingerprints of the burned settings by CAN id, as of the last boot and as of this boot
+  private final Map<Integer, Long> storedFingerprints;
+  private final Map<Integer, Long> currentFingerprints = new HashMap<>();
+
+  private final List<Future<DeviceResult>> pending = new ArrayList<>();
+  private final List<Runnable> afterConfiguration = new ArrayList<>();
+  private final Alert failedAlert = new Alert("Spark configuration failed.", AlertType.ERROR);
+  private ExecutorService executor = null;
+  private long startNanos = 0;
+
+  private enum Outcome {
+    /** Every setting was applied and verified. */
+    CONFIGURED,
+    /** Flash already held the persistent settings, only runtime settings were applied. */
+    SKIPPED,
+    /** Some settings could not be applied or verified. */
+    FAILED
+  }
+
+  private record DeviceResult(
+      int id, Outcome outcome, int attempts, boolean burned, double millis, List<String> failed) {}
 
   public SparkBurnManager(Constants constants) {
-    if (constants.mode() == Mode.SIM) {
-      shouldBurn = false;
-      return;
-    }
+    enabled = constants.mode() == Mode.REAL;
+    storedFingerprints = enabled ? readFingerprints() : new HashMap<>();
+  }
 
-    File file = new File(BUILD_DATE_FILE);
-    if (!file.exists()) {
+  /** Starts configuring the devices in the background. Call from the main thread. */
+  public void configure(SparkSettings... devices) {
+    if (executor == null) {
+      startNanos = System.nanoTime();
+      executor =
+          Executors.newCachedThreadPool(
+              runnable -> {
+                Thread thread = new Thread(runnable, "SparkConfig");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    for (SparkSettings device : devices) {
+      Long stored = storedFingerprints.get(device.getSpark().getDeviceId());
+      // Flash holds these settings if they were burned on a previous boot
+      boolean unchanged = stored != null && stored == device.fingerprint();
+      pending.add(executor.submit(() -> configureDevice(device, unchanged)));
+    }
+  }
 
-      // No build date file, burn flash
-      shouldBurn = true;
+  /**
+   * Runs an action once every device has been configured, from {@link #awaitConfiguration()}, or
+   * right away if no configuration is in progress. Call from the main thread.
+   */
+  public void afterConfiguration(Runnable action) {
+    if (executor == null) {
+      action.run();
     } else {
+      afterConfiguration.add(action);
+    }
+  }
 
-      // Read previous build date
-      String previousBuildDate = "";
+  /**
+   * Waits for every device passed to {@link #configure}, then logs the results and stores the
+   * fingerprints of the devices whose flash holds their settings. Call once, after every device is
+   * constructed.
+   */
+  public void awaitConfiguration() {
+    if (executor == null) {
+      return;
+    }
+    List<String> failedDevices = new ArrayList<>();
+    for (Future<DeviceResult> future : pending) {
+      DeviceResult result;
       try {
-        previousBuildDate =
-            new String(Files.readAllBytes(Paths.get(BUILD_DATE_FILE)), StandardCharsets.UTF_8);
-      } catch (IOException e) {
+        result = future.get();
+      } catch (InterruptedException | ExecutionException e) {
         e.printStackTrace();
+        continue;
       }
-
-      shouldBurn = !previousBuildDate.equals(BuildConstants.BUILD_DATE);
+      String summary =
+          String.format(
+              "%s, %d attempt(s), %.0f ms%s",
+              result.outcome(),
+              result.attempts(),
+              result.millis(),
+              result.burned() ? ", burned" : "");
+      if (result.outcome() == Outcome.FAILED) {
+        summary += ", failed: " + String.join(" ", result.failed());
+        failedDevices.add(Integer.toString(result.id()));
+      }
+      Logger.recordOutput("SparkConfig/Spark" + result.id(), summary);
+      System.out.println("[SparkBurnManager] Spark " + result.id() + ": " + summary);
     }
+    pending.clear();
+    executor.shutdown();
+    executor = null;
 
-    try {
-      FileWriter fileWriter = new FileWriter(BUILD_DATE_FILE);
-      fileWriter.write(BuildConstants.BUILD_DATE);
-      fileWriter.close();
-    } catch (IOException e) {
-      e.printStackTrace();
+    double totalMillis = (System.nanoTime() - startNanos) / 1e6;
+    Logger.recordOutput("SparkConfig/TotalMs", totalMillis);
+    System.out.println(
+        String.format("[SparkBurnManager] Configured Sparks in %.0f ms", totalMillis));
+
+    failedAlert.setText("Spark configuration failed: " + String.join(", ", failedDevices));
+    failedAlert.set(!failedDevices.isEmpty());
+    if (enabled) {
+      writeFingerprints();
     }
 
-    if (shouldBurn) {
-      System.out.println("[SparkBurnManager] Build date changed, burning Spark flash");
-    } else {
-      System.out.println("[SparkBurnManager] Build date unchanged, will not burn Spark flash");
+    for (Runnable action : afterConfiguration) {
+      action.run();
     }
+    afterConfiguration.clear();
   }
 
-  public boolean shouldBurn() {
-    return shouldBurn;
-  }
+  private DeviceResult configureDevice(SparkSettings device, boolean unchanged) {
+    long start = System.nanoTime();
+    CANSparkBase spark = device.getSpark();
+
+    // Make CAN messages blocking for configuration
+    spark.setCANTimeout(CAN_TIMEOUT);
+
+    boolean skipPersistent = enabled && unchanged && flashMatches(device);
+    boolean burn = enabled && !skipPersistent;
+    if (burn) {
+      spark.restoreFactoryDefaults();
+    }
 
-  public void maybeBurnConfig(Runnable runnable, CANSparkBase... devices) {
-    if (shouldBurn) {
-      for (CANSparkBase device : devices) {
-        device.restoreFactoryDefaults();
+    List<SparkSettings.Setting> remaining = new ArrayList<>();
+    for (SparkSettings.Setting setting : device.getSettings()) {
+      if (setting.persistent && skipPersistent) {
+        continue;
       }
+      remaining.add(setting);
     }
 
-    // Make CAN messsages blocking for configuration
-    for (CANSparkBase device : devices) {
-      device.setCANTimeout(CAN_TIMEOUT);
+    // Retry only the settings that failed
+    int attempts = 0;
+    while (!remaining.isEmpty() && attempts < CONFIG_ATTEMPT_COUNT) {
+      attempts++;
+      List<SparkSettings.Setting> failed = new ArrayList<>();
+      for (SparkSettings.Setting setting : remaining) {
+        if (setting.apply.get() != REVLibError.kOk || !setting.verify.getAsBoolean()) {
+          failed.add(setting);
+        }
+      }
+      remaining = failed;
+    }
+
+    boolean burned = false;
+    if (burn && remaining.isEmpty()) {
+      burned = spark.burnFlash() == REVLibError.kOk;
+    }
+
+    // Make CAN messages async for normal operation
+    spark.setCANTimeout(0);
+
+    Outcome outcome;
+    if (!remaining.isEmpty()) {
+      outcome = Outcome.FAILED;
+    } else if (skipPersistent) {
+      outcome = Outcome.SKIPPED;
+    } else {
+      outcome = Outcome.CONFIGURED;
+    }
+    if (outcome == Outcome.SKIPPED || burned) {
+      recordFingerprint(spark.getDeviceId(), device.fingerprint());
+    }
+
+    List<String> failedKeys = new ArrayList<>();
+    for (SparkSettings.Setting setting : remaining) {
+      failedKeys.add(setting.key);
     }
+    return new DeviceResult(
+        spark.getDeviceId(),
+        outcome,
+        attempts,
+        burned,
+        (System.nanoTime() - start) / 1e6,
+        failedKeys);
+  }
 
-    // Attempt performing the config block a fixed number of times
-    for (int i = 0; i < CONFIG_ATTEMPT_COUNT; i++) {
-      runnable.run();
+  /** Returns true if every persistent setting that can be read back matches. */
+  private static boolean flashMatches(SparkSettings device) {
+    for (SparkSettings.Setting setting : device.getSettings()) {
+      if (setting.persistent && !setting.verify.getAsBoolean()) {
+        return false;
+      }
     }
+    return true;
+  }
+
+  private synchronized void recordFingerprint(int id, long fingerprint) {
+    currentFingerprints.put(id, fingerprint);
+  }
 
-    // Make CAN messsages async for normal operation
-    for (CANSparkBase device : devices) {
-      device.setCANTimeout(0);
+  private static Map<Integer, Long> readFingerprints() {
+    Map<Integer, Long> fingerprints = new HashMap<>();
+    File file = new File(FINGERPRINT_FILE);
+    if (!file.exists()) {
+      return fingerprints;
+    }
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      if (input.readInt() != FINGERPRINT_FILE_MAGIC
+          || input.readInt() != FINGERPRINT_FILE_VERSION) {
+        return fingerprints;
+      }
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        fingerprints.put(input.readInt(), input.readLong());
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      fingerprints.clear();
     }
+    return fingerprints;
+  }
 
-    if (shouldBurn) {
-      for (CANSparkBase device : devices) {
-        device.burnFlash();
+  private synchronized void writeFingerprints() {
+    try (DataOutputStream output = new DataOutputStream(new FileOutputStream(FINGERPRINT_FILE))) {
+      output.writeInt(FINGERPRINT_FILE_MAGIC);
+      output.writeInt(FINGERPRINT_FILE_VERSION);
+      output.writeInt(currentFingerprints.size());
+      for (Map.Entry<Integer, Long> entry : currentFingerprints.entrySet()) {
+        output.writeInt(entry.getKey());
+        output.writeLong(entry.getValue());
       }
+    } catch (IOException e) {
+      e.printStackTrace();
     }
   }
 }
@@ -10,23 +10,32 @@ package com.cyberknights4911.util;
 import com.revrobotics.CANSparkBase;
 import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
 
+/** Status frame periods for Sparks, declared to the {@link CanBusBudget}. */
 public final class SparkConfig {
+  // Effectively disables a frame
+  public static final int DISABLED_PERIOD_MS = 65535;
+  // REV's defaults for the frames these configs don't change
+  public static final int DEFAULT_STATUS1_PERIOD_MS = 20;
+  public static final int DEFAULT_STATUS2_PERIOD_MS = 20;
 
   private SparkConfig() {}
 
   public static void configNotLeader(CANSparkBase spark) {
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus0, 100);
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus3, 65535);
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus4, 65535);
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus5, 65535);
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus6, 65535);
+    configure(spark, 100);
   }
 
   public static void configLeaderFollower(CANSparkBase spark) {
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus0, 10);
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus3, 65535);
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus4, 65535);
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus5, 65535);
-    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus6, 65535);
+    configure(spark, 10);
+  }
+
+  private static void configure(CANSparkBase spark, int status0PeriodMs) {
+    CanBusBudget budget = CanBusBudget.getInstance();
+    budget.declareSpark(spark, PeriodicFrame.kStatus0, status0PeriodMs, false);
+    budget.declareSpark(spark, PeriodicFrame.kStatus1, DEFAULT_STATUS1_PERIOD_MS, false);
+    budget.declareSpark(spark, PeriodicFrame.kStatus2, DEFAULT_STATUS2_PERIOD_MS, false);
+    budget.declareSpark(spark, PeriodicFrame.kStatus3, DISABLED_PERIOD_MS, false);
+    budget.declareSpark(spark, PeriodicFrame.kStatus4, DISABLED_PERIOD_MS, false);
+    budget.declareSpark(spark, PeriodicFrame.kStatus5, DISABLED_PERIOD_MS, false);
+    budget.declareSpark(spark, PeriodicFrame.kStatus6, DISABLED_PERIOD_MS, false);
   }
 }
@@ -0,0 +1,157 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.util;
+
+import com.revrobotics.CANSparkBase;
+import com.revrobotics.CANSparkBase.IdleMode;
+import com.revrobotics.REVLibError;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The settings to apply to one Spark, applied by {@link SparkBurnManager#configure}.
+ *
+ * <p>Each setting has a key that includes its value, and is either persistent, meaning it is kept
+ * in flash when burned, or runtime, meaning it must be applied on every boot. Where REVLib has a
+ * getter, a setting is verified by reading it back, otherwise by the status of the set call. The
+ * keys of the persistent settings make up the device's {@link #fingerprint()}.
+ */
+public final class SparkSettings {
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /** A single setting. */
+  static final class Setting {
+    final String key;
+    final boolean persistent;
+    final Supplier<REVLibError> apply;
+    final BooleanSupplier verify;
+
+    private Setting(
+        String key, boolean persistent, Supplier<REVLibError> apply, BooleanSupplier verify) {
+      this.key = key;
+      this.persistent = persistent;
+      this.apply = apply;
+      this.verify = verify;
+    }
+  }
+
+  private final CANSparkBase spark;
+  private final List<Setting> settings = new ArrayList<>();
+
+  public SparkSettings(CANSparkBase spark) {
+    this.spark = spark;
+  }
+
+  public CANSparkBase getSpark() {
+    return spark;
+  }
+
+  List<Setting> getSettings() {
+    return Collections.unmodifiableList(settings);
+  }
+
+  /** Adds a persistent setting, verified by the status of the set call. */
+  public SparkSettings set(String key, Supplier<REVLibError> apply) {
+    return set(key, apply, () -> true);
+  }
+
+  /** Adds a persistent setting, verified by the status of the set call and by reading it back. */
+  public SparkSettings set(String key, Supplier<REVLibError> apply, BooleanSupplier verify) {
+    settings.add(new Setting(key, true, apply, verify));
+    return this;
+  }
+
+  /** Adds a setting that is not kept in flash, so it is applied on every boot. */
+  public SparkSettings runtime(String key, Supplier<REVLibError> apply) {
+    settings.add(new Setting(key, false, apply, () -> true));
+    return this;
+  }
+
+  /** Sets the status frame periods, e.g. with {@link SparkConfig#configNotLeader}. */
+  public SparkSettings frames(String key, Consumer<CANSparkBase> frames) {
+    return runtime(
+        "frames=" + key,
+        () -> {
+          frames.accept(spark);
+          return spark.getLastError();
+        });
+  }
+
+  public SparkSettings idleMode(IdleMode mode) {
+    return set(
+        "idleMode=" + mode, () -> spark.setIdleMode(mode), () -> spark.getIdleMode() == mode);
+  }
+
+  public SparkSettings inverted(boolean inverted) {
+    return set(
+        "inverted=" + inverted,
+        () -> {
+          spark.setInverted(inverted);
+          return spark.getLastError();
+        },
+        () -> spark.getInverted() == inverted);
+  }
+
+  public SparkSettings smartCurrentLimit(int amps) {
+    return set("smartCurrentLimit=" + amps, () -> spark.setSmartCurrentLimit(amps));
+  }
+
+  public SparkSettings voltageCompensation(double volts) {
+    return set(
+        "voltageCompensation=" + volts,
+        () -> spark.enableVoltageCompensation(volts),
+        () -> spark.getVoltageCompensationNominalVoltage() == volts);
+  }
+
+  public SparkSettings follow(CANSparkBase leader, boolean invert) {
+    return set(
+        "follow=" + leader.getDeviceId() + "," + invert,
+        () -> spark.follow(leader, invert),
+        spark::isFollower);
+  }
+
+  public SparkSettings encoderMeasurementPeriod(int millis) {
+    return set(
+        "encoderMeasurementPeriod=" + millis,
+        () -> spark.getEncoder().setMeasurementPeriod(millis),
+        () -> spark.getEncoder().getMeasurementPeriod() == millis);
+  }
+
+  public SparkSettings encoderAverageDepth(int depth) {
+    return set(
+        "encoderAverageDepth=" + depth,
+        () -> spark.getEncoder().setAverageDepth(depth),
+        () -> spark.getEncoder().getAverageDepth() == depth);
+  }
+
+  public SparkSettings encoderPosition(double position) {
+    return runtime("encoderPosition=" + position, () -> spark.getEncoder().setPosition(position));
+  }
+
+  /** Returns a stable 64-bit hash of the persistent settings, in the order they were added. */
+  public long fingerprint() {
+    long hash = FNV_OFFSET_BASIS;
+    for (Setting setting : settings) {
+      if (!setting.persistent) {
+        continue;
+      }
+      byte[] bytes = (setting.key + "\n").getBytes(StandardCharsets.UTF_8);
+      for (byte b : bytes) {
+        hash ^= b & 0xff;
+        hash *= FNV_PRIME;
+      }
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.vision;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose3d;
+
+/**
+ * A compiled, read-only index over an {@link AprilTagFieldLayout}. Tags are looked up by id with an
+ * array index instead of a list scan, and nothing is allocated per lookup.
+ *
+ * <p>The layout's origin is fixed when the index is built. The index is immutable and safe to share
+ * between threads.
+ */
+public final class FieldTagIndex {
+  // Indexed by tag id
+  private final Pose3d[] poses;
+  private final double[] x;
+  private final double[] y;
+
+  public FieldTagIndex(AprilTagFieldLayout layout) {
+    int maxId = -1;
+    for (AprilTag tag : layout.getTags()) {
+      maxId = Math.max(maxId, tag.ID);
+    }
+
+    poses = new Pose3d[maxId + 1];
+    x = new double[maxId + 1];
+    y = new double[maxId + 1];
+    for (AprilTag tag : layout.getTags()) {
+      if (tag.ID < 0) {
+        continue;
+      }
+      // Use the layout's accessor so its origin is applied
+      Pose3d pose = layout.getTagPose(tag.ID).orElse(tag.pose);
+      poses[tag.ID] = pose;
+      x[tag.ID] = pose.getX();
+      y[tag.ID] = pose.getY();
+    }
+  }
+
+  /** Returns true if the layout has a tag with the given id. */
+  public boolean contains(int id) {
+    return id >= 0 && id < poses.length && poses[id] != null;
+  }
+
+  /** Returns the tag's field pose, or null if there is no such tag. */
+  public Pose3d getPose(int id) {
+    return contains(id) ? poses[id] : null;
+  }
+
+  /** Returns the floor distance from a field position to the tag. The tag must exist. */
+  public double getDistance(int id, double fieldX, double fieldY) {
+    return Math.hypot(x[id] - fieldX, y[id] - fieldY);
+  }
+}
@@ -7,20 +7,18 @@
 
 package com.cyberknights4911.vision;
 
-import com.cyberknights4911.logging.LoggedTunableNumber;
+import com.cyberknights4911.logging.ProfiledSubsystem;
 import edu.wpi.first.apriltag.AprilTag;
 import edu.wpi.first.math.Matrix;
-import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -29,40 +27,37 @@ import org.photonvision.EstimatedRobotPose;
 import org.photonvision.targeting.PhotonPipelineResult;
 import org.photonvision.targeting.PhotonTrackedTarget;
 
-public class Vision extends SubsystemBase {
+public class Vision extends ProfiledSubsystem {
   private final Supplier<Pose2d> poseSupplier;
+  private final Supplier<ChassisSpeeds> speedsSupplier;
   private final Consumer<VisionUpdate> visionConsumer;
-  private final CameraConfig[] cameraConfigs;
-
-  private final HashMap<String, Double> lastTimestamp = new HashMap<>();
+  private final VisionPipeline pipeline;
+  private final FieldTagIndex tagIndex;
 
   private boolean updatePoseWithVisionReadings = true;
-  private boolean useMaxValidDistanceAway = true;
+  // Read by the pipeline's worker threads
+  private volatile VisionStdDevModel stdDevModel;
+  private volatile boolean useMaxValidDistanceAway = true;
+  private volatile double robotSpeedMetersPerSec = 0.0;
 
   private final VisionConstants visionConstants;
 
   private static double MAX_ALLOWABLE_PITCH = 3;
   private static double MAX_ALLOWABLE_ROLL = 3;
 
-  private static final LoggedTunableNumber twoTargetDeviation =
-      new LoggedTunableNumber("Vision/deviations/twoTarget", 0.6);
-  private static final LoggedTunableNumber threeTargetDeviation =
-      new LoggedTunableNumber("Vision/deviations/threeTarget", 0.4);
-  private static final LoggedTunableNumber fourTargetDeviation =
-      new LoggedTunableNumber("Vision/deviations/fourTarget", 0.2);
-
-  private static final Matrix<N3, N1> defaultDeviation = VecBuilder.fill(0.9, 0.9, 0.9);
-
   public Vision(
       VisionConstants visionConstants,
       Supplier<Pose2d> poseSupplier,
+      Supplier<ChassisSpeeds> speedsSupplier,
       Consumer<VisionUpdate> visionConsumer,
       CameraConfig... cameraConfigs) {
-    super();
+    super("Vision");
     this.visionConstants = visionConstants;
     this.poseSupplier = poseSupplier;
+    this.speedsSupplier = speedsSupplier;
     this.visionConsumer = visionConsumer;
-    this.cameraConfigs = cameraConfigs;
+    stdDevModel = VisionStdDevModel.fromDeployFile();
+    tagIndex = new FieldTagIndex(visionConstants.layout());
 
     Logger.recordOutput("Vision/updatePoseWithVisionReadings", true);
     Logger.recordOutput("Vision/useMaxValidDistanceAway", true);
@@ -75,8 +70,8 @@ public class Vision extends SubsystemBase {
       Logger.recordOutput(
           "Vision/" + cameraConfigs[i].constants().name(),
           new Pose3d().transformBy(cameraConfigs[i].constants().robotToCamera()));
-      lastTimestamp.put(cameraConfigs[i].constants().name(), 0.0);
     }
+    pipeline = new VisionPipeline(this::solvePose, cameraConfigs);
 
     // TODO(rbrewer): warn for no cameras
     // NOTE: the camera object is not getting set in SIM or REPLAY
@@ -89,16 +84,16 @@ public class Vision extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {
-    for (int i = 0; i < cameraConfigs.length; i++) {
-      cameraConfigs[i].visionIO().updateInputs(cameraConfigs[i].inputs());
-      Logger.processInputs(
-          "Vision/" + cameraConfigs[i].constants().name(), cameraConfigs[i].inputs());
-    }
+  protected void updateInputs() {
+    pipeline.updateInputs();
+  }
 
-    if (!updatePoseWithVisionReadings) {
-      return;
-    }
+  @Override
+  protected void onPeriodic() {
+    ChassisSpeeds speeds = speedsSupplier.get();
+    robotSpeedMetersPerSec = Math.hypot(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond);
+    stdDevModel = stdDevModel.retune(hashCode());
+    pipeline.setReferencePose(poseSupplier.get());
 
     // TODO(rbrewer): test whether necessary
     // if (Math.abs(drivetrain.getGyroPitch()) >= MAX_ALLOWABLE_PITCH
@@ -109,128 +104,80 @@ public class Vision extends SubsystemBase {
     // }
     // Logger.recordOutput("Vision/ValidGyroAngle", true);
 
-    for (int i = 0; i < cameraConfigs.length; i++) {
-      updatePose(cameraConfigs[i]);
-      Logger.recordOutput(
-          "Vision/" + cameraConfigs[i].constants().name() + "Connected",
-          cameraConfigs[i].inputs().lastTimestamp > 0.0);
+    if (updatePoseWithVisionReadings) {
+      pipeline.publish(visionConsumer);
     }
   }
 
-  private void updatePose(CameraConfig cameraConfig) {
-    boolean updated = false;
-    boolean pnpFailed = false;
-    Pose2d prevEstimatedRobotPose = poseSupplier.get();
-    double timestamp = 0;
-    double distance = 0.0;
-    PhotonPipelineResult cameraResult = null;
+  /** Runs on the camera's worker thread; see {@link VisionPipeline.PoseSolver}. */
+  private boolean solvePose(
+      CameraConfig cameraConfig,
+      PhotonPipelineResult cameraResult,
+      Pose2d prevEstimatedRobotPose,
+      double[] pose,
+      Matrix<N3, N1> stdDevs) {
     Pose3d robotPose = null;
-
-    double standardDeviation = -1.0;
-
-    // TODO(rbrewer): this is gross, find an alternative
-    synchronized (cameraConfig.constants()) {
-      // cameraResult = cameraConfig.inputs().lastResult;
-      timestamp = cameraConfig.inputs().lastTimestamp;
-    }
-
-    // is this a new camera result?
-    double prevTimestamp = lastTimestamp.get(cameraConfig.constants().name());
-    if (prevTimestamp >= timestamp) {
-      return;
-    }
-    lastTimestamp.put(cameraConfig.constants().name(), timestamp);
+    int tagCount = 0;
+    double totalDistance = 0.0;
+    double ambiguity = 0.0;
 
     int targetsSeen = cameraResult.getTargets().size();
-    Logger.recordOutput("Vision/" + cameraConfig.constants().name() + "/SeenTargets", targetsSeen);
-
     if (targetsSeen > 1) {
       // more than one target seen, use PNP with PV estimator
-
       cameraConfig.visionIO().setReferencePose(prevEstimatedRobotPose);
       Optional<EstimatedRobotPose> result = cameraConfig.visionIO().update(cameraResult);
 
       if (result.isPresent()) {
         robotPose = result.get().estimatedPose;
-
-        standardDeviation = getDeviationForNumTargets(targetsSeen);
-
-        Logger.recordOutput(
-            "Vision/" + cameraConfig.constants().name() + "/CameraPose",
-            robotPose.transformBy(cameraConfig.constants().robotToCamera()));
-      } else {
-        pnpFailed = true;
+        tagCount = targetsSeen;
+        for (PhotonTrackedTarget target : cameraResult.getTargets()) {
+          totalDistance += target.getBestCameraToTarget().getTranslation().getNorm();
+        }
       }
-
-      Logger.recordOutput("Vision/" + cameraConfig.constants().name() + "/Ambiguity", 0.0);
-
     } else {
       // zero or 1 target, manually check if it is accurate enough
       for (PhotonTrackedTarget target : cameraResult.getTargets()) {
         if (isValidTarget(target)) {
           Transform3d cameraToTarget = target.getBestCameraToTarget();
-          Optional<Pose3d> tagPoseOptional =
-              visionConstants.layout().getTagPose(target.getFiducialId());
-          if (tagPoseOptional.isEmpty()) {
+          Pose3d tagPose = tagIndex.getPose(target.getFiducialId());
+          if (tagPose == null) {
             break;
           }
 
-          Pose3d cameraPose = tagPoseOptional.get().transformBy(cameraToTarget.inverse());
+          Pose3d cameraPose = tagPose.transformBy(cameraToTarget.inverse());
 
           // TODO(rbrewer) verify this! naming was super sketch
           robotPose = cameraPose.transformBy(cameraConfig.constants().robotToCamera().inverse());
 
-          standardDeviation = cameraToTarget.getTranslation().getNorm() / 2.0;
-
-          Logger.recordOutput(
-              "Vision/" + cameraConfig.constants().name() + "/distanceNorm3D",
-              cameraToTarget.getTranslation().getNorm());
-
-          Logger.recordOutput(
-              "Vision/" + cameraConfig.constants().name() + "/Ambiguity",
-              target.getPoseAmbiguity());
-          Logger.recordOutput(
-              "Vision/" + cameraConfig.constants().name() + "/CameraPose", cameraPose);
+          tagCount = 1;
+          totalDistance = cameraToTarget.getTranslation().getNorm();
+          ambiguity = target.getPoseAmbiguity();
         }
       }
     }
 
-    if (robotPose != null) {
-      distance =
-          prevEstimatedRobotPose
-              .getTranslation()
-              .getDistance(new Translation2d(robotPose.getX(), robotPose.getY()));
-
-      Logger.recordOutput(
-          "Vision/" + cameraConfig.constants().name() + "/DistanceFromRobot", distance);
-      Logger.recordOutput(
-          "Vision/" + cameraConfig.constants().name() + "/RobotPose", robotPose.toPose2d());
-      Logger.recordOutput("Vision/" + cameraConfig.constants().name() + "/3DRobotPose", robotPose);
-
-      // distance from vision estimate to last position estimate
-      if (!useMaxValidDistanceAway
-          || distance <= visionConstants.maxValidDistanceMeters() * targetsSeen) {
-        // we passed all the checks, update the pose
-        updated = true;
-
-        Matrix<N3, N1> updateDeviation;
-        // -1 = error when calculating deviation
-        if (standardDeviation == -1) {
-          updateDeviation = defaultDeviation;
-        } else {
-          updateDeviation = VecBuilder.fill(standardDeviation, standardDeviation, 0.9);
-        }
+    if (robotPose == null) {
+      return false;
+    }
 
-        synchronized (visionConsumer) {
-          visionConsumer.accept(new VisionUpdate(timestamp, robotPose.toPose2d(), updateDeviation));
-        }
-      }
+    // distance from vision estimate to last position estimate
+    double distance =
+        prevEstimatedRobotPose
+            .getTranslation()
+            .getDistance(new Translation2d(robotPose.getX(), robotPose.getY()));
+    if (useMaxValidDistanceAway
+        && distance > visionConstants.maxValidDistanceMeters() * targetsSeen) {
+      return false;
     }
 
-    Logger.recordOutput("Vision/" + cameraConfig.constants().name() + "/Updated", updated);
-    Logger.recordOutput("Vision/" + cameraConfig.constants().name() + "/pnpFailed", pnpFailed);
-    Logger.recordOutput(
-        "Vision/" + cameraConfig.constants().name() + "/standardDeviation", standardDeviation);
+    // we passed all the checks, update the pose
+    Pose2d robotPose2d = robotPose.toPose2d();
+    pose[0] = robotPose2d.getX();
+    pose[1] = robotPose2d.getY();
+    pose[2] = robotPose2d.getRotation().getRadians();
+    stdDevModel.calculate(
+        tagCount, totalDistance / tagCount, ambiguity, robotSpeedMetersPerSec, stdDevs);
+    return true;
   }
 
   public boolean tagVisible(int id, PhotonPipelineResult result) {
@@ -285,7 +232,7 @@ public class Vision extends SubsystemBase {
     return target.getFiducialId() != -1
         && target.getPoseAmbiguity() != -1
         && target.getPoseAmbiguity() < visionConstants.maxAmbiguity()
-        && visionConstants.layout().getTagPose(target.getFiducialId()).isPresent();
+        && tagIndex.contains(target.getFiducialId());
   }
 
   public void enableMaxDistanceAwayForTags() {
@@ -307,22 +254,6 @@ public class Vision extends SubsystemBase {
     Logger.recordOutput("Vision/updatePoseWithVisionReadings", false);
     updatePoseWithVisionReadings = false;
   }
-
-  private double getDeviationForNumTargets(int numTargets) {
-    if (numTargets == 2) {
-      return twoTargetDeviation.get();
-    }
-
-    if (numTargets == 3) {
-      return threeTargetDeviation.get();
-    }
-
-    if (numTargets > 3) {
-      return fourTargetDeviation.get();
-    }
-
-    return 1.2;
-  }
 }
 
 final class TargetComparator implements Comparator<PhotonTrackedTarget> {
@@ -0,0 +1,130 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.vision;
+
+import com.cyberknights4911.util.DoubleRingBuffer;
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import java.util.List;
+import org.photonvision.targeting.MultiTargetPNPResult;
+import org.photonvision.targeting.PNPResult;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/**
+ * Packs {@link PhotonPipelineResult}s into primitive arrays so every frame can be logged as an
+ * input.
+ *
+ * <p>Frames are stored back to back. Each frame is:
+ *
+ * <ul>
+ *   <li>record length (including this value), timestamp in seconds, latency in milliseconds
+ *   <li>multi-tag result: present (0 or 1), best transform, best reprojection error, alternate
+ *       transform, alternate reprojection error, ambiguity, fiducial id count, fiducial ids
+ *   <li>target count, then for each target: fiducial id, yaw, pitch, area, skew, ambiguity, best
+ *       transform, alternate transform, detected corner count, corners as x, y pairs
+ * </ul>
+ *
+ * <p>Transforms are stored as translation x, y, z and quaternion w, x, y, z.
+ */
+public final class VisionFrames {
+  private static final int TRANSFORM_SIZE = 7;
+  // Everything before the multi-tag fiducial ids
+  private static final int FRAME_HEADER_SIZE = 6 + 2 * TRANSFORM_SIZE + 2;
+  // Everything before the target's corners
+  private static final int TARGET_HEADER_SIZE = 6 + 2 * TRANSFORM_SIZE + 1;
+
+  private VisionFrames() {}
+
+  /** Returns the number of values needed to pack the result. */
+  public static int packedLength(PhotonPipelineResult result) {
+    int length = FRAME_HEADER_SIZE + result.getMultiTagResult().fiducialIDsUsed.size() + 1;
+    List<PhotonTrackedTarget> targets = result.getTargets();
+    for (int i = 0; i < targets.size(); i++) {
+      length += TARGET_HEADER_SIZE + 2 * targets.get(i).getDetectedCorners().size();
+    }
+    return length;
+  }
+
+  /**
+   * Producer only. Packs a result into the queue, dropping it if there is not enough room.
+   *
+   * @return false if the result was dropped
+   */
+  public static boolean offer(
+      DoubleRingBuffer queue, double timestampSeconds, PhotonPipelineResult result) {
+    int length = packedLength(result);
+    if (queue.remainingCapacity() < length) {
+      return false;
+    }
+    queue.offer(length);
+    queue.offer(timestampSeconds);
+    queue.offer(result.getLatencyMillis());
+
+    MultiTargetPNPResult multiTag = result.getMultiTagResult();
+    PNPResult estimate = multiTag.estimatedPose;
+    queue.offer(estimate.isPresent ? 1.0 : 0.0);
+    offerTransform(queue, estimate.best);
+    queue.offer(estimate.bestReprojErr);
+    offerTransform(queue, estimate.alt);
+    queue.offer(estimate.altReprojErr);
+    queue.offer(estimate.ambiguity);
+    queue.offer(multiTag.fiducialIDsUsed.size());
+    for (int i = 0; i < multiTag.fiducialIDsUsed.size(); i++) {
+      queue.offer(multiTag.fiducialIDsUsed.get(i));
+    }
+
+    List<PhotonTrackedTarget> targets = result.getTargets();
+    queue.offer(targets.size());
+    for (int i = 0; i < targets.size(); i++) {
+      PhotonTrackedTarget target = targets.get(i);
+      queue.offer(target.getFiducialId());
+      queue.offer(target.getYaw());
+      queue.offer(target.getPitch());
+      queue.offer(target.getArea());
+      queue.offer(target.getSkew());
+      queue.offer(target.getPoseAmbiguity());
+      offerTransform(queue, target.getBestCameraToTarget());
+      offerTransform(queue, target.getAlternateCameraToTarget());
+      List<TargetCorner> corners = target.getDetectedCorners();
+      queue.offer(corners.size());
+      for (int j = 0; j < corners.size(); j++) {
+        queue.offer(corners.get(j).x);
+        queue.offer(corners.get(j).y);
+      }
+    }
+    return true;
+  }
+
+  /** Returns the number of targets in the newest of the packed frames, which must not be empty. */
+  public static int latestTargetCount(double[] frames) {
+    int offset = 0;
+    int next = (int) frames[0];
+    while (next < frames.length) {
+      offset = next;
+      next += (int) frames[next];
+    }
+    // The multi-tag fiducial ids come between the header and the target count
+    int idCount = (int) frames[offset + FRAME_HEADER_SIZE - 1];
+    return (int) frames[offset + FRAME_HEADER_SIZE + idCount];
+  }
+
+  private static void offerTransform(DoubleRingBuffer queue, Transform3d transform) {
+    Translation3d translation = transform.getTranslation();
+    Quaternion rotation = transform.getRotation().getQuaternion();
+    queue.offer(translation.getX());
+    queue.offer(translation.getY());
+    queue.offer(translation.getZ());
+    queue.offer(rotation.getW());
+    queue.offer(rotation.getX());
+    queue.offer(rotation.getY());
+    queue.offer(rotation.getZ());
+  }
+}
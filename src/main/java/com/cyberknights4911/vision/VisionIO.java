@@ -18,10 +18,28 @@ public interface VisionIO {
   public static class VisionIOInputs {
     public boolean isOnline = false;
     public double lastTimestamp = 0;
+    // Every frame received since the last loop, packed by VisionFrames
+    public double[] frames = new double[] {};
+
+    // Poses solved since the last loop, filled in by VisionPipeline. Poses and standard deviations
+    // are packed as {x, y, theta} per timestamp.
+    public double[] poseTimestamps = new double[] {};
+    public double[] poses = new double[] {};
+    public double[] poseStdDevs = new double[] {};
   }
 
   public default void updateInputs(VisionIOInputs inputs) {}
 
+  /**
+   * Copies the results received since the last call into the buffer, oldest first. If there are
+   * more results than fit, the oldest are skipped.
+   *
+   * @return the number of results copied
+   */
+  public default int readResults(PhotonPipelineResult[] results) {
+    return 0;
+  }
+
   public default void setReferencePose(Pose2d referencePose) {}
 
   public default Optional<EstimatedRobotPose> update(PhotonPipelineResult cameraResult) {
@@ -8,21 +8,27 @@
 package com.cyberknights4911.vision;
 
 import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.networktables.DoubleArraySubscriber;
-import edu.wpi.first.networktables.NetworkTableEvent;
 import edu.wpi.first.networktables.NetworkTableInstance;
-import edu.wpi.first.wpilibj.Timer;
-import java.util.EnumSet;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.RawSubscriber;
+import edu.wpi.first.networktables.TimestampedRaw;
 import java.util.Optional;
 import org.photonvision.EstimatedRobotPose;
 import org.photonvision.PhotonCamera;
 import org.photonvision.PhotonPoseEstimator;
 import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.common.dataflow.structures.Packet;
 import org.photonvision.targeting.PhotonPipelineResult;
 
 public class VisionIOPhoton implements VisionIO {
+  // Frames kept by NetworkTables between reads; several loops worth at PhotonVision frame rates
+  private static final int QUEUE_DEPTH = 32;
+
   private final PhotonCamera camera;
   private final PhotonPoseEstimator photonPoseEstimator;
+  private final RawSubscriber rawBytesSubscriber;
+  // Reused to unpack each frame
+  private final Packet packet = new Packet(1);
 
   private double lastTimestamp = 0;
   private PhotonPipelineResult lastResult = new PhotonPipelineResult();
@@ -41,39 +47,51 @@ public class VisionIOPhoton implements VisionIO {
     // TODO(rbrewer) test this
     // photonPoseEstimator.setMultiTagFallbackStrategy(PoseStrategy.CLOSEST_TO_REFERENCE_POSE);
 
-    NetworkTableInstance tables = NetworkTableInstance.getDefault();
-
-    /*
-     * based on https://docs.wpilib.org/en/latest/docs/software/networktables/listening-for-change.html#listening-for-changes
-     * and https://github.com/Mechanical-Advantage/RobotCode2022/blob/main/src/main/java/frc/robot/subsystems/vision/VisionIOPhotonVision.java
-     */
-    DoubleArraySubscriber targetPoseSub =
-        tables
+    // Queue every frame rather than sampling the latest one, so frames that arrive faster than
+    // they are read are not dropped
+    rawBytesSubscriber =
+        NetworkTableInstance.getDefault()
             .getTable("/photonvision/" + constants.photonCameraName())
-            .getDoubleArrayTopic("targetPose")
-            .subscribe(new double[0]);
-
-    tables.addListener(
-        targetPoseSub,
-        EnumSet.of(NetworkTableEvent.Kind.kValueAll),
-        event -> {
-          PhotonPipelineResult result = camera.getLatestResult();
-          double timestamp = Timer.getFPGATimestamp() - (result.getLatencyMillis() / 1000.0);
-
-          // TODO(rbrewer): fix this
-          synchronized (VisionIOPhoton.this) {
-            lastTimestamp = timestamp;
-            lastResult = result;
-          }
-        });
+            .getRawTopic("rawBytes")
+            .subscribe(
+                "rawBytes",
+                new byte[] {},
+                PubSubOption.sendAll(true),
+                PubSubOption.pollStorage(QUEUE_DEPTH),
+                PubSubOption.periodic(0.01));
   }
 
   @Override
-  public synchronized void updateInputs(VisionIOInputs inputs) {
+  public void updateInputs(VisionIOInputs inputs) {
     inputs.isOnline = camera.isConnected();
     inputs.lastTimestamp = lastTimestamp;
   }
 
+  @Override
+  public int readResults(PhotonPipelineResult[] results) {
+    TimestampedRaw[] frames = rawBytesSubscriber.readQueue();
+    int count = 0;
+    for (int i = Math.max(frames.length - results.length, 0); i < frames.length; i++) {
+      if (frames[i].value.length == 0) {
+        continue;
+      }
+      packet.clear();
+      packet.setData(frames[i].value);
+      PhotonPipelineResult result = PhotonPipelineResult.serde.unpack(packet);
+      // Same as PhotonCamera: the frame's arrival time, in microseconds, minus its latency
+      result.setTimestampSeconds(frames[i].timestamp / 1e6 - result.getLatencyMillis() / 1e3);
+      results[count++] = result;
+      lastResult = result;
+      lastTimestamp = result.getTimestampSeconds();
+    }
+    return count;
+  }
+
+  @Override
+  public PhotonPipelineResult getLastResult() {
+    return lastResult;
+  }
+
   @Override
   public void setReferencePose(Pose2d referencePose) {
     photonPoseEstimator.setReferencePose(referencePose);
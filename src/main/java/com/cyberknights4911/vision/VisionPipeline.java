@@ -0,0 +1,252 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.vision;
+
+import com.cyberknights4911.constants.Constants;
+import com.cyberknights4911.logging.Mode;
+import com.cyberknights4911.util.DoubleRingBuffer;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.Notifier;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import org.littletonrobotics.junction.Logger;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Reads each camera and solves robot poses on a dedicated thread per camera, so the main loop only
+ * drains finished updates and its cost does not grow with the number of cameras.
+ *
+ * <p>Every frame, packed by {@link VisionFrames}, and the poses solved from them are handed to the
+ * main loop through lock-free {@link DoubleRingBuffer}s and logged as part of each camera's {@link
+ * VisionIO.VisionIOInputs}. The worker threads are not started in replay, where the logged poses
+ * are used instead, so replay is deterministic.
+ */
+public final class VisionPipeline {
+  /** Solves a robot pose from a camera result. Called on the camera's worker thread. */
+  @FunctionalInterface
+  public interface PoseSolver {
+    /**
+     * @param camera the camera that produced the result
+     * @param result the new result
+     * @param referencePose the latest pose passed to {@link #setReferencePose}
+     * @param pose receives the robot pose as {x, y, theta}
+     * @param stdDevs receives the pose's standard deviations
+     * @return true if a pose was solved
+     */
+    boolean solve(
+        CameraConfig camera,
+        PhotonPipelineResult result,
+        Pose2d referencePose,
+        double[] pose,
+        Matrix<N3, N1> stdDevs);
+  }
+
+  private static final double POLL_PERIOD_SECS = 0.005;
+  // Timestamp, pose and standard deviations
+  private static final int UPDATE_SIZE = 7;
+  private static final int QUEUE_CAPACITY = 32;
+  private static final int MAX_RESULTS_PER_POLL = 8;
+  // Enough for several frames full of targets
+  private static final int FRAME_QUEUE_CAPACITY = 4096;
+  private static final double[] EMPTY = new double[] {};
+
+  private final PoseSolver solver;
+  private final CameraConfig[] cameraConfigs;
+  private final CameraKeys[] cameraKeys;
+  // Empty in replay
+  private final CameraWorker[] workers;
+
+  private volatile Pose2d referencePose = new Pose2d();
+
+  public VisionPipeline(PoseSolver solver, CameraConfig... cameraConfigs) {
+    this.solver = solver;
+    this.cameraConfigs = cameraConfigs;
+    cameraKeys = new CameraKeys[cameraConfigs.length];
+    for (int i = 0; i < cameraConfigs.length; i++) {
+      cameraKeys[i] = new CameraKeys("Vision/" + cameraConfigs[i].constants().name());
+    }
+
+    if (Constants.get().mode() == Mode.REPLAY) {
+      workers = new CameraWorker[0];
+    } else {
+      workers = new CameraWorker[cameraConfigs.length];
+      for (int i = 0; i < cameraConfigs.length; i++) {
+        workers[i] = new CameraWorker(cameraConfigs[i]);
+        workers[i].notifier.startPeriodic(POLL_PERIOD_SECS);
+      }
+    }
+  }
+
+  /** Sets the pose passed to the solvers. Safe to call from the main loop. */
+  public void setReferencePose(Pose2d pose) {
+    referencePose = pose;
+  }
+
+  /**
+   * Logs each camera's inputs, including the poses solved since the last call, and diagnostics
+   * derived from them. Should be called once per loop.
+   */
+  public void updateInputs() {
+    for (int i = 0; i < cameraConfigs.length; i++) {
+      VisionIOInputsAutoLogged inputs = cameraConfigs[i].inputs();
+      if (workers.length > 0) {
+        workers[i].copyTo(inputs);
+      }
+      Logger.processInputs(cameraKeys[i].inputs, inputs);
+      logDiagnostics(cameraKeys[i], inputs);
+    }
+  }
+
+  /** Logs what the camera saw and solved since the last loop, from its drained inputs. */
+  private static void logDiagnostics(CameraKeys keys, VisionIO.VisionIOInputs inputs) {
+    Logger.recordOutput(keys.connected, inputs.lastTimestamp > 0.0);
+    if (inputs.frames.length > 0) {
+      Logger.recordOutput(keys.seenTargets, VisionFrames.latestTargetCount(inputs.frames));
+    }
+    int poseCount = inputs.poseTimestamps.length;
+    Logger.recordOutput(keys.updated, poseCount > 0);
+    if (poseCount > 0) {
+      int index = (poseCount - 1) * 3;
+      Logger.recordOutput(
+          keys.robotPose,
+          new Pose2d(
+              inputs.poses[index],
+              inputs.poses[index + 1],
+              new Rotation2d(inputs.poses[index + 2])));
+      Logger.recordOutput(keys.standardDeviation, inputs.poseStdDevs[index]);
+    }
+  }
+
+  /** Passes each pose logged by the last {@link #updateInputs()} to the consumer. */
+  public void publish(Consumer<VisionUpdate> consumer) {
+    for (CameraConfig cameraConfig : cameraConfigs) {
+      VisionIOInputsAutoLogged inputs = cameraConfig.inputs();
+      for (int j = 0; j < inputs.poseTimestamps.length; j++) {
+        int index = j * 3;
+        consumer.accept(
+            new VisionUpdate(
+                inputs.poseTimestamps[j],
+                new Pose2d(
+                    inputs.poses[index],
+                    inputs.poses[index + 1],
+                    new Rotation2d(inputs.poses[index + 2])),
+                VecBuilder.fill(
+                    inputs.poseStdDevs[index],
+                    inputs.poseStdDevs[index + 1],
+                    inputs.poseStdDevs[index + 2])));
+      }
+    }
+  }
+
+  /** A camera's log keys, built once. */
+  private static final class CameraKeys {
+    private final String inputs;
+    private final String connected;
+    private final String seenTargets;
+    private final String updated;
+    private final String robotPose;
+    private final String standardDeviation;
+
+    private CameraKeys(String inputs) {
+      this.inputs = inputs;
+      connected = inputs + "Connected";
+      seenTargets = inputs + "/SeenTargets";
+      updated = inputs + "/Updated";
+      robotPose = inputs + "/RobotPose";
+      standardDeviation = inputs + "/standardDeviation";
+    }
+  }
+
+  private final class CameraWorker {
+    private final CameraConfig config;
+    private final Notifier notifier;
+    // Only touched by the notifier thread
+    private final VisionIOInputsAutoLogged inputs = new VisionIOInputsAutoLogged();
+    private final PhotonPipelineResult[] results = new PhotonPipelineResult[MAX_RESULTS_PER_POLL];
+    private final double[] pose = new double[3];
+    private final Matrix<N3, N1> stdDevs = new Matrix<>(Nat.N3(), Nat.N1());
+
+    private final DoubleRingBuffer queue = new DoubleRingBuffer(QUEUE_CAPACITY * UPDATE_SIZE);
+    // Only touched by the main loop, sized to hold whole updates
+    private final double[] drained = new double[queue.capacity() / UPDATE_SIZE * UPDATE_SIZE];
+
+    private final DoubleRingBuffer frameQueue = new DoubleRingBuffer(FRAME_QUEUE_CAPACITY);
+    // Sequence after the last fully written frame
+    private volatile long frameSequence = 0;
+    // Only touched by the main loop
+    private final double[] drainedFrames = new double[frameQueue.capacity()];
+
+    private volatile boolean online = false;
+    private volatile double lastTimestamp = 0.0;
+
+    private CameraWorker(CameraConfig config) {
+      this.config = config;
+      notifier = new Notifier(this::poll);
+      notifier.setName("Vision" + config.constants().name());
+    }
+
+    private void poll() {
+      int count = config.visionIO().readResults(results);
+      config.visionIO().updateInputs(inputs);
+      for (int i = 0; i < count; i++) {
+        PhotonPipelineResult result = results[i];
+        results[i] = null;
+        double timestamp = result.getTimestampSeconds();
+        // Drop the frame or update if the main loop has fallen behind
+        if (VisionFrames.offer(frameQueue, timestamp, result)) {
+          frameSequence = frameQueue.writeSequence();
+        }
+        if (solver.solve(config, result, referencePose, pose, stdDevs)
+            && queue.remainingCapacity() >= UPDATE_SIZE) {
+          queue.offer(timestamp);
+          queue.offer(pose[0]);
+          queue.offer(pose[1]);
+          queue.offer(pose[2]);
+          queue.offer(stdDevs.get(0, 0));
+          queue.offer(stdDevs.get(1, 0));
+          queue.offer(stdDevs.get(2, 0));
+        }
+      }
+      online = inputs.isOnline;
+      lastTimestamp = inputs.lastTimestamp;
+    }
+
+    private void copyTo(VisionIO.VisionIOInputs target) {
+      target.isOnline = online;
+      target.lastTimestamp = lastTimestamp;
+
+      int frameValues = frameQueue.drainTo(drainedFrames, frameSequence);
+      target.frames = frameValues == 0 ? EMPTY : Arrays.copyOf(drainedFrames, frameValues);
+
+      // Only drain whole updates, in case one is partially written
+      long available = queue.writeSequence() / UPDATE_SIZE * UPDATE_SIZE;
+      int count = queue.drainTo(drained, available) / UPDATE_SIZE;
+      if (count == 0) {
+        target.poseTimestamps = EMPTY;
+        target.poses = EMPTY;
+        target.poseStdDevs = EMPTY;
+        return;
+      }
+      target.poseTimestamps = new double[count];
+      target.poses = new double[count * 3];
+      target.poseStdDevs = new double[count * 3];
+      for (int i = 0; i < count; i++) {
+        int offset = i * UPDATE_SIZE;
+        target.poseTimestamps[i] = drained[offset];
+        System.arraycopy(drained, offset + 1, target.poses, i * 3, 3);
+        System.arraycopy(drained, offset + 4, target.poseStdDevs, i * 3, 3);
+      }
+    }
+  }
+}
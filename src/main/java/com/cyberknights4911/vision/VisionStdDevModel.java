@@ -0,0 +1,261 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.vision;
+
+import com.cyberknights4911.logging.Alert;
+import com.cyberknights4911.logging.Alert.AlertType;
+import com.cyberknights4911.logging.LoggedTunableNumber;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.Filesystem;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Models the standard deviations of a vision pose estimate from the number of tags used, their
+ * average distance, their ambiguity and the robot's speed.
+ *
+ * <p>The base standard deviations come from tables indexed by tag count and distance. Rows are
+ * sampled at a fixed distance step, so a lookup is an array index plus a linear interpolation. Row
+ * {@code i} is used for {@code i + 1} tags, and the last row for any larger count. The base values
+ * are then scaled by {@code (1 + ambiguityScale * ambiguity) * (1 + speedScale * speed)}.
+ *
+ * <p>The default tables have rows for 1, 2, 3, and 4 or more tags. Their multi-tag xy values are
+ * the tunable {@code Vision/deviations} numbers, grown with distance. A table loaded from the
+ * deploy file replaces the defaults and is not tunable.
+ *
+ * <p>The model is immutable and safe to share between threads. Retuning builds a new model. Results
+ * are written into a caller-owned matrix so scoring does not allocate.
+ */
+public final class VisionStdDevModel {
+  /** Optional deploy directory file read by {@link #fromDeployFile()}. */
+  public static final String DEPLOY_FILE = "vision/stddevs.txt";
+
+  private static final Alert invalidFileAlert =
+      new Alert("Invalid vision std dev file, using defaults.", AlertType.WARNING);
+
+  // Multi-tag xy std devs at zero distance, for 2, 3, and 4 or more tags
+  private static final LoggedTunableNumber twoTargetDeviation =
+      new LoggedTunableNumber("Vision/deviations/twoTarget", 0.6);
+  private static final LoggedTunableNumber threeTargetDeviation =
+      new LoggedTunableNumber("Vision/deviations/threeTarget", 0.4);
+  private static final LoggedTunableNumber fourTargetDeviation =
+      new LoggedTunableNumber("Vision/deviations/fourTarget", 0.2);
+
+  // Defaults, matching the original single tag heuristic
+  private static final double DEFAULT_DISTANCE_STEP = 0.5;
+  private static final int DEFAULT_DISTANCE_COUNT = 17;
+  private static final double SINGLE_TAG_MAX_DISTANCE = 4.0;
+  // Large enough that the estimate is ignored, small enough to stay finite when scaled
+  private static final double UNTRUSTED_STD_DEV = 1e9;
+  private static final double[] SINGLE_TAG_STD_DEVS = new double[] {4, 8};
+  private static final double MULTI_TAG_THETA_STD_DEV = 1.0;
+  private static final double DEFAULT_AMBIGUITY_SCALE = 1.0;
+  private static final double DEFAULT_SPEED_SCALE = 0.25;
+
+  private final double distanceStep;
+  // [tag count - 1][distance index]
+  private final double[][] xyTable;
+  private final double[][] thetaTable;
+  private final double ambiguityScale;
+  private final double speedScale;
+  // Whether the tables were built from the tunable numbers
+  private final boolean tunable;
+
+  private VisionStdDevModel(
+      double distanceStep,
+      double[][] xyTable,
+      double[][] thetaTable,
+      double ambiguityScale,
+      double speedScale,
+      boolean tunable) {
+    this.distanceStep = distanceStep;
+    this.xyTable = xyTable;
+    this.thetaTable = thetaTable;
+    this.ambiguityScale = ambiguityScale;
+    this.speedScale = speedScale;
+    this.tunable = tunable;
+  }
+
+  /** Returns the default model, with the current tunable multi-tag std devs. */
+  public static VisionStdDevModel defaults() {
+    double[] multiTagStdDevs =
+        new double[] {
+          twoTargetDeviation.get(), threeTargetDeviation.get(), fourTargetDeviation.get()
+        };
+    int rowCount = 1 + multiTagStdDevs.length;
+    double[][] xyTable = new double[rowCount][DEFAULT_DISTANCE_COUNT];
+    double[][] thetaTable = new double[rowCount][DEFAULT_DISTANCE_COUNT];
+    for (int i = 0; i < DEFAULT_DISTANCE_COUNT; i++) {
+      double distance = i * DEFAULT_DISTANCE_STEP;
+      double scale = 1 + (distance * distance / 30);
+      // A single distant tag is not trusted at all
+      boolean trustSingle = distance <= SINGLE_TAG_MAX_DISTANCE;
+      xyTable[0][i] = trustSingle ? SINGLE_TAG_STD_DEVS[0] * scale : UNTRUSTED_STD_DEV;
+      thetaTable[0][i] = trustSingle ? SINGLE_TAG_STD_DEVS[1] * scale : UNTRUSTED_STD_DEV;
+      for (int row = 1; row < rowCount; row++) {
+        xyTable[row][i] = multiTagStdDevs[row - 1] * scale;
+        thetaTable[row][i] = MULTI_TAG_THETA_STD_DEV * scale;
+      }
+    }
+    return new VisionStdDevModel(
+        DEFAULT_DISTANCE_STEP,
+        xyTable,
+        thetaTable,
+        DEFAULT_AMBIGUITY_SCALE,
+        DEFAULT_SPEED_SCALE,
+        true);
+  }
+
+  /**
+   * Returns a new default model if this one is tunable and the tunable numbers changed since the
+   * caller last checked, or else this model. Call from the main loop.
+   *
+   * @param id identifies the caller, see {@link LoggedTunableNumber#hasChanged(int)}
+   */
+  public VisionStdDevModel retune(int id) {
+    if (tunable
+        && (twoTargetDeviation.hasChanged(id)
+            || threeTargetDeviation.hasChanged(id)
+            || fourTargetDeviation.hasChanged(id))) {
+      return defaults();
+    }
+    return this;
+  }
+
+  /** Loads {@link #DEPLOY_FILE} from the deploy directory, falling back to the defaults. */
+  public static VisionStdDevModel fromDeployFile() {
+    Path path = Filesystem.getDeployDirectory().toPath().resolve(DEPLOY_FILE);
+    if (!Files.exists(path)) {
+      return defaults();
+    }
+    try {
+      VisionStdDevModel model = parse(Files.readAllLines(path));
+      invalidFileAlert.set(false);
+      return model;
+    } catch (IOException | IllegalArgumentException e) {
+      invalidFileAlert.setText("Invalid vision std dev file, using defaults: " + e.getMessage());
+      invalidFileAlert.set(true);
+      return defaults();
+    }
+  }
+
+  /**
+   * Parses a model. Each line is {@code key: values}, and {@code #} starts a comment. Keys are
+   * {@code distanceStep}, {@code ambiguityScale}, {@code speedScale}, and {@code xy} and {@code
+   * theta}, which are repeated once per tag count with comma separated values starting at a
+   * distance of zero.
+   */
+  public static VisionStdDevModel parse(List<String> lines) {
+    double distanceStep = DEFAULT_DISTANCE_STEP;
+    double ambiguityScale = DEFAULT_AMBIGUITY_SCALE;
+    double speedScale = DEFAULT_SPEED_SCALE;
+    List<double[]> xyRows = new ArrayList<>();
+    List<double[]> thetaRows = new ArrayList<>();
+
+    for (String rawLine : lines) {
+      String line = rawLine.split("#", 2)[0].trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      String[] keyValue = line.split(":", 2);
+      if (keyValue.length != 2) {
+        throw new IllegalArgumentException("Expected key: value, got " + line);
+      }
+      String key = keyValue[0].trim();
+      double[] values = parseValues(keyValue[1]);
+      switch (key) {
+        case "distanceStep":
+          distanceStep = values[0];
+          break;
+        case "ambiguityScale":
+          ambiguityScale = values[0];
+          break;
+        case "speedScale":
+          speedScale = values[0];
+          break;
+        case "xy":
+          xyRows.add(values);
+          break;
+        case "theta":
+          thetaRows.add(values);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown key " + key);
+      }
+    }
+
+    if (!(distanceStep > 0)) {
+      throw new IllegalArgumentException("distanceStep must be positive");
+    }
+    if (xyRows.isEmpty() || xyRows.size() != thetaRows.size()) {
+      throw new IllegalArgumentException("Expected matching, non-empty xy and theta rows");
+    }
+    int distanceCount = xyRows.get(0).length;
+    for (int i = 0; i < xyRows.size(); i++) {
+      if (xyRows.get(i).length != distanceCount || thetaRows.get(i).length != distanceCount) {
+        throw new IllegalArgumentException("All rows must have " + distanceCount + " values");
+      }
+    }
+    return new VisionStdDevModel(
+        distanceStep,
+        xyRows.toArray(new double[0][]),
+        thetaRows.toArray(new double[0][]),
+        ambiguityScale,
+        speedScale,
+        false);
+  }
+
+  /**
+   * Computes standard deviations for a pose estimate.
+   *
+   * @param tagCount number of tags used, at least one
+   * @param averageDistanceMeters average distance from the robot to the tags
+   * @param ambiguity average pose ambiguity of the tags, or zero if unknown
+   * @param robotSpeedMetersPerSec current robot speed
+   * @param stdDevs receives the x, y and theta standard deviations
+   */
+  public void calculate(
+      int tagCount,
+      double averageDistanceMeters,
+      double ambiguity,
+      double robotSpeedMetersPerSec,
+      Matrix<N3, N1> stdDevs) {
+    int row = Math.min(Math.max(tagCount, 1), xyTable.length) - 1;
+    double scale =
+        (1 + ambiguityScale * Math.max(ambiguity, 0.0))
+            * (1 + speedScale * Math.abs(robotSpeedMetersPerSec));
+    double xy = interpolate(xyTable[row], averageDistanceMeters) * scale;
+    stdDevs.set(0, 0, xy);
+    stdDevs.set(1, 0, xy);
+    stdDevs.set(2, 0, interpolate(thetaTable[row], averageDistanceMeters) * scale);
+  }
+
+  private double interpolate(double[] values, double distanceMeters) {
+    double position = Math.max(distanceMeters, 0.0) / distanceStep;
+    int index = (int) position;
+    if (index >= values.length - 1) {
+      return values[values.length - 1];
+    }
+    double fraction = position - index;
+    return values[index] + (values[index + 1] - values[index]) * fraction;
+  }
+
+  private static double[] parseValues(String text) {
+    String[] parts = text.split(",");
+    double[] values = new double[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      values[i] = Double.parseDouble(parts[i].trim());
+    }
+    return values;
+  }
+}
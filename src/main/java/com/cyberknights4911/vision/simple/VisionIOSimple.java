@@ -24,6 +24,7 @@ public final class VisionIOSimple implements VisionIO {
   private final PhotonPoseEstimator photonPoseEstimator;
 
   private PhotonPipelineResult lastResult = new PhotonPipelineResult();
+  private double lastTimestamp = 0.0;
 
   public VisionIOSimple(VisionConstants visionConstants, CameraConstants constants) {
     camera = new PhotonCamera(constants.photonCameraName());
@@ -41,14 +42,23 @@ public final class VisionIOSimple implements VisionIO {
   @Override
   public void updateInputs(VisionIOInputs inputs) {
     inputs.isOnline = camera.isConnected();
-    if (inputs.isOnline) {
-      PhotonPipelineResult newResult = camera.getLatestResult();
-      double latestTimestamp = newResult.getTimestampSeconds();
-      if (Math.abs(latestTimestamp - inputs.lastTimestamp) > 1e-5) {
-        lastResult = newResult;
-        inputs.lastTimestamp = latestTimestamp;
-      }
+    inputs.lastTimestamp = lastTimestamp;
+  }
+
+  @Override
+  public int readResults(PhotonPipelineResult[] results) {
+    if (results.length == 0 || !camera.isConnected()) {
+      return 0;
+    }
+    PhotonPipelineResult newResult = camera.getLatestResult();
+    double latestTimestamp = newResult.getTimestampSeconds();
+    if (Math.abs(latestTimestamp - lastTimestamp) <= 1e-5) {
+      return 0;
     }
+    lastResult = newResult;
+    lastTimestamp = latestTimestamp;
+    results[0] = newResult;
+    return 1;
   }
 
   @Override
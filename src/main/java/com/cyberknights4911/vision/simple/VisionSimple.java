@@ -7,52 +7,55 @@
 
 package com.cyberknights4911.vision.simple;
 
-import com.cyberknights4911.logging.LoggedTunableNumber;
+import com.cyberknights4911.logging.ProfiledSubsystem;
 import com.cyberknights4911.vision.CameraConfig;
 import com.cyberknights4911.vision.CameraConstants;
+import com.cyberknights4911.vision.FieldTagIndex;
 import com.cyberknights4911.vision.VisionConstants;
 import com.cyberknights4911.vision.VisionIOInputsAutoLogged;
+import com.cyberknights4911.vision.VisionPipeline;
+import com.cyberknights4911.vision.VisionStdDevModel;
 import com.cyberknights4911.vision.VisionUpdate;
 import edu.wpi.first.apriltag.AprilTag;
 import edu.wpi.first.math.Matrix;
-import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
-import java.util.HashMap;
+import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import org.littletonrobotics.junction.Logger;
+import org.photonvision.EstimatedRobotPose;
 import org.photonvision.targeting.PhotonPipelineResult;
 
-public final class VisionSimple extends SubsystemBase {
-  private static final Matrix<N3, N1> SINGLE_TAGS_STD_DEVS = VecBuilder.fill(4, 4, 8);
-  private static final Matrix<N3, N1> MULTI_TAG_STD_DEVS = VecBuilder.fill(0.5, 0.5, 1);
-  private static final LoggedTunableNumber twoTargetDeviation =
-      new LoggedTunableNumber("Vision/deviations/twoTarget", 0.6);
-  private static final LoggedTunableNumber threeTargetDeviation =
-      new LoggedTunableNumber("Vision/deviations/threeTarget", 0.4);
-  private static final LoggedTunableNumber fourTargetDeviation =
-      new LoggedTunableNumber("Vision/deviations/fourTarget", 0.2);
-
+public final class VisionSimple extends ProfiledSubsystem {
+  private final Supplier<ChassisSpeeds> speedsSupplier;
   private final Consumer<VisionUpdate> visionConsumer;
-  private final CameraConfig[] cameraConfigs;
+  private final VisionPipeline pipeline;
+  private final FieldTagIndex tagIndex;
+
+  // Read by the pipeline's worker threads
+  private volatile VisionStdDevModel stdDevModel;
+  private volatile double robotSpeedMetersPerSec = 0.0;
 
   private boolean updatePoseWithVisionReadings = true;
   private boolean useMaxValidDistanceAway = true;
 
   private final VisionConstants visionConstants;
 
-  private final HashMap<String, Double> lastTimestamp = new HashMap<>();
-
   public VisionSimple(
       VisionConstants visionConstants,
+      Supplier<ChassisSpeeds> speedsSupplier,
       Consumer<VisionUpdate> visionConsumer,
       CameraConstants... cameraConstants) {
-    super();
+    super("Vision");
     this.visionConstants = visionConstants;
+    this.speedsSupplier = speedsSupplier;
     this.visionConsumer = visionConsumer;
+    stdDevModel = VisionStdDevModel.fromDeployFile();
+    tagIndex = new FieldTagIndex(visionConstants.layout());
 
     Logger.recordOutput("Vision/updatePoseWithVisionReadings", updatePoseWithVisionReadings);
     Logger.recordOutput("Vision/useMaxValidDistanceAway", useMaxValidDistanceAway);
@@ -61,7 +64,7 @@ public final class VisionSimple extends SubsystemBase {
       Logger.recordOutput("Vision/AprilTags/" + tag.ID, tag.pose);
     }
 
-    cameraConfigs = new CameraConfig[cameraConstants.length];
+    CameraConfig[] cameraConfigs = new CameraConfig[cameraConstants.length];
     for (int i = 0; i < cameraConstants.length; i++) {
       cameraConfigs[i] =
           new CameraConfig(
@@ -71,79 +74,61 @@ public final class VisionSimple extends SubsystemBase {
       Logger.recordOutput(
           "Vision/" + cameraConstants[i].name(),
           new Pose3d().transformBy(cameraConstants[i].robotToCamera()));
-      lastTimestamp.put(cameraConstants[i].name(), 0.0);
     }
+    pipeline = new VisionPipeline(this::solvePose, cameraConfigs);
   }
 
   @Override
-  public void periodic() {
-    for (int i = 0; i < cameraConfigs.length; i++) {
-      cameraConfigs[i].visionIO().updateInputs(cameraConfigs[i].inputs());
-      Logger.processInputs(
-          "Vision/" + cameraConfigs[i].constants().name(), cameraConfigs[i].inputs());
-    }
-
-    if (!updatePoseWithVisionReadings) {
-      return;
-    }
+  protected void updateInputs() {
+    pipeline.updateInputs();
+  }
 
-    for (int i = 0; i < cameraConfigs.length; i++) {
-      updatePose(cameraConfigs[i]);
-      Logger.recordOutput(
-          "Vision/" + cameraConfigs[i].constants().name() + "Connected",
-          cameraConfigs[i].inputs().lastTimestamp > 0.0);
+  @Override
+  protected void onPeriodic() {
+    ChassisSpeeds speeds = speedsSupplier.get();
+    robotSpeedMetersPerSec = Math.hypot(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond);
+    stdDevModel = stdDevModel.retune(hashCode());
+    if (updatePoseWithVisionReadings) {
+      pipeline.publish(visionConsumer);
     }
   }
 
-  private void updatePose(CameraConfig cameraConfig) {
-    // is this a new camera result?
-    double prevTimestamp = lastTimestamp.get(cameraConfig.constants().name());
-    if (prevTimestamp >= cameraConfig.inputs().lastTimestamp) {
-      return;
+  /** Runs on the camera's worker thread; see {@link VisionPipeline.PoseSolver}. */
+  private boolean solvePose(
+      CameraConfig cameraConfig,
+      PhotonPipelineResult result,
+      Pose2d referencePose,
+      double[] pose,
+      Matrix<N3, N1> stdDevs) {
+    Optional<EstimatedRobotPose> estimatedPose = cameraConfig.visionIO().update(result);
+    if (estimatedPose.isEmpty()) {
+      return false;
     }
-    lastTimestamp.put(cameraConfig.constants().name(), cameraConfig.inputs().lastTimestamp);
-    PhotonPipelineResult lastResult = cameraConfig.visionIO().getLastResult();
-    cameraConfig
-        .visionIO()
-        .update(lastResult)
-        .ifPresent(
-            estimatedPose -> {
-              var robotPose = estimatedPose.estimatedPose.toPose2d();
-              var stdDevs = getEstimationStdDevs(robotPose, lastResult);
-
-              Logger.recordOutput(
-                  "Vision/" + cameraConfig.constants().name() + "/RobotPose", robotPose);
-              Logger.recordOutput(
-                  "Vision/" + cameraConfig.constants().name() + "/3DRobotPose",
-                  estimatedPose.estimatedPose);
-              Logger.recordOutput(
-                  "Vision/" + cameraConfig.constants().name() + "/stdDev", stdDevs.toString());
-              visionConsumer.accept(
-                  new VisionUpdate(cameraConfig.inputs().lastTimestamp, robotPose, stdDevs));
-            });
+    Pose2d robotPose = estimatedPose.get().estimatedPose.toPose2d();
+    pose[0] = robotPose.getX();
+    pose[1] = robotPose.getY();
+    pose[2] = robotPose.getRotation().getRadians();
+    updateEstimationStdDevs(robotPose, result, stdDevs);
+    return true;
   }
 
-  private Matrix<N3, N1> getEstimationStdDevs(Pose2d estimatedPose, PhotonPipelineResult result) {
-    var estStdDevs = SINGLE_TAGS_STD_DEVS;
+  private void updateEstimationStdDevs(
+      Pose2d estimatedPose, PhotonPipelineResult result, Matrix<N3, N1> stdDevs) {
     var targets = result.getTargets();
     int numTags = 0;
     double avgDist = 0;
-    for (var tgt : targets) {
-      var tagPose = visionConstants.layout().getTagPose(tgt.getFiducialId());
-      if (tagPose.isEmpty()) continue;
+    double ambiguity = 0;
+    for (int i = 0; i < targets.size(); i++) {
+      var tgt = targets.get(i);
+      int id = tgt.getFiducialId();
+      if (!tagIndex.contains(id)) continue;
       numTags++;
-      avgDist +=
-          tagPose.get().toPose2d().getTranslation().getDistance(estimatedPose.getTranslation());
+      avgDist += tagIndex.getDistance(id, estimatedPose.getX(), estimatedPose.getY());
+      ambiguity = tgt.getPoseAmbiguity();
     }
-    if (numTags == 0) return estStdDevs;
-    avgDist /= numTags;
-    // Decrease std devs if multiple targets are visible
-    if (numTags > 1) estStdDevs = MULTI_TAG_STD_DEVS;
-    // Increase std devs based on (average) distance
-    if (numTags == 1 && avgDist > 4)
-      estStdDevs = VecBuilder.fill(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
-    else estStdDevs = estStdDevs.times(1 + (avgDist * avgDist / 30));
-
-    return estStdDevs;
+    if (numTags > 0) avgDist /= numTags;
+    // Ambiguity is only meaningful for single tag estimates
+    if (numTags != 1) ambiguity = 0;
+    stdDevModel.calculate(numTags, avgDist, ambiguity, robotSpeedMetersPerSec, stdDevs);
   }
 }
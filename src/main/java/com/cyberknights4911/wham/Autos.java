@@ -93,11 +93,11 @@ final class Autos {
     NamedCommands.registerCommand("Score", score);
     NamedCommands.registerCommand("Collect", collect);
     handler.addDefaultOption("Nothing", Commands.none());
-    handler.addOption("Translate Test", new PathPlannerAuto("TranslationTest"));
-    handler.addOption("Rotate Test", new PathPlannerAuto("RotationTest"));
-    handler.addOption("Auto 1", new PathPlannerAuto("Auto1"));
-    handler.addOption("Auto 2", new PathPlannerAuto("Auto2"));
-    handler.addOption("Auto 3", new PathPlannerAuto("Auto3"));
+    handler.addOption("Translate Test", () -> new PathPlannerAuto("TranslationTest"));
+    handler.addOption("Rotate Test", () -> new PathPlannerAuto("RotationTest"));
+    handler.addOption("Auto 1", () -> new PathPlannerAuto("Auto1"));
+    handler.addOption("Auto 2", () -> new PathPlannerAuto("Auto2"));
+    handler.addOption("Auto 3", () -> new PathPlannerAuto("Auto3"));
     // Set up FF characterization routines
     // handler.addOption(
     //     "Drive FF Characterization",
@@ -14,6 +14,7 @@ import com.cyberknights4911.control.StickAction;
 import com.cyberknights4911.drive.Drive;
 import com.cyberknights4911.drive.GyroIO;
 import com.cyberknights4911.drive.GyroIOPigeon2;
+import com.cyberknights4911.drive.GyroIOSim;
 import com.cyberknights4911.drive.ModuleIO;
 import com.cyberknights4911.drive.ModuleIOSim;
 import com.cyberknights4911.drive.ModuleIOTalonFX;
@@ -54,6 +55,7 @@ public final class Wham implements RobotContainer {
     vision =
         new VisionSimple(
             WhamConstants.VISION_CONSTANTS,
+            drive::getChassisSpeeds,
             drive::addVisionMeasurement,
             WhamConstants.CAMERA_CONSTANTS_FRONT_RIGHT);
 
@@ -144,14 +146,17 @@ public final class Wham implements RobotContainer {
 
   // Sim robot, instantiate physics sim IO implementations
   private Drive createSimDrive() {
+    ModuleIOSim[] modules = {
+      new ModuleIOSim(), new ModuleIOSim(), new ModuleIOSim(), new ModuleIOSim()
+    };
     return new Drive(
         constants,
         WhamConstants.DRIVE_CONSTANTS,
-        new GyroIO() {},
-        new ModuleIOSim(),
-        new ModuleIOSim(),
-        new ModuleIOSim(),
-        new ModuleIOSim());
+        new GyroIOSim(WhamConstants.DRIVE_CONSTANTS, modules),
+        modules[0],
+        modules[1],
+        modules[2],
+        modules[3]);
   }
 
   // Replayed robot, disable IO implementations
@@ -46,6 +46,8 @@ public final class WhamConstants {
   public static final DriveConstants DRIVE_CONSTANTS =
       DriveConstantsBuilder.builder()
           .maxLinearSpeed(4.5)
+          .maxModuleAcceleration(10.0)
+          .maxModuleSteerRate(4 * Math.PI)
           .trackWidthX(Units.inchesToMeters(22.75))
           .trackWidthY(Units.inchesToMeters(22.75))
           .wheelRadius(Units.inchesToMeters(1.941349158748698))
@@ -7,25 +7,28 @@
 
 package com.cyberknights4911.wham.slurpp;
 
+import com.cyberknights4911.logging.ProfiledSubsystem;
 import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import org.littletonrobotics.junction.Logger;
 
-public final class Slurpp extends SubsystemBase {
+public final class Slurpp extends ProfiledSubsystem {
 
   private final SlurppIO slurppIO;
   private final SlurppIOInputsAutoLogged inputs = new SlurppIOInputsAutoLogged();
 
   public Slurpp(SlurppIO splurppIO) {
-    super();
+    super("Slurpp");
     this.slurppIO = splurppIO;
   }
 
   @Override
-  public void periodic() {
+  protected void updateInputs() {
     slurppIO.updateInputs(inputs);
     Logger.processInputs("Slurpp", inputs);
+  }
 
+  @Override
+  protected void onPeriodic() {
     // Stop moving when disabled
     if (DriverStation.isDisabled()) {
       slurppIO.setVoltage(0);
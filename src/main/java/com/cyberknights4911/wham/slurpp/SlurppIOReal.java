@@ -15,6 +15,7 @@ import com.ctre.phoenix6.controls.VoltageOut;
 import com.ctre.phoenix6.hardware.TalonFX;
 import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
+import com.cyberknights4911.util.CanBusBudget;
 import edu.wpi.first.math.util.Units;
 
 public final class SlurppIOReal implements SlurppIO {
@@ -38,8 +39,9 @@ public final class SlurppIOReal implements SlurppIO {
     velocity = talon.getVelocity();
     appliedVolts = talon.getMotorVoltage();
     current = talon.getStatorCurrent();
-    BaseStatusSignal.setUpdateFrequencyForAll(100.0, position);
-    BaseStatusSignal.setUpdateFrequencyForAll(50.0, velocity, appliedVolts, current);
+    CanBusBudget budget = CanBusBudget.getInstance();
+    budget.declarePhoenix("Slurpp", "CANivore", 100.0, false, position);
+    budget.declarePhoenix("Slurpp", "CANivore", 50.0, false, velocity, appliedVolts, current);
     talon.optimizeBusUtilization();
   }
 
@@ -7,20 +7,21 @@
 
 package com.cyberknights4911.wham.slurpp;
 
+import com.cyberknights4911.util.PhysicsSim;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.wpilibj.simulation.DCMotorSim;
 
 public final class SlurppIOSim implements SlurppIO {
-  private static final double LOOP_PERIOD_SECS = 0.02;
-
   private DCMotorSim sim = new DCMotorSim(DCMotor.getFalcon500(1), 1.5, 0.004);
   private double appliedVolts = 0.0;
 
+  public SlurppIOSim() {
+    PhysicsSim.getInstance().register(sim::update);
+  }
+
   @Override
   public void updateInputs(SlurppIOInputs inputs) {
-    sim.update(LOOP_PERIOD_SECS);
-
     inputs.positionRad = sim.getAngularPositionRad();
     inputs.velocityRadPerSec = sim.getAngularVelocityRadPerSec();
     inputs.appliedVolts = appliedVolts;
@@ -15,6 +15,7 @@ import com.ctre.phoenix6.hardware.CANcoder;
 import com.ctre.phoenix6.hardware.TalonFX;
 import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
+import com.cyberknights4911.util.CanBusBudget;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
 
@@ -81,25 +82,34 @@ public final class YeetIOReal implements YeetIO {
     shoulderEncoderOffset = new Rotation2d();
     wristEncoderOffset = new Rotation2d();
 
-    BaseStatusSignal.setUpdateFrequencyForAll(
-        100.0, wristAbsolutePosition, shoulderAbsolutePosition);
+    CanBusBudget budget = CanBusBudget.getInstance();
+    budget.declarePhoenix("WristEncoder", CANIVORE, 100.0, false, wristAbsolutePosition);
+    budget.declarePhoenix("ShoulderEncoder", CANIVORE, 100.0, false, shoulderAbsolutePosition);
 
-    BaseStatusSignal.setUpdateFrequencyForAll(
+    budget.declarePhoenix(
+        "Wrist",
+        CANIVORE,
         50.0,
+        false,
         wristPosition,
         wristVelocity,
         wristAppliedVolts,
-        wristCurrent,
-        wristEncoderVelocity,
+        wristCurrent);
+    budget.declarePhoenix("WristEncoder", CANIVORE, 50.0, false, wristEncoderVelocity);
+    budget.declarePhoenix(
+        "Shoulder1",
+        CANIVORE,
+        50.0,
+        false,
         shoulderPosition,
         shoulderVelocity,
         shoulderAppliedVolts1,
-        shoulderCurrent1,
-        shoulderAppliedVolts2,
-        shoulderCurrent2,
-        shoulderAppliedVolts3,
-        shoulderCurrent3,
-        shoulderEncoderVelocity);
+        shoulderCurrent1);
+    budget.declarePhoenix(
+        "Shoulder2", CANIVORE, 50.0, false, shoulderAppliedVolts2, shoulderCurrent2);
+    budget.declarePhoenix(
+        "Shoulder3", CANIVORE, 50.0, false, shoulderAppliedVolts3, shoulderCurrent3);
+    budget.declarePhoenix("ShoulderEncoder", CANIVORE, 50.0, false, shoulderEncoderVelocity);
 
     wristTalon.optimizeBusUtilization();
     wristCancoder.optimizeBusUtilization();
@@ -19,12 +19,10 @@ import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Twist2d;
-import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
 import edu.wpi.first.math.kinematics.Odometry;
 import edu.wpi.first.math.kinematics.WheelPositions;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
-import java.util.NoSuchElementException;
 import java.util.Optional;
 
 /**
@@ -46,10 +44,21 @@ public class PoseEstimatorExperimental<T extends WheelPositions<T>> {
   private final Matrix<N3, N3> m_visionK = new Matrix<>(Nat.N3(), Nat.N3());
 
   private static final double kBufferDuration = 1.5;
-  private final TimeInterpolatableBuffer<Pose2d> m_poseBuffer =
-      TimeInterpolatableBuffer.createBuffer(kBufferDuration);
+  // Enough for kBufferDuration at up to ~680 Hz
+  private static final int kBufferCapacity = 1024;
+  private final PoseHistoryBuffer m_poseBuffer =
+      new PoseHistoryBuffer(kBufferDuration, kBufferCapacity);
+  // Scratch output for m_poseBuffer lookups
+  private final double[] m_sample = new double[4];
 
-  private Pose2d m_poseEstimate;
+  // Used instead of immediate correction when out-of-order vision replay is enabled
+  private final VisionReplayBuffer m_replayBuffer =
+      new VisionReplayBuffer(kBufferDuration, kBufferCapacity);
+  private boolean m_visionReplayEnabled = false;
+
+  // Poses stored as {x, y, cos, sin} so that odometry updates do not allocate
+  private final double[] m_odometryPose = new double[4];
+  private final double[] m_poseEstimate = new double[4];
 
   /**
    * Constructs a PoseEstimator.
@@ -66,7 +75,8 @@ public class PoseEstimatorExperimental<T extends WheelPositions<T>> {
       Odometry<T> odometry, Matrix<N3, N1> stateStdDevs, Matrix<N3, N1> visionMeasurementStdDevs) {
     m_odometry = odometry;
 
-    m_poseEstimate = odometry.getPoseMeters();
+    PoseMath.set(m_odometryPose, odometry.getPoseMeters());
+    PoseMath.set(m_poseEstimate, odometry.getPoseMeters());
 
     for (int i = 0; i < 3; ++i) {
       m_q.set(i, 0, stateStdDevs.get(i, 0) * stateStdDevs.get(i, 0));
@@ -101,6 +111,21 @@ public class PoseEstimatorExperimental<T extends WheelPositions<T>> {
     }
   }
 
+  /**
+   * Enables or disables out-of-order vision replay. When enabled, the estimator stores each
+   * odometry twist, and vision measurements are queued rather than applied immediately. The next
+   * time the estimate is read, odometry is re-integrated from the earliest queued measurement
+   * (within the history window), applying every stored measurement in timestamp order. The result
+   * is independent of the order measurements arrive in, and all measurements added in one loop
+   * cost a single replay pass.
+   *
+   * @param enabled Whether to enable out-of-order vision replay.
+   */
+  public void setVisionReplayEnabled(boolean enabled) {
+    m_visionReplayEnabled = enabled;
+    m_replayBuffer.clear();
+  }
+
   /**
    * Resets the robot's position on the field.
    *
@@ -115,7 +140,9 @@ public class PoseEstimatorExperimental<T extends WheelPositions<T>> {
     // Reset state estimate and error covariance
     m_odometry.resetPosition(gyroAngle, wheelPositions, poseMeters);
     m_poseBuffer.clear();
-    m_poseEstimate = m_odometry.getPoseMeters();
+    m_replayBuffer.clear();
+    PoseMath.set(m_odometryPose, m_odometry.getPoseMeters());
+    PoseMath.set(m_poseEstimate, m_odometry.getPoseMeters());
   }
 
   /**
@@ -124,7 +151,8 @@ public class PoseEstimatorExperimental<T extends WheelPositions<T>> {
    * @return The estimated robot pose in meters.
    */
   public Pose2d getEstimatedPosition() {
-    return m_poseEstimate;
+    replayVisionMeasurements();
+    return PoseMath.toPose(m_poseEstimate);
   }
 
   /**
@@ -134,9 +162,13 @@ public class PoseEstimatorExperimental<T extends WheelPositions<T>> {
    * @return The pose at a given timestamp, if one exists.
    */
   public Optional<Pose2d> sampleAt(double timestamp) {
-    return m_poseBuffer
-        .getSample(timestamp)
-        .map(sample -> sample.plus(new Transform2d(m_odometry.getPoseMeters(), m_poseEstimate)));
+    replayVisionMeasurements();
+    if (!m_poseBuffer.sampleAt(timestamp, m_sample)) {
+      return Optional.empty();
+    }
+    var odometryToEstimate =
+        new Transform2d(PoseMath.toPose(m_odometryPose), PoseMath.toPose(m_poseEstimate));
+    return Optional.of(PoseMath.toPose(m_sample).plus(odometryToEstimate));
   }
 
   /**
@@ -160,29 +192,37 @@ public class PoseEstimatorExperimental<T extends WheelPositions<T>> {
    *     sync the epochs.
    */
   public void addVisionMeasurement(Pose2d visionRobotPoseMeters, double timestampSeconds) {
-    // Step 0: If this measurement is old enough to be outside the pose buffer's timespan, skip.
-    try {
-      if (m_poseBuffer.getInternalBuffer().lastKey() - kBufferDuration > timestampSeconds) {
-        return;
-      }
-    } catch (NoSuchElementException ex) {
+    if (m_visionReplayEnabled) {
+      m_replayBuffer.addVisionMeasurement(
+          timestampSeconds,
+          visionRobotPoseMeters.getX(),
+          visionRobotPoseMeters.getY(),
+          visionRobotPoseMeters.getRotation().getCos(),
+          visionRobotPoseMeters.getRotation().getSin(),
+          m_visionK.get(0, 0),
+          m_visionK.get(1, 1),
+          m_visionK.get(2, 2));
       return;
     }
 
-    // Step 1: Get the pose odometry measured at the moment the vision measurement was made.
-    var sample = m_poseBuffer.getSample(timestampSeconds);
-
-    if (sample.isEmpty()) {
+    // Step 0: If this measurement is old enough to be outside the pose buffer's timespan, skip.
+    if (m_poseBuffer.isEmpty()
+        || m_poseBuffer.getLatestTimestamp() - kBufferDuration > timestampSeconds) {
       return;
     }
 
+    // Step 1: Get the pose odometry measured at the moment the vision measurement was made.
+    m_poseBuffer.sampleAt(timestampSeconds, m_sample);
+    var sample = PoseMath.toPose(m_sample);
+
     // Step 2: Record the odometry updates that have occurred since the vision measurement
-    var odometry_backtrack = new Transform2d(m_odometry.getPoseMeters(), sample.get());
-    var odometry_forward = new Transform2d(sample.get(), m_odometry.getPoseMeters());
+    var odometryPose = PoseMath.toPose(m_odometryPose);
+    var odometry_backtrack = new Transform2d(odometryPose, sample);
+    var odometry_forward = new Transform2d(sample, odometryPose);
 
     // Step 3: Revert said odometry updates to get a state estimate from when the vision
     // measurement occurred.
-    var old_estimate = m_poseEstimate.plus(odometry_backtrack);
+    var old_estimate = PoseMath.toPose(m_poseEstimate).plus(odometry_backtrack);
 
     // Step 4: Measure the twist between the odometry pose and the vision pose.
     var twist = old_estimate.log(visionRobotPoseMeters);
@@ -196,7 +236,7 @@ public class PoseEstimatorExperimental<T extends WheelPositions<T>> {
         new Twist2d(k_times_twist.get(0, 0), k_times_twist.get(1, 0), k_times_twist.get(2, 0));
 
     // Step 7: Apply this adjustment to the old estimate, then replay odometry updates.
-    m_poseEstimate = old_estimate.exp(scaledTwist).plus(odometry_forward);
+    PoseMath.set(m_poseEstimate, old_estimate.exp(scaledTwist).plus(odometry_forward));
   }
 
   /**
@@ -257,10 +297,51 @@ public class PoseEstimatorExperimental<T extends WheelPositions<T>> {
   public Pose2d updateWithTime(double currentTimeSeconds, Rotation2d gyroAngle, T wheelPositions) {
     var lastOdom = m_odometry.getPoseMeters();
     var currOdom = m_odometry.update(gyroAngle, wheelPositions);
-    m_poseBuffer.addSample(currentTimeSeconds, currOdom);
+    PoseMath.set(m_odometryPose, currOdom);
+    addOdometrySample(currentTimeSeconds);
 
-    m_poseEstimate = m_poseEstimate.exp(lastOdom.log(currOdom));
+    var twist = lastOdom.log(currOdom);
+    PoseMath.exp(m_poseEstimate, twist.dx, twist.dy, twist.dtheta);
+    if (m_visionReplayEnabled) {
+      m_replayBuffer.addOdometrySample(
+          currentTimeSeconds, twist.dx, twist.dy, twist.dtheta, m_poseEstimate);
+    }
 
     return getEstimatedPosition();
   }
+
+  /**
+   * Updates the pose estimator with a robot-relative odometry twist measured since the previous
+   * update. This is an alternative to {@link #updateWithTime(double, Rotation2d, WheelPositions)}
+   * for callers that integrate their own odometry; the two should not be mixed without a call to
+   * {@link #resetPosition} in between.
+   *
+   * @param currentTimeSeconds Time at which the twist ended, in seconds.
+   * @param dx Forward displacement in meters.
+   * @param dy Leftward displacement in meters.
+   * @param dtheta Counterclockwise rotation in radians.
+   */
+  public void updateWithTwist(double currentTimeSeconds, double dx, double dy, double dtheta) {
+    PoseMath.exp(m_odometryPose, dx, dy, dtheta);
+    addOdometrySample(currentTimeSeconds);
+    PoseMath.exp(m_poseEstimate, dx, dy, dtheta);
+    if (m_visionReplayEnabled) {
+      m_replayBuffer.addOdometrySample(currentTimeSeconds, dx, dy, dtheta, m_poseEstimate);
+    }
+  }
+
+  private void replayVisionMeasurements() {
+    if (m_visionReplayEnabled && m_replayBuffer.hasPendingReplay()) {
+      m_replayBuffer.replay(m_poseEstimate);
+    }
+  }
+
+  private void addOdometrySample(double timestampSeconds) {
+    m_poseBuffer.addSample(
+        timestampSeconds,
+        m_odometryPose[0],
+        m_odometryPose[1],
+        m_odometryPose[2],
+        m_odometryPose[3]);
+  }
 }
@@ -0,0 +1,195 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package edu.wpi.first.math.estimator;
+
+/**
+ * A fixed-capacity, time-ordered history of 2d poses stored as parallel primitive arrays. It is an
+ * allocation-free replacement for {@code TimeInterpolatableBuffer<Pose2d>}: adding a sample and
+ * sampling an interpolated pose never create objects, and lookups are a binary search instead of a
+ * {@link java.util.TreeMap} walk.
+ *
+ * <p>Poses are stored as {x, y, cos, sin}. Samples must be added in non-decreasing timestamp order;
+ * a sample with the same timestamp as the newest sample replaces it, and an older sample is
+ * ignored. Samples older than the history duration, or beyond the capacity, are discarded.
+ */
+public class PoseHistoryBuffer {
+  private final double m_historySeconds;
+  private final int m_mask;
+  private final double[] m_t;
+  private final double[] m_x;
+  private final double[] m_y;
+  private final double[] m_cos;
+  private final double[] m_sin;
+
+  // Physical index of the oldest sample
+  private int m_start = 0;
+  private int m_size = 0;
+
+  /**
+   * Creates a buffer.
+   *
+   * @param historySeconds How long samples are kept, relative to the newest sample.
+   * @param minCapacity Minimum number of samples held, rounded up to a power of two. Should cover
+   *     the history duration at the highest expected sample rate.
+   */
+  public PoseHistoryBuffer(double historySeconds, int minCapacity) {
+    if (minCapacity < 2) {
+      throw new IllegalArgumentException("Capacity must be at least 2: " + minCapacity);
+    }
+    int capacity = Integer.highestOneBit(minCapacity);
+    if (capacity < minCapacity) {
+      capacity <<= 1;
+    }
+    m_historySeconds = historySeconds;
+    m_mask = capacity - 1;
+    m_t = new double[capacity];
+    m_x = new double[capacity];
+    m_y = new double[capacity];
+    m_cos = new double[capacity];
+    m_sin = new double[capacity];
+  }
+
+  /** Removes all samples. */
+  public void clear() {
+    m_start = 0;
+    m_size = 0;
+  }
+
+  /** Returns true if there are no samples. */
+  public boolean isEmpty() {
+    return m_size == 0;
+  }
+
+  /** Returns the number of samples held. */
+  public int size() {
+    return m_size;
+  }
+
+  /** Returns the timestamp of the newest sample, or NaN if empty. */
+  public double getLatestTimestamp() {
+    return m_size == 0 ? Double.NaN : m_t[physical(m_size - 1)];
+  }
+
+  /** Returns the timestamp of the oldest sample, or NaN if empty. */
+  public double getOldestTimestamp() {
+    return m_size == 0 ? Double.NaN : m_t[m_start];
+  }
+
+  /**
+   * Adds a sample.
+   *
+   * @param timestampSeconds The sample's timestamp in seconds.
+   * @param x X position in meters.
+   * @param y Y position in meters.
+   * @param cos Cosine of the heading.
+   * @param sin Sine of the heading.
+   */
+  public void addSample(double timestampSeconds, double x, double y, double cos, double sin) {
+    int index;
+    if (m_size > 0) {
+      double latest = getLatestTimestamp();
+      if (timestampSeconds < latest) {
+        return;
+      }
+      if (timestampSeconds == latest) {
+        index = physical(m_size - 1);
+        set(index, timestampSeconds, x, y, cos, sin);
+        return;
+      }
+    }
+
+    if (m_size == m_t.length) {
+      // Full, overwrite the oldest sample
+      m_start = (m_start + 1) & m_mask;
+      m_size--;
+    }
+    index = physical(m_size);
+    set(index, timestampSeconds, x, y, cos, sin);
+    m_size++;
+
+    // Expire samples outside the history window
+    while (m_size > 1 && timestampSeconds - m_t[m_start] > m_historySeconds) {
+      m_start = (m_start + 1) & m_mask;
+      m_size--;
+    }
+  }
+
+  /**
+   * Samples the buffer at the given time, interpolating between the two nearest samples. Times
+   * outside the buffer are clamped to the oldest or newest sample.
+   *
+   * @param timestampSeconds The time to sample at.
+   * @param pose Output array receiving {x, y, cos, sin}.
+   * @return False if the buffer is empty, in which case the output is unchanged.
+   */
+  public boolean sampleAt(double timestampSeconds, double[] pose) {
+    if (m_size == 0) {
+      return false;
+    }
+    if (timestampSeconds <= m_t[m_start]) {
+      copy(m_start, pose);
+      return true;
+    }
+    int newest = physical(m_size - 1);
+    if (timestampSeconds >= m_t[newest]) {
+      copy(newest, pose);
+      return true;
+    }
+
+    // Find the first sample with a timestamp greater than the requested time
+    int low = 0;
+    int high = m_size - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (m_t[physical(mid)] <= timestampSeconds) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    int upper = physical(low);
+    int lower = physical(low - 1);
+
+    double t0 = m_t[lower];
+    double t1 = m_t[upper];
+    double fraction = (timestampSeconds - t0) / (t1 - t0);
+    pose[0] = m_x[lower] + (m_x[upper] - m_x[lower]) * fraction;
+    pose[1] = m_y[lower] + (m_y[upper] - m_y[lower]) * fraction;
+    // Samples are closely spaced, so a normalized lerp of the heading is accurate enough
+    double cos = m_cos[lower] + (m_cos[upper] - m_cos[lower]) * fraction;
+    double sin = m_sin[lower] + (m_sin[upper] - m_sin[lower]) * fraction;
+    double magnitude = Math.hypot(cos, sin);
+    if (magnitude < 1E-9) {
+      pose[2] = m_cos[lower];
+      pose[3] = m_sin[lower];
+    } else {
+      pose[2] = cos / magnitude;
+      pose[3] = sin / magnitude;
+    }
+    return true;
+  }
+
+  private int physical(int logicalIndex) {
+    return (m_start + logicalIndex) & m_mask;
+  }
+
+  private void set(int index, double t, double x, double y, double cos, double sin) {
+    m_t[index] = t;
+    m_x[index] = x;
+    m_y[index] = y;
+    m_cos[index] = cos;
+    m_sin[index] = sin;
+  }
+
+  private void copy(int index, double[] pose) {
+    pose[0] = m_x[index];
+    pose[1] = m_y[index];
+    pose[2] = m_cos[index];
+    pose[3] = m_sin[index];
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package edu.wpi.first.math.estimator;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * Allocation-free versions of {@link Pose2d#exp} and {@link Pose2d#log} for poses stored as {x, y,
+ * cos, sin} and twists stored as {dx, dy, dtheta}.
+ */
+final class PoseMath {
+  private PoseMath() {}
+
+  /** Applies a twist to a pose in place. */
+  static void exp(double[] pose, double dx, double dy, double dtheta) {
+    double sinTheta = Math.sin(dtheta);
+    double cosTheta = Math.cos(dtheta);
+    double s;
+    double c;
+    if (Math.abs(dtheta) < 1E-9) {
+      s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+      c = 0.5 * dtheta;
+    } else {
+      s = sinTheta / dtheta;
+      c = (1 - cosTheta) / dtheta;
+    }
+    double localX = dx * s - dy * c;
+    double localY = dx * c + dy * s;
+    double cos = pose[2];
+    double sin = pose[3];
+    pose[0] += localX * cos - localY * sin;
+    pose[1] += localX * sin + localY * cos;
+    double newCos = cos * cosTheta - sin * sinTheta;
+    double newSin = sin * cosTheta + cos * sinTheta;
+    // Renormalize so rounding error does not accumulate over many updates
+    double magnitude = Math.hypot(newCos, newSin);
+    pose[2] = newCos / magnitude;
+    pose[3] = newSin / magnitude;
+  }
+
+  /** Computes the twist that maps the start pose onto the end pose. */
+  static void log(
+      double[] start, double endX, double endY, double endCos, double endSin, double[] twist) {
+    // End pose relative to the start pose
+    double cos = start[2];
+    double sin = start[3];
+    double deltaX = endX - start[0];
+    double deltaY = endY - start[1];
+    double relativeX = deltaX * cos + deltaY * sin;
+    double relativeY = -deltaX * sin + deltaY * cos;
+    double relativeCos = endCos * cos + endSin * sin;
+    double relativeSin = endSin * cos - endCos * sin;
+
+    double dtheta = Math.atan2(relativeSin, relativeCos);
+    double halfDtheta = dtheta / 2.0;
+    double cosMinusOne = relativeCos - 1;
+    double halfThetaByTanOfHalfDtheta;
+    if (Math.abs(cosMinusOne) < 1E-9) {
+      halfThetaByTanOfHalfDtheta = 1.0 - 1.0 / 12.0 * dtheta * dtheta;
+    } else {
+      halfThetaByTanOfHalfDtheta = -(halfDtheta * relativeSin) / cosMinusOne;
+    }
+    // Rotate by (halfThetaByTanOfHalfDtheta, -halfDtheta) and scale by its norm in one step
+    twist[0] = relativeX * halfThetaByTanOfHalfDtheta + relativeY * halfDtheta;
+    twist[1] = -relativeX * halfDtheta + relativeY * halfThetaByTanOfHalfDtheta;
+    twist[2] = dtheta;
+  }
+
+  static void set(double[] pose, Pose2d value) {
+    pose[0] = value.getX();
+    pose[1] = value.getY();
+    pose[2] = value.getRotation().getCos();
+    pose[3] = value.getRotation().getSin();
+  }
+
+  static Pose2d toPose(double[] pose) {
+    return new Pose2d(pose[0], pose[1], new Rotation2d(pose[2], pose[3]));
+  }
+}
@@ -0,0 +1,287 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package edu.wpi.first.math.estimator;
+
+/**
+ * Recent odometry twists and vision measurements, used by {@link PoseEstimatorExperimental} to
+ * re-integrate its estimate when vision measurements arrive late or out of order.
+ *
+ * <p>Each odometry sample stores its twist and the estimate after integrating that twist but before
+ * any vision correction. A vision measurement is applied at the last odometry sample at or before
+ * its timestamp, and measurements at the same sample are applied in timestamp order. Replaying from
+ * the earliest new measurement therefore gives the same result regardless of arrival order.
+ *
+ * <p>Vision measurements are kept for the whole history window at up to {@link
+ * #kMaxVisionRateHz}. If more arrive, the oldest is dropped, and measurements that would replay
+ * from the odometry sample it was applied at, or earlier, are rejected from then on: that replay
+ * would lose its correction.
+ */
+final class VisionReplayBuffer {
+  // Every camera frame, from several cameras
+  private static final double kMaxVisionRateHz = 250.0;
+
+  private final double m_historySeconds;
+
+  // Odometry samples, a ring buffer of parallel arrays
+  private final int m_mask;
+  private final double[] m_t;
+  private final double[] m_dx;
+  private final double[] m_dy;
+  private final double[] m_dtheta;
+  private final double[] m_x;
+  private final double[] m_y;
+  private final double[] m_cos;
+  private final double[] m_sin;
+  private int m_start = 0;
+  private int m_size = 0;
+
+  // Vision measurements, sorted by timestamp
+  private final int m_visionCapacity;
+  private final double[] m_visionT;
+  private final double[] m_visionX;
+  private final double[] m_visionY;
+  private final double[] m_visionCos;
+  private final double[] m_visionSin;
+  private final double[] m_visionKx;
+  private final double[] m_visionKy;
+  private final double[] m_visionKtheta;
+  private int m_visionSize = 0;
+  // Timestamp of the newest measurement dropped from inside the history window
+  private double m_visionFloor = Double.NEGATIVE_INFINITY;
+
+  // Earliest timestamp of a vision measurement not yet replayed
+  private double m_replayFrom = Double.POSITIVE_INFINITY;
+
+  // Scratch space for replay
+  private final double[] m_twist = new double[3];
+
+  VisionReplayBuffer(double historySeconds, int minCapacity) {
+    int capacity = Integer.highestOneBit(minCapacity);
+    if (capacity < minCapacity) {
+      capacity <<= 1;
+    }
+    m_historySeconds = historySeconds;
+    m_mask = capacity - 1;
+    m_t = new double[capacity];
+    m_dx = new double[capacity];
+    m_dy = new double[capacity];
+    m_dtheta = new double[capacity];
+    m_x = new double[capacity];
+    m_y = new double[capacity];
+    m_cos = new double[capacity];
+    m_sin = new double[capacity];
+
+    m_visionCapacity = (int) Math.ceil(historySeconds * kMaxVisionRateHz);
+    m_visionT = new double[m_visionCapacity];
+    m_visionX = new double[m_visionCapacity];
+    m_visionY = new double[m_visionCapacity];
+    m_visionCos = new double[m_visionCapacity];
+    m_visionSin = new double[m_visionCapacity];
+    m_visionKx = new double[m_visionCapacity];
+    m_visionKy = new double[m_visionCapacity];
+    m_visionKtheta = new double[m_visionCapacity];
+  }
+
+  void clear() {
+    m_start = 0;
+    m_size = 0;
+    m_visionSize = 0;
+    m_visionFloor = Double.NEGATIVE_INFINITY;
+    m_replayFrom = Double.POSITIVE_INFINITY;
+  }
+
+  /** Returns true if a vision measurement has been added since the last replay. */
+  boolean hasPendingReplay() {
+    return m_replayFrom != Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Records an odometry sample. Samples are expected in timestamp order.
+   *
+   * @param estimate The estimate after applying the twist, as {x, y, cos, sin}.
+   */
+  void addOdometrySample(
+      double timestampSeconds, double dx, double dy, double dtheta, double[] estimate) {
+    if (m_size == m_t.length) {
+      m_start = (m_start + 1) & m_mask;
+      m_size--;
+    }
+    int index = physical(m_size);
+    m_t[index] = timestampSeconds;
+    m_dx[index] = dx;
+    m_dy[index] = dy;
+    m_dtheta[index] = dtheta;
+    storeEstimate(index, estimate);
+    m_size++;
+
+    // Expire odometry outside the history window, then vision older than the oldest sample
+    while (m_size > 1 && timestampSeconds - m_t[m_start] > m_historySeconds) {
+      m_start = (m_start + 1) & m_mask;
+      m_size--;
+    }
+    int expired = 0;
+    while (expired < m_visionSize && m_visionT[expired] < m_t[m_start]) {
+      expired++;
+    }
+    removeVision(expired);
+  }
+
+  /**
+   * Records a vision measurement to be applied on the next replay. Measurements older than the
+   * odometry history, or no newer than a measurement that was dropped, are ignored.
+   *
+   * @return False if the measurement was ignored.
+   */
+  boolean addVisionMeasurement(
+      double timestampSeconds,
+      double x,
+      double y,
+      double cos,
+      double sin,
+      double kx,
+      double ky,
+      double ktheta) {
+    if (m_size == 0
+        || timestampSeconds < m_t[m_start]
+        || m_t[physical(sampleAtOrBefore(timestampSeconds))] <= m_visionFloor) {
+      return false;
+    }
+    if (m_visionSize == m_visionCapacity) {
+      // Replaying this measurement must not start before the one being dropped
+      if (m_t[physical(sampleAtOrBefore(timestampSeconds))] <= m_visionT[0]) {
+        return false;
+      }
+      m_visionFloor = m_visionT[0];
+      removeVision(1);
+    }
+
+    // Insert after any measurements with an equal or earlier timestamp
+    int insert = m_visionSize;
+    while (insert > 0 && m_visionT[insert - 1] > timestampSeconds) {
+      insert--;
+    }
+    int moved = m_visionSize - insert;
+    System.arraycopy(m_visionT, insert, m_visionT, insert + 1, moved);
+    System.arraycopy(m_visionX, insert, m_visionX, insert + 1, moved);
+    System.arraycopy(m_visionY, insert, m_visionY, insert + 1, moved);
+    System.arraycopy(m_visionCos, insert, m_visionCos, insert + 1, moved);
+    System.arraycopy(m_visionSin, insert, m_visionSin, insert + 1, moved);
+    System.arraycopy(m_visionKx, insert, m_visionKx, insert + 1, moved);
+    System.arraycopy(m_visionKy, insert, m_visionKy, insert + 1, moved);
+    System.arraycopy(m_visionKtheta, insert, m_visionKtheta, insert + 1, moved);
+    m_visionT[insert] = timestampSeconds;
+    m_visionX[insert] = x;
+    m_visionY[insert] = y;
+    m_visionCos[insert] = cos;
+    m_visionSin[insert] = sin;
+    m_visionKx[insert] = kx;
+    m_visionKy[insert] = ky;
+    m_visionKtheta[insert] = ktheta;
+    m_visionSize++;
+
+    m_replayFrom = Math.min(m_replayFrom, timestampSeconds);
+    return true;
+  }
+
+  /**
+   * Re-integrates odometry from the earliest vision measurement added since the last replay,
+   * applying every vision measurement from that point on.
+   *
+   * @param estimate Receives the replayed current estimate as {x, y, cos, sin}.
+   */
+  void replay(double[] estimate) {
+    if (!hasPendingReplay() || m_size == 0) {
+      m_replayFrom = Double.POSITIVE_INFINITY;
+      return;
+    }
+
+    // Start at the last odometry sample at or before the earliest new measurement
+    int first = sampleAtOrBefore(m_replayFrom);
+
+    // First vision measurement at or after the starting sample
+    int vision = 0;
+    double firstT = m_t[physical(first)];
+    while (vision < m_visionSize && m_visionT[vision] < firstT) {
+      vision++;
+    }
+
+    int startIndex = physical(first);
+    estimate[0] = m_x[startIndex];
+    estimate[1] = m_y[startIndex];
+    estimate[2] = m_cos[startIndex];
+    estimate[3] = m_sin[startIndex];
+    for (int sample = first; sample < m_size; sample++) {
+      int index = physical(sample);
+      if (sample > first) {
+        PoseMath.exp(estimate, m_dx[index], m_dy[index], m_dtheta[index]);
+        storeEstimate(index, estimate);
+      }
+
+      // Apply measurements up to the next sample; the newest sample takes all that remain
+      double end = sample + 1 < m_size ? m_t[physical(sample + 1)] : Double.POSITIVE_INFINITY;
+      while (vision < m_visionSize && m_visionT[vision] < end) {
+        PoseMath.log(
+            estimate,
+            m_visionX[vision],
+            m_visionY[vision],
+            m_visionCos[vision],
+            m_visionSin[vision],
+            m_twist);
+        PoseMath.exp(
+            estimate,
+            m_visionKx[vision] * m_twist[0],
+            m_visionKy[vision] * m_twist[1],
+            m_visionKtheta[vision] * m_twist[2]);
+        vision++;
+      }
+    }
+    m_replayFrom = Double.POSITIVE_INFINITY;
+  }
+
+  /** Returns the last odometry sample at or before a time, or the first sample if none is. */
+  private int sampleAtOrBefore(double timestampSeconds) {
+    int low = 0;
+    int high = m_size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (m_t[physical(mid)] <= timestampSeconds) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return Math.max(low - 1, 0);
+  }
+
+  private int physical(int logicalIndex) {
+    return (m_start + logicalIndex) & m_mask;
+  }
+
+  private void storeEstimate(int index, double[] estimate) {
+    m_x[index] = estimate[0];
+    m_y[index] = estimate[1];
+    m_cos[index] = estimate[2];
+    m_sin[index] = estimate[3];
+  }
+
+  private void removeVision(int count) {
+    if (count <= 0) {
+      return;
+    }
+    int remaining = m_visionSize - count;
+    System.arraycopy(m_visionT, count, m_visionT, 0, remaining);
+    System.arraycopy(m_visionX, count, m_visionX, 0, remaining);
+    System.arraycopy(m_visionY, count, m_visionY, 0, remaining);
+    System.arraycopy(m_visionCos, count, m_visionCos, 0, remaining);
+    System.arraycopy(m_visionSin, count, m_visionSin, 0, remaining);
+    System.arraycopy(m_visionKx, count, m_visionKx, 0, remaining);
+    System.arraycopy(m_visionKy, count, m_visionKy, 0, remaining);
+    System.arraycopy(m_visionKtheta, count, m_visionKtheta, 0, remaining);
+    m_visionSize = remaining;
+  }
+}
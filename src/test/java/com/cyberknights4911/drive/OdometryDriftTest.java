@@ -0,0 +1,213 @@
+// Copyright (c) 2024 FRC 4911
+// https://github.com/frc4911
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package com.cyberknights4911.drive;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.cyberknights4911.constants.Constants;
+import com.cyberknights4911.constants.DriveConstants;
+import com.cyberknights4911.robot2024.SimRobot2024Constants;
+import com.cyberknights4911.util.PhysicsSim;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares odometry sampled once per loop with odometry sampled at {@link
+ * Module#ODOMETRY_FREQUENCY}, on a fast S-curve.
+ *
+ * <p>The robot follows the curve exactly: the true pose, wheel positions and gyro are integrated
+ * every {@link PhysicsSim#SUBSTEP_SECS}. Scripted IO reports them to a {@link Drive} as odometry
+ * samples at each rate, so the samples go through the same module and drive code as on the robot.
+ * The only error is from integrating fewer, longer arcs.
+ */
+class OdometryDriftTest {
+  private static final double DURATION_SECS = 6.0;
+  private static final double SPEED_METERS_PER_SEC = 4.5;
+  private static final double MAX_STRAFE_METERS_PER_SEC = 1.0;
+  private static final double MAX_OMEGA_RAD_PER_SEC = 4.0;
+  // Time to drive one S
+  private static final double PERIOD_SECS = 1.5;
+  private static final double LOOP_RATE_HZ = 50.0;
+
+  @BeforeAll
+  static void setup() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Test
+  void odometryThreadRateDriftsLessThanLoopRate() {
+    Constants constants = SimRobot2024Constants.SIM_ROBOT_2024;
+    DriveConstants driveConstants = SimRobot2024Constants.DRIVE_CONSTANTS;
+    Curve curve = new Curve(driveConstants);
+
+    double loopRateError = drift(constants, driveConstants, curve, LOOP_RATE_HZ);
+    double threadRateError = drift(constants, driveConstants, curve, Module.ODOMETRY_FREQUENCY);
+
+    assertTrue(
+        threadRateError < loopRateError,
+        String.format(
+            "%.0f Hz drifted %.4f m, %.0f Hz drifted %.4f m",
+            Module.ODOMETRY_FREQUENCY, threadRateError, LOOP_RATE_HZ, loopRateError));
+  }
+
+  /** Drives the curve with odometry sampled at the given rate, and returns the final error. */
+  private static double drift(
+      Constants constants, DriveConstants driveConstants, Curve curve, double rateHz) {
+    ScriptedGyroIO gyroIO = new ScriptedGyroIO(curve);
+    ScriptedModuleIO[] moduleIOs = new ScriptedModuleIO[4];
+    for (int i = 0; i < 4; i++) {
+      moduleIOs[i] = new ScriptedModuleIO(curve, i, driveConstants.wheelRadius());
+    }
+    Drive drive =
+        new Drive(
+            constants,
+            driveConstants,
+            gyroIO,
+            moduleIOs[0],
+            moduleIOs[1],
+            moduleIOs[2],
+            moduleIOs[3]);
+
+    int stepsPerSample = (int) Math.round(1.0 / (rateHz * PhysicsSim.SUBSTEP_SECS));
+    int stepsPerLoop = (int) Math.round(constants.loopPeriodSecs() / PhysicsSim.SUBSTEP_SECS);
+    int lastSampleStep = 0;
+    for (int loopStep = stepsPerLoop; loopStep < curve.poses.length; loopStep += stepsPerLoop) {
+      // Every sample taken since the last loop
+      int sampleCount = (loopStep - lastSampleStep) / stepsPerSample;
+      int[] sampleSteps = new int[sampleCount];
+      for (int i = 0; i < sampleCount; i++) {
+        sampleSteps[i] = lastSampleStep + (i + 1) * stepsPerSample;
+      }
+      if (sampleCount > 0) {
+        lastSampleStep = sampleSteps[sampleCount - 1];
+      }
+      gyroIO.sampleSteps = sampleSteps;
+      for (ScriptedModuleIO moduleIO : moduleIOs) {
+        moduleIO.sampleSteps = sampleSteps;
+      }
+      drive.periodic();
+    }
+    return drive
+        .getPose()
+        .getTranslation()
+        .getDistance(curve.poses[lastSampleStep].getTranslation());
+  }
+
+  /** The true pose, wheel positions and module angles at every substep of the S-curve. */
+  private static final class Curve {
+    private final Pose2d[] poses;
+    private final double[][] distancesMeters;
+    private final Rotation2d[][] angles;
+
+    private Curve(DriveConstants driveConstants) {
+      double dt = PhysicsSim.SUBSTEP_SECS;
+      int steps = (int) Math.round(DURATION_SECS / dt);
+      SwerveDriveKinematics kinematics =
+          new SwerveDriveKinematics(Drive.getModuleTranslations(driveConstants));
+      poses = new Pose2d[steps + 1];
+      distancesMeters = new double[4][steps + 1];
+      angles = new Rotation2d[4][steps + 1];
+
+      poses[0] = new Pose2d();
+      SwerveModuleState[] states = kinematics.toSwerveModuleStates(speedsAt(0.0));
+      for (int i = 0; i < 4; i++) {
+        angles[i][0] = states[i].angle;
+      }
+      for (int step = 1; step <= steps; step++) {
+        // Robot relative, evaluated in the middle of the step
+        ChassisSpeeds speeds = speedsAt((step - 0.5) * dt);
+        states = kinematics.toSwerveModuleStates(speeds);
+        for (int i = 0; i < 4; i++) {
+          distancesMeters[i][step] =
+              distancesMeters[i][step - 1] + states[i].speedMetersPerSecond * dt;
+          angles[i][step] = states[i].angle;
+        }
+        poses[step] =
+            poses[step - 1].exp(
+                new Twist2d(
+                    speeds.vxMetersPerSecond * dt,
+                    speeds.vyMetersPerSecond * dt,
+                    speeds.omegaRadiansPerSecond * dt));
+      }
+    }
+
+    private static ChassisSpeeds speedsAt(double time) {
+      double phase = 2.0 * Math.PI * time / PERIOD_SECS;
+      return new ChassisSpeeds(
+          SPEED_METERS_PER_SEC,
+          MAX_STRAFE_METERS_PER_SEC * Math.cos(phase),
+          MAX_OMEGA_RAD_PER_SEC * Math.sin(phase));
+    }
+  }
+
+  /** Reports the curve's wheel position and angle at each sample step set by the test. */
+  private static final class ScriptedModuleIO implements ModuleIO {
+    private final Curve curve;
+    private final int module;
+    private final double wheelRadius;
+    private int[] sampleSteps = new int[] {};
+
+    private ScriptedModuleIO(Curve curve, int module, double wheelRadius) {
+      this.curve = curve;
+      this.module = module;
+      this.wheelRadius = wheelRadius;
+    }
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {
+      int sampleCount = sampleSteps.length;
+      inputs.odometryTimestamps = new double[sampleCount];
+      inputs.odometryDrivePositionsRad = new double[sampleCount];
+      inputs.odometryTurnPositions = new Rotation2d[sampleCount];
+      for (int i = 0; i < sampleCount; i++) {
+        int step = sampleSteps[i];
+        inputs.odometryTimestamps[i] = step * PhysicsSim.SUBSTEP_SECS;
+        inputs.odometryDrivePositionsRad[i] = curve.distancesMeters[module][step] / wheelRadius;
+        inputs.odometryTurnPositions[i] = curve.angles[module][step];
+      }
+      if (sampleCount > 0) {
+        inputs.drivePositionRad = inputs.odometryDrivePositionsRad[sampleCount - 1];
+        inputs.turnAbsolutePosition = inputs.odometryTurnPositions[sampleCount - 1];
+        inputs.turnPosition = inputs.turnAbsolutePosition;
+      }
+    }
+  }
+
+  /** Reports the curve's heading at each sample step set by the test. */
+  private static final class ScriptedGyroIO implements GyroIO {
+    private final Curve curve;
+    private int[] sampleSteps = new int[] {};
+
+    private ScriptedGyroIO(Curve curve) {
+      this.curve = curve;
+    }
+
+    @Override
+    public void updateInputs(GyroIOInputs inputs) {
+      int sampleCount = sampleSteps.length;
+      inputs.connected = true;
+      inputs.odometryYawTimestamps = new double[sampleCount];
+      inputs.odometryYawPositions = new Rotation2d[sampleCount];
+      for (int i = 0; i < sampleCount; i++) {
+        int step = sampleSteps[i];
+        inputs.odometryYawTimestamps[i] = step * PhysicsSim.SUBSTEP_SECS;
+        inputs.odometryYawPositions[i] = curve.poses[step].getRotation();
+      }
+      if (sampleCount > 0) {
+        inputs.yawPosition = inputs.odometryYawPositions[sampleCount - 1];
+      }
+    }
+  }
+}